@@ -0,0 +1,132 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OrderSide;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Market the benchmarks run on: futures of weekly expirations, each with calls and puts on a grid of strikes around the
+ * futures price, quoted, with open positions in every third option. Time is fixed.
+ */
+final class BenchmarkMarket {
+    static final long CURRENT_TIME = 1_500_000_000_000L;
+    static final double FUTURES_PRICE = 4000;
+    static final double VOLATILITY = 0.9;
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final double STRIKE_STEP = 0.05; // of log-moneyness
+
+    final TimeProvider timeProvider = () -> CURRENT_TIME;
+    final Map<Integer, Instrument> instruments;
+    final List<Instrument> futures = new ArrayList<>();
+    final List<Instrument> options = new ArrayList<>();
+    final List<Quotes> futuresQuotes = new ArrayList<>();
+    final List<OpenPosition> positions = new ArrayList<>();
+
+    final InstrumentManager instrumentManager;
+    final MarketDataManager marketDataManager = new MarketDataManager();
+    final FairPriceProvider futuresFairPriceProvider = new LastFairPriceProvider(marketDataManager);
+    final FairPriceProvider fairVolatilityProvider = instrumentId -> BigDecimal.valueOf(VOLATILITY);
+    final Pricing pricing = new Pricing(timeProvider);
+    final RiskManager riskManager;
+
+    BenchmarkMarket(final int expirations, final int strikesPerExpiration) {
+        final Map<Integer, Instrument> instrumentsById = new HashMap<>();
+        int instrumentId = 0;
+
+        for (int i = 0; i < expirations; i++) {
+            final long expirationDate = CURRENT_TIME + (i + 1) * 7 * DAY_MILLIS;
+            final Instrument futuresInstrument = new Instrument(
+                "FUT" + i,
+                ++instrumentId,
+                Instrument.Type.INVERSE_FUTURES,
+                null,
+                expirationDate,
+                null,
+                new BigDecimal("0.5"),
+                1,
+                expirationDate - DAY_MILLIS
+            );
+            futures.add(futuresInstrument);
+            instrumentsById.put(instrumentId, futuresInstrument);
+            futuresQuotes.add(futuresQuotes(instrumentId, FUTURES_PRICE));
+
+            for (int j = 0; j < strikesPerExpiration; j++) {
+                final long strike = Math.round(FUTURES_PRICE * Math.exp((j - strikesPerExpiration / 2) * STRIKE_STEP));
+                for (final Instrument.OptionType optionType : Instrument.OptionType.values()) {
+                    final Instrument option = new Instrument(
+                        "OPT" + i + "-" + strike + "-" + optionType.name().charAt(0),
+                        ++instrumentId,
+                        Instrument.Type.OPTION,
+                        optionType,
+                        expirationDate,
+                        BigDecimal.valueOf(strike),
+                        new BigDecimal("0.00000001"),
+                        1,
+                        expirationDate
+                    );
+                    options.add(option);
+                    instrumentsById.put(instrumentId, option);
+                    if (options.size() % 3 == 0) {
+                        positions.add(new OpenPosition(instrumentId, 10, OrderSide.values()[j % 2]));
+                    }
+                }
+            }
+        }
+        instruments = Collections.unmodifiableMap(instrumentsById);
+
+        instrumentManager = new InstrumentManager(timeProvider, instruments);
+        riskManager = new RiskManager(
+            instrumentManager,
+            fairVolatilityProvider,
+            futuresFairPriceProvider,
+            pricing,
+            0.0005,
+            0.005,
+            0
+        );
+        futuresQuotes.forEach(marketDataManager::onQuotes);
+        positions.forEach(riskManager::onOpenPosition);
+    }
+
+    static Quotes futuresQuotes(final int futuresId, final double price) {
+        final BigDecimal last = BigDecimal.valueOf(price).setScale(1, RoundingMode.HALF_EVEN);
+        final BigDecimal halfSpread = new BigDecimal("0.5");
+        return new Quotes(futuresId, last, 1, last.subtract(halfSpread), 10, last.add(halfSpread), 10, 0, 0);
+    }
+
+    static MarketMakerConfiguration config(final int numLevels, final double deltaLimit) {
+        return config(numLevels, deltaLimit, 0);
+    }
+
+    /**
+     * @param deltaLimit also used as the vega limit
+     */
+    static MarketMakerConfiguration config(final int numLevels,
+                                           final double deltaLimit,
+                                           final int recalculationParallelism) {
+        return new MarketMakerConfiguration.Builder()
+            .timeSleepSeconds(60)
+            .maxBatchSize(100)
+            .futuresSpreadFraction(new BigDecimal("0.0015"))
+            .fairVolatility(VOLATILITY)
+            .volatilitySpreadFraction(0.01)
+            .numLevels(numLevels)
+            .qtyOnLevel(50)
+            .deltaLimit(deltaLimit)
+            .vegaLimit(deltaLimit)
+            .eventLoopCapacity(1024)
+            .recalculationParallelism(recalculationParallelism)
+            .build();
+    }
+}
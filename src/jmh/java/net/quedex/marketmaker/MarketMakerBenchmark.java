@@ -0,0 +1,109 @@
+package net.quedex.marketmaker;
+
+import com.google.common.util.concurrent.Futures;
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.user.OrderSpec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A full requote of {@link MarketMaker}, run inline (as in {@link Backtest}): futures prices move, all orders are
+ * recalculated and the resulting batch is acknowledged by a {@link MatchingSimulator}. Quotes are not passed to the
+ * simulator, so that nothing gets filled and every requote starts from the same orders.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MarketMakerBenchmark {
+
+    @Param({"4"})
+    private int expirations;
+
+    @Param({"25"})
+    private int strikesPerExpiration;
+
+    /**
+     * 0 for serial recalculation
+     */
+    @Param({"0", "4"})
+    private int recalculationParallelism;
+
+    private MarketMaker marketMaker;
+    private MatchingSimulator simulator;
+    private Quotes[][] futuresQuotes;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkMarket market = new BenchmarkMarket(expirations, strikesPerExpiration);
+        marketMaker = new MarketMaker(
+            market.timeProvider,
+            BenchmarkMarket.config(5, Double.MAX_VALUE, recalculationParallelism),
+            market.instruments,
+            e -> {
+                throw new IllegalStateException(e);
+            },
+            true
+        );
+        simulator = new MatchingSimulator(marketMaker, marketMaker);
+
+        // futures prices moving by more than the repricing threshold
+        futuresQuotes = new Quotes[2][market.futures.size()];
+        for (int i = 0; i < market.futures.size(); i++) {
+            final Instrument futures = market.futures.get(i);
+            futuresQuotes[0][i] = BenchmarkMarket.futuresQuotes(
+                futures.getInstrumentId(),
+                BenchmarkMarket.FUTURES_PRICE
+            );
+            futuresQuotes[1][i] = BenchmarkMarket.futuresQuotes(
+                futures.getInstrumentId(),
+                BenchmarkMarket.FUTURES_PRICE * 1.01
+            );
+        }
+        requote();
+    }
+
+    @TearDown
+    public void tearDown() {
+        marketMaker.stop();
+    }
+
+    @Benchmark
+    public List<OrderSpec> requote() {
+        for (final Quotes quotes : futuresQuotes[next]) {
+            marketMaker.onQuotes(quotes);
+        }
+        next = 1 - next;
+
+        final List<OrderSpec> batch = Futures.getUnchecked(marketMaker.recalculate());
+        simulator.batch(batch);
+        return batch;
+    }
+
+    /**
+     * Requote with nothing moved since the last one, which only checks that orders are up to date.
+     */
+    @Benchmark
+    public List<OrderSpec> requoteUnchanged() {
+        final List<OrderSpec> batch = Futures.getUnchecked(marketMaker.recalculate());
+        simulator.batch(batch);
+        return batch;
+    }
+}
@@ -0,0 +1,89 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.user.OrderCancelled;
+import net.quedex.api.user.OrderFilled;
+import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSide;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Life cycle of an order as tracked by {@link OrderManager}: placement sent and acknowledged, partially filled, cancel
+ * sent and acknowledged, with {@link #RESTING_ORDERS} other orders resting. Events are created up front.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderManagerBenchmark {
+    private static final int RESTING_ORDERS = 1000;
+    private static final int CYCLED_ORDERS = 1024;
+    private static final int QUANTITY = 10;
+
+    private OrderManager orderManager;
+    private final GenericOrder[] orders = new GenericOrder[CYCLED_ORDERS];
+    private final OrderPlaced[] placed = new OrderPlaced[CYCLED_ORDERS];
+    private final OrderFilled[] filled = new OrderFilled[CYCLED_ORDERS];
+    private final OrderCancelled[] cancelled = new OrderCancelled[CYCLED_ORDERS];
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkMarket market = new BenchmarkMarket(1, 50);
+        orderManager = new OrderManager(market.instrumentManager);
+
+        final Instrument[] options = market.options.toArray(new Instrument[market.options.size()]);
+        for (int i = 0; i < RESTING_ORDERS + CYCLED_ORDERS; i++) {
+            final Instrument option = options[i % options.length];
+            final TickSize tickSize = market.instrumentManager.getTickSize(option.getInstrumentId());
+            final OrderSide side = i % 2 == 0 ? OrderSide.BUY : OrderSide.SELL;
+            final long priceTicks = 1_000_000 + i;
+            final GenericOrder order = new GenericOrder(option.getInstrumentId(), side, tickSize, priceTicks, QUANTITY);
+
+            if (i < RESTING_ORDERS) {
+                final long clientOrderId = orderManager.getNextOrderId();
+                orderManager.onPlacementSent(clientOrderId, order);
+                orderManager.onOrderPlaced(new OrderPlaced(
+                    clientOrderId, option.getInstrumentId(), tickSize.toPrice(priceTicks), QUANTITY, QUANTITY, side
+                ));
+            } else {
+                final int j = i - RESTING_ORDERS;
+                final long clientOrderId = RESTING_ORDERS + 1 + j;
+                orders[j] = order;
+                placed[j] = new OrderPlaced(
+                    clientOrderId, option.getInstrumentId(), tickSize.toPrice(priceTicks), QUANTITY, QUANTITY, side
+                );
+                filled[j] = new OrderFilled(
+                    clientOrderId, option.getInstrumentId(), tickSize.toPrice(priceTicks), 1, QUANTITY - 1, side
+                );
+                cancelled[j] = new OrderCancelled(clientOrderId);
+            }
+        }
+    }
+
+    @Benchmark
+    public void orderLifeCycle() {
+        final int i = next;
+        next = next + 1 == CYCLED_ORDERS ? 0 : next + 1;
+        final long clientOrderId = placed[i].getClientOrderId();
+
+        orderManager.onPlacementSent(clientOrderId, orders[i]);
+        orderManager.onOrderPlaced(placed[i]);
+        orderManager.onOrderFilled(filled[i]);
+        orderManager.onCancelSent(clientOrderId);
+        orderManager.onOrderCancelled(cancelled[i]);
+    }
+}
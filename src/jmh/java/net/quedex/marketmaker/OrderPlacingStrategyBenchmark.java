@@ -0,0 +1,84 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OrderPlacingStrategyBenchmark {
+
+    @Param({"5"})
+    private int levels;
+
+    /**
+     * Option levels priced from an expansion in volatility within this fraction of a tick, 0 to value every level.
+     */
+    @Param({"0", "0.25"})
+    private double ladderMaxErrorTicks;
+
+    private OrderPlacingStrategy optionStrategy;
+    private OrderPlacingStrategy futuresStrategy;
+    private Instrument[] options;
+    private Instrument futures;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkMarket market = new BenchmarkMarket(1, 50);
+        final MarketMakerConfiguration config = BenchmarkMarket.config(levels, Double.MAX_VALUE);
+
+        optionStrategy = new UniformOptionOrderPlacingStrategy(
+            market.fairVolatilityProvider,
+            market.futuresFairPriceProvider,
+            market.riskManager,
+            market.instrumentManager,
+            market.pricing,
+            config.getNumLevels(),
+            config.getQtyOnLevel(),
+            config.getDeltaLimit(),
+            config.getVegaLimit(),
+            config.getVolatilitySpreadFraction(),
+            ladderMaxErrorTicks
+        );
+        futuresStrategy = new UniformFuturesOrderPlacingStrategy(
+            market.futuresFairPriceProvider,
+            market.riskManager,
+            market.instrumentManager,
+            config.getNumLevels(),
+            config.getQtyOnLevel(),
+            config.getDeltaLimit(),
+            config.getFuturesSpreadFraction()
+        );
+        options = market.options.toArray(new Instrument[market.options.size()]);
+        futures = market.futures.get(0);
+    }
+
+    @Benchmark
+    public Collection<GenericOrder> optionOrders() {
+        final Instrument option = options[next];
+        next = next + 1 == options.length ? 0 : next + 1;
+        return optionStrategy.getOrders(option);
+    }
+
+    @Benchmark
+    public Collection<GenericOrder> futuresOrders() {
+        return futuresStrategy.getOrders(futures);
+    }
+}
@@ -0,0 +1,105 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+    private static final double TICK_SIZE = 0.00000001;
+    private static final double LADDER_MAX_ERROR_TICKS = 0.25;
+
+    @Param({"5"})
+    private int levels;
+
+    /**
+     * Size of the cache of valuations, 0 not to cache. The clock is fixed, so cached valuations are all hits.
+     */
+    @Param({"0", "4096"})
+    private int cacheSize;
+
+    private Pricing pricing;
+    private Instrument[] options;
+    private OptionChainBatch batch;
+    private final Pricing.MutableMetrics metrics = new Pricing.MutableMetrics();
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkMarket market = new BenchmarkMarket(1, 50);
+        pricing = cacheSize == 0 ? market.pricing : new Pricing(market.timeProvider, cacheSize, 1000);
+        final List<Instrument> chainOptions = market.options;
+        options = chainOptions.toArray(new Instrument[chainOptions.size()]);
+
+        // as priced by UniformOptionOrderPlacingStrategy for the whole chain: bids and asks on every level
+        batch = new OptionChainBatch(options.length, 2 * levels);
+        for (final Instrument option : options) {
+            final int batchOption = batch.add(option, BenchmarkMarket.FUTURES_PRICE);
+            for (int i = 1; i <= levels; i++) {
+                batch.setVolatility(batchOption, i - 1, BenchmarkMarket.VOLATILITY * (1 - i * 0.01));
+                batch.setVolatility(batchOption, levels + i - 1, BenchmarkMarket.VOLATILITY * (1 + i * 0.01));
+            }
+        }
+    }
+
+    @Benchmark
+    public Pricing.Metrics calculateMetrics() {
+        return pricing.calculateMetrics(nextOption(), BenchmarkMarket.VOLATILITY, BenchmarkMarket.FUTURES_PRICE);
+    }
+
+    @Benchmark
+    public Pricing.MutableMetrics calculateMetricsMutable() {
+        return pricing.calculateMetrics(
+            nextOption(),
+            BenchmarkMarket.VOLATILITY,
+            BenchmarkMarket.FUTURES_PRICE,
+            metrics
+        );
+    }
+
+    /**
+     * Prices all options of the chain, each at {@code 2 * levels} volatilities.
+     */
+    @Benchmark
+    public void calculateChain(final Blackhole blackhole) {
+        pricing.calculateChain(batch);
+        blackhole.consume(batch.getPrice(0, 0));
+    }
+
+    /**
+     * Prices all options of the chain as {@link #calculateChain}, valuing each once and expanding it to the levels.
+     */
+    @Benchmark
+    public void calculateLadder(final Blackhole blackhole) {
+        for (int i = 0; i < batch.size(); i++) {
+            pricing.calculateLadder(
+                batch, i, BenchmarkMarket.VOLATILITY, TICK_SIZE, LADDER_MAX_ERROR_TICKS * TICK_SIZE
+            );
+        }
+        blackhole.consume(batch.getPrice(0, 0));
+    }
+
+    private Instrument nextOption() {
+        final Instrument option = options[next];
+        next = next + 1 == options.length ? 0 : next + 1;
+        return option;
+    }
+}
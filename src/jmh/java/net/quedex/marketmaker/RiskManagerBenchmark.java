@@ -0,0 +1,69 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OrderSide;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Position updates of options already held, alternating the quantity so that the risk changes with every update, and
+ * valuation of the positions over a scenario grid of 21 futures price by 11 volatility shocks.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RiskManagerBenchmark {
+    private RiskManager riskManager;
+    private OpenPosition[] positions;
+    private ScenarioEngine scenarioEngine;
+    private PositionSnapshot snapshot;
+    private int next = 0;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkMarket market = new BenchmarkMarket(4, 50);
+        riskManager = market.riskManager;
+
+        positions = new OpenPosition[2 * market.positions.size()];
+        for (int i = 0; i < market.positions.size(); i++) {
+            final OpenPosition held = market.positions.get(i);
+            positions[2 * i] = new OpenPosition(held.getInstrumentId(), held.getQuantity() + 1, held.getSide());
+            positions[2 * i + 1] = held;
+        }
+
+        scenarioEngine = new ScenarioEngine(0.1, 21, 0.5, 11, 2, true);
+        snapshot = riskManager.getSnapshot(BenchmarkMarket.CURRENT_TIME);
+    }
+
+    @TearDown
+    public void tearDown() {
+        scenarioEngine.shutdown();
+    }
+
+    @Benchmark
+    public double onOpenPosition() {
+        riskManager.onOpenPosition(positions[next]);
+        next = next + 1 == positions.length ? 0 : next + 1;
+        return riskManager.getTotalDelta();
+    }
+
+    @Benchmark
+    public ScenarioGrid scenarioGrid() {
+        scenarioEngine.submit(snapshot);
+        return scenarioEngine.getGrid();
+    }
+}
@@ -0,0 +1,45 @@
+package net.quedex.marketmaker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TickSizeBenchmark {
+    private final TickSize optionTickSize = new TickSize(new BigDecimal("0.00000001"));
+    private final TickSize futuresTickSize = new TickSize(new BigDecimal("0.5"));
+
+    private final double optionPrice = 0.0123456789;
+    private final BigDecimal futuresPrice = new BigDecimal("4012.3456");
+    private final BigDecimal futuresTickPrice = new BigDecimal("4012.5");
+
+    @Benchmark
+    public long roundDouble() {
+        return optionTickSize.roundToTicks(optionPrice, RoundingMode.DOWN);
+    }
+
+    @Benchmark
+    public long roundBigDecimal() {
+        return futuresTickSize.roundToTicks(futuresPrice, RoundingMode.UP);
+    }
+
+    @Benchmark
+    public long toTicks() {
+        return futuresTickSize.toTicks(futuresTickPrice);
+    }
+}
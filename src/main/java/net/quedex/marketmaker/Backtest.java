@@ -0,0 +1,287 @@
+package net.quedex.marketmaker;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.Futures;
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.user.OrderSpec;
+import org.apache.commons.configuration.ConfigurationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Replays instruments and quotes recorded in a journal (see {@link JournalWriter}) through a {@link MarketMaker}, with
+ * a {@link MatchingSimulator} in place of the exchange. Order events, positions and commands recorded in the journal
+ * are ignored - the simulation produces its own.
+ * <p>
+ * Everything runs on the calling thread in the time of the recorded events, so a replay runs as fast as it can be
+ * computed and its results are the same on every run. Recalculations are done when they would be due in the recorded
+ * time (see {@link RequoteScheduler}), assuming they take no time, starting once quotes of all traded futures have been
+ * replayed. Run as a program, replays the journal in the given directory with the given market maker configuration.
+ */
+@NotThreadSafe
+public class Backtest {
+    private static final Logger LOGGER = LoggerFactory.getLogger(Backtest.class);
+
+    private final MarketMakerConfiguration config;
+    private final Path journalDirectory;
+
+    public Backtest(final MarketMakerConfiguration config, final Path journalDirectory) {
+        this.config = checkNotNull(config, "null config");
+        this.journalDirectory = checkNotNull(journalDirectory, "null journalDirectory");
+        checkArgument(
+            config.getJournalDirectory().isEmpty()
+                || !Paths.get(config.getJournalDirectory()).toAbsolutePath().normalize()
+                    .equals(journalDirectory.toAbsolutePath().normalize()),
+            "Replayed journal directory=%s recorded to", journalDirectory
+        );
+    }
+
+    public static void main(final String... args) throws IOException, ConfigurationException {
+        if (args.length != 2) {
+            System.err.println("Usage: Backtest <market maker properties file name> <journal directory>");
+            System.exit(1);
+        }
+        final Result result = new Backtest(
+            MarketMakerConfiguration.fromPropertiesFile(args[0]),
+            Paths.get(args[1])
+        ).run();
+        System.out.println(result);
+    }
+
+    public Result run() throws IOException {
+        final long startNanos = System.nanoTime();
+        final Replay replay = new Replay();
+        try {
+            new JournalReader(journalDirectory).read(replay);
+        } finally {
+            if (replay.marketMaker != null) {
+                replay.marketMaker.stop();
+            }
+        }
+        checkState(replay.marketMaker != null, "No instruments in journal=%s", journalDirectory);
+
+        final Result result = new Result(
+            replay.events,
+            replay.startTime,
+            replay.clock.getCurrentTime(),
+            replay.requotes,
+            replay.simulator.getCommands(),
+            replay.simulator.getFills(),
+            replay.simulator.getFilledQuantity(),
+            replay.simulator.getOpenOrders(),
+            replay.simulator.getPositions(),
+            replay.simulator.getDigest(),
+            System.nanoTime() - startNanos
+        );
+        LOGGER.info("{}", result);
+        return result;
+    }
+
+    private final class Replay implements JournalReader.Handler {
+        private SimulatedTimeProvider clock;
+        private MarketMaker marketMaker;
+        private MatchingSimulator simulator;
+        private final Set<Integer> futuresAwaitingQuotes = new HashSet<>();
+        private boolean requoting = false;
+
+        private long startTime;
+        private long events = 0;
+        private long requotes = 0;
+
+        @Override
+        public void onInstruments(final long timestamp, final Map<Integer, Instrument> instruments) {
+            if (marketMaker == null) {
+                startTime = timestamp;
+                clock = new SimulatedTimeProvider(timestamp);
+                marketMaker = new MarketMaker(
+                    clock,
+                    config,
+                    instruments,
+                    e -> LOGGER.error("Error in replay", e),
+                    true
+                );
+                simulator = new MatchingSimulator(marketMaker, marketMaker);
+                for (final Instrument instrument : instruments.values()) {
+                    if (instrument.isFutures() && instrument.isTraded(timestamp)) {
+                        futuresAwaitingQuotes.add(instrument.getInstrumentId());
+                    }
+                }
+            } else {
+                advanceTo(timestamp);
+                marketMaker.onInstruments(instruments);
+            }
+            events++;
+        }
+
+        @Override
+        public void onQuotes(final long timestamp, final Quotes quotes) {
+            if (marketMaker == null) {
+                return; // recorded before instruments
+            }
+            advanceTo(timestamp);
+            simulator.onQuotes(quotes); // fills reported before the quotes, as an exchange would
+            marketMaker.onQuotes(quotes);
+            events++;
+
+            if (!requoting) {
+                futuresAwaitingQuotes.remove(quotes.getInstrumentId());
+                requoting = futuresAwaitingQuotes.isEmpty();
+            }
+            if (requoting && marketMaker.tryRequote()) {
+                requote();
+            }
+        }
+
+        /**
+         * Moves the clock forward, doing the requotes due in the meantime at the times they are due.
+         */
+        private void advanceTo(final long timestamp) {
+            final long time = Math.max(timestamp, clock.getCurrentTime());
+            if (requoting) {
+                long dueTime;
+                while ((dueTime = marketMaker.getRequoteDueTime()) < time) {
+                    clock.setCurrentTime(Math.max(dueTime, clock.getCurrentTime()));
+                    checkState(marketMaker.tryRequote(), "Requote not due at time=%s", clock.getCurrentTime());
+                    requote();
+                }
+            }
+            clock.setCurrentTime(time);
+        }
+
+        private void requote() {
+            final List<OrderSpec> orderSpecs = Futures.getUnchecked(marketMaker.recalculate());
+            requotes++;
+            simulator.batch(orderSpecs);
+        }
+    }
+
+    @Immutable
+    public static final class Result {
+        private final long events;
+        private final long startTime;
+        private final long endTime;
+        private final long requotes;
+        private final long commands;
+        private final long fills;
+        private final long filledQuantity;
+        private final int openOrders;
+        private final Map<Integer, Integer> positions;
+        private final long digest;
+        private final long elapsedNanos;
+
+        private Result(final long events,
+                       final long startTime,
+                       final long endTime,
+                       final long requotes,
+                       final long commands,
+                       final long fills,
+                       final long filledQuantity,
+                       final int openOrders,
+                       final Map<Integer, Integer> positions,
+                       final long digest,
+                       final long elapsedNanos) {
+            this.events = events;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.requotes = requotes;
+            this.commands = commands;
+            this.fills = fills;
+            this.filledQuantity = filledQuantity;
+            this.openOrders = openOrders;
+            this.positions = Collections.unmodifiableMap(new TreeMap<>(positions));
+            this.digest = digest;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return number of replayed instruments and quotes records
+         */
+        public long getEvents() {
+            return events;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public long getRequotes() {
+            return requotes;
+        }
+
+        public long getCommands() {
+            return commands;
+        }
+
+        public long getFills() {
+            return fills;
+        }
+
+        public long getFilledQuantity() {
+            return filledQuantity;
+        }
+
+        public int getOpenOrders() {
+            return openOrders;
+        }
+
+        /**
+         * @return signed positions at the end, by instrument id
+         */
+        public Map<Integer, Integer> getPositions() {
+            return positions;
+        }
+
+        /**
+         * @see MatchingSimulator#getDigest()
+         */
+        public long getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return wall-clock duration of the replay
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                .add("events", events)
+                .add("simulatedMillis", endTime - startTime)
+                .add("requotes", requotes)
+                .add("commands", commands)
+                .add("fills", fills)
+                .add("filledQuantity", filledQuantity)
+                .add("openOrders", openOrders)
+                .add("positions", positions)
+                .add("digest", Long.toHexString(digest))
+                .add("elapsedMillis", elapsedNanos / 1_000_000)
+                .add("eventsPerSecond", elapsedNanos == 0 ? 0 : events * 1_000_000_000L / elapsedNanos)
+                .toString();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package net.quedex.marketmaker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Dispatches events to an {@link EventHandler} on a single dedicated thread, to which the handler is confined.
+ * <p>
+ * Events are passed through a preallocated ring of typed slots (an event type and a payload reference), so publishing
+ * does not allocate or lock. Producers claim slots with a CAS, as there are several producer threads (market stream,
+ * user stream and the runner); each slot carries a sequence number signalling when it is published and when it is
+ * free again (D. Vyukov's bounded queue). Publishing to a full ring waits for the handler to catch up.
+ */
+@ThreadSafe
+public class EventLoop {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EventLoop.class);
+
+    public enum WaitStrategy {
+        /**
+         * Parks the idle event thread until an event is published - lowest CPU usage, highest handoff latency.
+         */
+        BLOCKING,
+        /**
+         * Yields the idle event thread.
+         */
+        YIELDING,
+        /**
+         * Spins the idle event thread - lowest handoff latency, occupies a whole core.
+         */
+        BUSY_SPIN
+    }
+
+    @FunctionalInterface
+    public interface EventHandler {
+        void onEvent(int type, Object payload);
+    }
+
+    /**
+     * Notified on the event thread before an event is handled.
+     */
+    @FunctionalInterface
+    public interface Probe {
+        /**
+         * @param waitNanos time since the event was published
+         * @param backlog   number of events published after it and not handled yet
+         */
+        void onEventPolled(long waitNanos, int backlog);
+    }
+
+    private final int mask;
+    private final int[] types;
+    private final Object[] payloads;
+    private final long[] publishNanos;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong(); // written by the event thread only
+
+    private final EventHandler eventHandler;
+    private final Consumer<Exception> exceptionHandler;
+    private final WaitStrategy waitStrategy;
+    private final Probe probe;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private volatile boolean waiting = false;
+
+    public EventLoop(final int capacity,
+                     final WaitStrategy waitStrategy,
+                     final EventHandler eventHandler,
+                     final Consumer<Exception> exceptionHandler,
+                     final Probe probe) {
+        checkArgument(capacity > 0 && Integer.bitCount(capacity) == 1, "capacity=%s not a power of 2", capacity);
+        this.mask = capacity - 1;
+        this.types = new int[capacity];
+        this.payloads = new Object[capacity];
+        this.publishNanos = new long[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+
+        this.waitStrategy = checkNotNull(waitStrategy, "null waitStrategy");
+        this.eventHandler = checkNotNull(eventHandler, "null eventHandler");
+        this.exceptionHandler = checkNotNull(exceptionHandler, "null exceptionHandler");
+        this.probe = checkNotNull(probe, "null probe");
+
+        this.thread = new Thread(this::run, "event-loop");
+        this.thread.start();
+    }
+
+    /**
+     * Publishes an event to be handled on the event thread. Events published by a single thread are handled in the
+     * order of publishing. Ignored once the loop has been stopped.
+     *
+     * @return whether the event has been published
+     */
+    public boolean publish(final int type, final Object payload) {
+        long position = tail.get();
+
+        while (true) {
+            if (!running) {
+                return false;
+            }
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (difference < 0) {
+                Thread.yield(); // full - wait for the event thread
+            }
+            position = tail.get();
+        }
+
+        final int index = (int) position & mask;
+        types[index] = type;
+        payloads[index] = payload;
+        publishNanos[index] = System.nanoTime();
+        sequences.set(index, position + 1);
+
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    /**
+     * @return approximate number of published events not handled yet
+     */
+    public int size() {
+        return (int) Math.max(tail.get() - head.get(), 0);
+    }
+
+    /**
+     * @return whether it is called from the event thread
+     */
+    public boolean isEventThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * Stops accepting events; events already published are still handled.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits until the event thread terminates after {@link #stop()}.
+     */
+    public void awaitTermination() throws InterruptedException {
+        thread.join();
+    }
+
+    private void run() {
+        while (true) {
+            if (!poll()) {
+                if (!running && !hasEvent()) {
+                    break;
+                }
+                idle();
+            }
+        }
+        LOGGER.debug("Event loop stopped");
+    }
+
+    /**
+     * @return whether an event has been handled
+     */
+    private boolean poll() {
+        final long position = head.get();
+        final int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return false;
+        }
+
+        final int type = types[index];
+        final Object payload = payloads[index];
+        final long waitNanos = System.nanoTime() - publishNanos[index];
+        payloads[index] = null;
+        sequences.lazySet(index, position + mask + 1);
+        head.lazySet(position + 1);
+
+        probe.onEventPolled(waitNanos, (int) Math.max(tail.get() - position - 1, 0));
+
+        try {
+            eventHandler.onEvent(type, payload);
+        } catch (final RuntimeException e) {
+            exceptionHandler.accept(e);
+        }
+        return true;
+    }
+
+    private boolean hasEvent() {
+        final long position = head.get();
+        return sequences.get((int) position & mask) == position + 1;
+    }
+
+    private void idle() {
+        switch (waitStrategy) {
+            case BLOCKING:
+                waiting = true;
+                if (running && !hasEvent()) {
+                    LockSupport.park(this);
+                }
+                waiting = false;
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            case BUSY_SPIN:
+                break;
+            default:
+                throw new IllegalStateException("Unsupported waitStrategy=" + waitStrategy);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.user.OrderSide;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Pre-trade check of the delta and vega that would be carried if all resting bids, or all resting asks, were filled at
+ * once, trimming desired orders of an instrument so that neither exceeds the limits.
+ * <p>
+ * Worst-case resting quantities of every instrument (of orders being placed, modified and cancelled alike, taking the
+ * larger quantity of a pending modification) are kept with greeks per contract, as of the last time the instrument was
+ * checked or its orders were updated, and summed per side, so that checking an instrument costs time proportional to
+ * its orders rather than to all orders. Greeks are priced at the fair volatility and futures price the orders are
+ * calculated at, so that they are usually taken from the {@link Pricing} cache.
+ */
+@NotThreadSafe
+public class FillExposure {
+    private final OrderStore orderStore;
+    private final Pricing pricing;
+    private final double deltaLimit;
+    private final double vegaLimit;
+    private final Pricing.MutableMetrics metrics = new Pricing.MutableMetrics();
+    private final LongIntHashMap instrumentIdToIndex = new LongIntHashMap(64);
+
+    // per instrument
+    private double[] deltas = new double[0]; // per contract
+    private double[] vegas = new double[0]; // per contract, of its notional
+    private int[] buyQuantities = new int[0];
+    private int[] sellQuantities = new int[0];
+    private int instruments;
+
+    // if every bid or every ask were filled
+    private double bidsDelta;
+    private double bidsVega;
+    private double asksDelta;
+    private double asksVega;
+
+    private final List<GenericOrder> trimmed = new ArrayList<>();
+    private int trimmedOrders;
+
+    /**
+     * @param deltaLimit limit of the absolute total delta after all bids or all asks are filled, 0 for no limit
+     * @param vegaLimit  limit of the absolute total vega after all bids or all asks are filled, 0 for no limit
+     */
+    public FillExposure(final OrderStore orderStore,
+                        final Pricing pricing,
+                        final double deltaLimit,
+                        final double vegaLimit) {
+        checkArgument(deltaLimit >= 0, "deltaLimit=%s < 0", deltaLimit);
+        checkArgument(vegaLimit >= 0, "vegaLimit=%s < 0", vegaLimit);
+        this.orderStore = checkNotNull(orderStore, "null orderStore");
+        this.pricing = checkNotNull(pricing, "null pricing");
+        this.deltaLimit = deltaLimit;
+        this.vegaLimit = vegaLimit;
+    }
+
+    /**
+     * Drops the least aggressive desired orders of the instrument, on each side, while the delta or vega after all
+     * orders of the side were filled - with its orders replaced by the remaining desired ones - exceeds its limit and
+     * dropping reduces it.
+     *
+     * @param desired orders of the instrument, on each side ordered from the most aggressive
+     * @return the remaining orders, valid until the next call, or {@code desired} if none were dropped
+     */
+    public Collection<GenericOrder> trim(final Instrument instrument,
+                                         final double volatility,
+                                         final double futuresPrice,
+                                         final double totalDelta,
+                                         final double totalVega,
+                                         final Collection<GenericOrder> desired) {
+        final int index = index(instrument.getInstrumentId());
+        pricing.calculateMetrics(instrument, volatility, futuresPrice, metrics);
+        setGreeks(index, metrics.getDelta(), metrics.getVega() * instrument.getNotionalAmount());
+
+        int buyQuantity = 0;
+        int sellQuantity = 0;
+        for (final GenericOrder order : desired) {
+            if (order.getSide() == OrderSide.BUY) {
+                buyQuantity += order.getQuantity();
+            } else {
+                sellQuantity += order.getQuantity();
+            }
+        }
+        final int buys = keptQuantity(
+            buyQuantity,
+            totalDelta + bidsDelta - buyQuantities[index] * deltas[index],
+            totalVega + bidsVega - buyQuantities[index] * vegas[index],
+            deltas[index],
+            vegas[index]
+        );
+        final int sells = keptQuantity(
+            sellQuantity,
+            totalDelta + asksDelta + sellQuantities[index] * deltas[index],
+            totalVega + asksVega + sellQuantities[index] * vegas[index],
+            -deltas[index],
+            -vegas[index]
+        );
+        if (buys == buyQuantity && sells == sellQuantity) {
+            return desired;
+        }
+
+        // most aggressive first on each side, so the kept quantity is a prefix
+        trimmed.clear();
+        int keptBuys = 0;
+        int keptSells = 0;
+        for (final GenericOrder order : desired) {
+            if (order.getSide() == OrderSide.BUY ? (keptBuys += order.getQuantity()) <= buys
+                                                 : (keptSells += order.getQuantity()) <= sells) {
+                trimmed.add(order);
+            } else {
+                trimmedOrders++;
+            }
+        }
+        return trimmed;
+    }
+
+    /**
+     * Takes the worst-case resting quantities of the instrument from its orders, e.g. after they were reconciled or
+     * updated by an event.
+     */
+    public void update(final int instrumentId) {
+        final int index = index(instrumentId);
+        int buyQuantity = 0;
+        int sellQuantity = 0;
+        for (int slot = orderStore.first(instrumentId); slot != OrderStore.NONE; slot = orderStore.next(slot)) {
+            final GenericOrder order = orderStore.getOrder(slot);
+            final int quantity = Math.max(order.getQuantity(), orderStore.getExpectedOrder(slot).getQuantity());
+            if (order.getSide() == OrderSide.BUY) {
+                buyQuantity += quantity;
+            } else {
+                sellQuantity += quantity;
+            }
+        }
+
+        bidsDelta += (buyQuantity - buyQuantities[index]) * deltas[index];
+        bidsVega += (buyQuantity - buyQuantities[index]) * vegas[index];
+        asksDelta -= (sellQuantity - sellQuantities[index]) * deltas[index];
+        asksVega -= (sellQuantity - sellQuantities[index]) * vegas[index];
+        buyQuantities[index] = buyQuantity;
+        sellQuantities[index] = sellQuantity;
+    }
+
+    /**
+     * Forgets resting quantities of all instruments, e.g. after all orders were cancelled.
+     */
+    public void clear() {
+        Arrays.fill(buyQuantities, 0, instruments, 0);
+        Arrays.fill(sellQuantities, 0, instruments, 0);
+        bidsDelta = 0;
+        bidsVega = 0;
+        asksDelta = 0;
+        asksVega = 0;
+    }
+
+    /**
+     * @return change of delta if all resting bids were filled
+     */
+    public double getBidsDelta() {
+        return bidsDelta;
+    }
+
+    public double getBidsVega() {
+        return bidsVega;
+    }
+
+    /**
+     * @return change of delta if all resting asks were filled
+     */
+    public double getAsksDelta() {
+        return asksDelta;
+    }
+
+    public double getAsksVega() {
+        return asksVega;
+    }
+
+    /**
+     * @return number of desired orders dropped so far
+     */
+    public int getTrimmedOrders() {
+        return trimmedOrders;
+    }
+
+    /**
+     * @param delta delta after all other orders of the side were filled
+     * @param vega  vega after all other orders of the side were filled
+     * @return the largest quantity of the side, up to {@code quantity}, to keep
+     */
+    private int keptQuantity(final int quantity,
+                             final double delta,
+                             final double vega,
+                             final double deltaPerContract,
+                             final double vegaPerContract) {
+        final double kept = Math.min(
+            maxQuantity(delta, deltaPerContract, deltaLimit),
+            maxQuantity(vega, vegaPerContract, vegaLimit)
+        );
+        return (int) Math.max(Math.min(kept, quantity), 0);
+    }
+
+    /**
+     * Dropping a contract reduces the absolute greek unless it is within the limit, or it would end up on the other
+     * side of zero by more, so the quantity is bounded by the limit remaining after the other orders, or by half a
+     * contract, divided by the greek per contract.
+     *
+     * @return the largest quantity at which the greek is within the limit or dropping a contract would not reduce it,
+     *         possibly negative or infinite
+     */
+    private static double maxQuantity(final double greek, final double perContract, final double limit) {
+        if (limit == 0 || perContract == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final double absPerContract = Math.abs(perContract);
+        final double remaining = Math.max(limit, absPerContract / 2) - Math.signum(perContract) * greek;
+        return Math.floor(remaining / absPerContract);
+    }
+
+    private void setGreeks(final int index, final double delta, final double vega) {
+        bidsDelta += buyQuantities[index] * (delta - deltas[index]);
+        bidsVega += buyQuantities[index] * (vega - vegas[index]);
+        asksDelta -= sellQuantities[index] * (delta - deltas[index]);
+        asksVega -= sellQuantities[index] * (vega - vegas[index]);
+        deltas[index] = delta;
+        vegas[index] = vega;
+    }
+
+    private int index(final int instrumentId) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        if (index != LongIntHashMap.MISSING) {
+            return index;
+        }
+        if (instruments == deltas.length) {
+            final int capacity = Math.max(instruments << 1, 16);
+            deltas = Arrays.copyOf(deltas, capacity);
+            vegas = Arrays.copyOf(vegas, capacity);
+            buyQuantities = Arrays.copyOf(buyQuantities, capacity);
+            sellQuantities = Arrays.copyOf(sellQuantities, capacity);
+        }
+        instrumentIdToIndex.put(instrumentId, instruments);
+        return instruments++;
+    }
+}
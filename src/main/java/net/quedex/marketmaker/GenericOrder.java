@@ -3,7 +3,7 @@ package net.quedex.marketmaker;
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Objects;
 import net.quedex.api.user.LimitOrderSpec;
-import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderModificationSpec;
 import net.quedex.api.user.OrderSide;
 
 import java.math.BigDecimal;
@@ -12,33 +12,51 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
+/**
+ * Order with the price kept in ticks of its instrument.
+ */
 public class GenericOrder {
-    private final int instrumentId;
-    private final OrderSide side;
-    private final BigDecimal price;
+    private int instrumentId;
+    private OrderSide side;
+    private TickSize tickSize;
+    private long priceTicks;
     private int quantity;
-    private final int initialQuantity;
+    private int initialQuantity;
 
     public GenericOrder(final int instrumentId,
                         final OrderSide side,
-                        final BigDecimal price,
+                        final TickSize tickSize,
+                        final long priceTicks,
                         final int initialQuantity) {
-        checkArgument(price.compareTo(BigDecimal.ZERO) > 0, "price=%s <= 0", price);
+        checkArgument(priceTicks > 0, "priceTicks=%s <= 0", priceTicks);
         checkArgument(initialQuantity > 0, "initialQuantity=%s <= 0", initialQuantity);
 
         this.instrumentId = instrumentId;
         this.side = checkNotNull(side, "null side");
-        this.price = price;
+        this.tickSize = checkNotNull(tickSize, "null tickSize");
+        this.priceTicks = priceTicks;
         this.quantity = initialQuantity;
         this.initialQuantity = initialQuantity;
     }
 
-    public GenericOrder(final OrderPlaced orderPlaced) {
-        this.instrumentId = orderPlaced.getInstrumentId();
-        this.side = orderPlaced.getSide();
-        this.price = orderPlaced.getPrice();
-        this.quantity = orderPlaced.getQuantity();
-        this.initialQuantity = orderPlaced.getInitialQuantity();
+    /**
+     * Empty order to be {@link #set} before use, for pooling by {@link OrderStore}.
+     */
+    GenericOrder() {
+    }
+
+    void set(final int instrumentId,
+             final OrderSide side,
+             final TickSize tickSize,
+             final long priceTicks,
+             final int quantity,
+             final int initialQuantity) {
+        this.instrumentId = instrumentId;
+        this.side = side;
+        this.tickSize = tickSize;
+        this.priceTicks = priceTicks;
+        this.quantity = quantity;
+        this.initialQuantity = initialQuantity;
     }
 
     public int getInstrumentId() {
@@ -49,8 +67,19 @@ public class GenericOrder {
         return side;
     }
 
+    public TickSize getTickSize() {
+        return tickSize;
+    }
+
+    public long getPriceTicks() {
+        return priceTicks;
+    }
+
+    /**
+     * @return price converted from ticks (allocates)
+     */
     public BigDecimal getPrice() {
-        return price;
+        return tickSize.toPrice(priceTicks);
     }
 
     public int getQuantity() {
@@ -74,16 +103,31 @@ public class GenericOrder {
         checkState(quantity >= 0, "quantity=%s < 0 after fill", quantity);
     }
 
+    /**
+     * Applies an acknowledged modification, {@code quantity} being the new remaining quantity.
+     */
+    public void modify(final long priceTicks, final int quantity) {
+        checkArgument(priceTicks > 0, "priceTicks=%s <= 0", priceTicks);
+        checkArgument(quantity > 0, "quantity=%s <= 0", quantity);
+        initialQuantity = getFilledQuantity() + quantity;
+        this.priceTicks = priceTicks;
+        this.quantity = quantity;
+    }
+
     public LimitOrderSpec toLimitOrderSpec(final long clientOrderId) {
         return new LimitOrderSpec(
             clientOrderId,
             instrumentId,
             side,
             initialQuantity,
-            price
+            getPrice()
         );
     }
 
+    public OrderModificationSpec toOrderModificationSpec(final long clientOrderId) {
+        return new OrderModificationSpec(clientOrderId, quantity, getPrice());
+    }
+
     @Override
     public boolean equals(final Object o) {
         if (this == o) {
@@ -94,15 +138,16 @@ public class GenericOrder {
         }
         final GenericOrder that = (GenericOrder) o;
         return instrumentId == that.instrumentId &&
+            priceTicks == that.priceTicks &&
             quantity == that.quantity &&
             initialQuantity == that.initialQuantity &&
             side == that.side &&
-            Objects.equal(price, that.price);
+            Objects.equal(tickSize, that.tickSize);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(instrumentId, side, price, quantity, initialQuantity);
+        return Objects.hashCode(instrumentId, side, tickSize, priceTicks, quantity, initialQuantity);
     }
 
     @Override
@@ -110,7 +155,7 @@ public class GenericOrder {
         return MoreObjects.toStringHelper(this)
             .add("instrumentId", instrumentId)
             .add("side", side)
-            .add("price", price)
+            .add("price", tickSize != null ? getPrice() : null)
             .add("quantity", quantity)
             .add("initialQuantity", initialQuantity)
             .toString();
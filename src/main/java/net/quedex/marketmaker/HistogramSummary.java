@@ -0,0 +1,104 @@
+package net.quedex.marketmaker;
+
+import org.HdrHistogram.Histogram;
+
+import javax.annotation.concurrent.Immutable;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Percentiles of values recorded in a {@link Histogram}, as exposed over JMX by {@link MarketMakerMetricsMXBean}.
+ */
+@Immutable
+public final class HistogramSummary {
+    static final HistogramSummary EMPTY = new HistogramSummary(0, 0, 0, 0, 0, 0, 0);
+
+    private final long count;
+    private final double mean;
+    private final long p50;
+    private final long p90;
+    private final long p99;
+    private final long p999;
+    private final long max;
+
+    @ConstructorProperties({"count", "mean", "p50", "p90", "p99", "p999", "max"})
+    public HistogramSummary(final long count,
+                            final double mean,
+                            final long p50,
+                            final long p90,
+                            final long p99,
+                            final long p999,
+                            final long max) {
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.p999 = p999;
+        this.max = max;
+    }
+
+    static HistogramSummary of(final Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return EMPTY;
+        }
+        return new HistogramSummary(
+            histogram.getTotalCount(),
+            histogram.getMean(),
+            histogram.getValueAtPercentile(50),
+            histogram.getValueAtPercentile(90),
+            histogram.getValueAtPercentile(99),
+            histogram.getValueAtPercentile(99.9),
+            histogram.getMaxValue()
+        );
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP90() {
+        return p90;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public long getP999() {
+        return p999;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Appends a compact form of the summary, with values divided by {@code unit}.
+     */
+    void appendTo(final StringBuilder builder, final long unit) {
+        builder.append("[n=").append(count);
+        if (count > 0) {
+            builder.append(" p50=").append(p50 / unit)
+                .append(" p99=").append(p99 / unit)
+                .append(" p99.9=").append(p999 / unit)
+                .append(" max=").append(max / unit);
+        }
+        builder.append(']');
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        appendTo(builder, 1);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,125 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Provides the fair volatility of an option as the volatility implied by the mid of its order book, at the fair price
+ * of its futures.
+ * <p>
+ * Quotes only record the mid; the volatility is solved for lazily, when asked for and only if the mid or the futures
+ * price changed since the last solve, starting from the previous volatility - which usually takes a couple of
+ * iterations. When there is no two-sided book or the mid is outside the no-arbitrage bounds, the last implied
+ * volatility is kept, or the default one is used if there has not been any.
+ */
+@NotThreadSafe
+public class ImpliedVolatilityProvider implements FairPriceProvider, QuotesListener {
+    private final InstrumentManager instrumentManager;
+    private final FairPriceProvider futuresFairPriceProvider;
+    private final Pricing pricing;
+    private final double defaultVolatility;
+    private final LongIntHashMap instrumentIdToIndex = new LongIntHashMap(64);
+
+    // per instrument
+    private double[] mids = new double[0];
+    private double[] solvedMids = new double[0];
+    private double[] solvedFuturesPrices = new double[0];
+    private double[] volatilities = new double[0];
+    private int instruments;
+
+    public ImpliedVolatilityProvider(final InstrumentManager instrumentManager,
+                                     final FairPriceProvider futuresFairPriceProvider,
+                                     final Pricing pricing,
+                                     final double defaultVolatility) {
+        checkArgument(defaultVolatility > 0, "defaultVolatility=%s <= 0", defaultVolatility);
+        this.instrumentManager = checkNotNull(instrumentManager, "null instrumentManager");
+        this.futuresFairPriceProvider = checkNotNull(futuresFairPriceProvider, "null futuresFairPriceProvider");
+        this.pricing = checkNotNull(pricing, "null pricing");
+        this.defaultVolatility = defaultVolatility;
+    }
+
+    @Override
+    public void onQuotes(final Quotes quotes) {
+        int index = instrumentIdToIndex.get(quotes.getInstrumentId());
+        if (index == LongIntHashMap.MISSING) {
+            index = addInstrument(quotes.getInstrumentId());
+        }
+        if (quotes.getBid() != null && quotes.getAsk() != null) {
+            mids[index] = (quotes.getBid().getPrice().doubleValue() + quotes.getAsk().getPrice().doubleValue()) / 2;
+        } else {
+            mids[index] = Double.NaN;
+        }
+    }
+
+    @Override
+    public BigDecimal getFairPrice(final int instrumentId) {
+        return BigDecimal.valueOf(getVolatility(instrumentId));
+    }
+
+    /**
+     * @return implied volatility of the option, the default volatility of a futures
+     */
+    public double getVolatility(final int instrumentId) {
+        final double volatility = getImpliedVolatility(instrumentId);
+        return Double.isNaN(volatility) ? defaultVolatility : volatility;
+    }
+
+    /**
+     * @return last implied volatility of the option, NaN if there has not been any or the instrument is a futures
+     */
+    public double getImpliedVolatility(final int instrumentId) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        if (index == LongIntHashMap.MISSING) {
+            return Double.NaN;
+        }
+
+        final double mid = mids[index];
+        final Instrument option = instrumentManager.getInstrument(instrumentId);
+        if (!Double.isNaN(mid) && !option.isFutures()) {
+            final double futuresPrice = futuresFairPriceProvider.getFairPrice(
+                instrumentManager.getFuturesAtExpiration(option.getExpirationDate()).getInstrumentId()
+            ).doubleValue();
+
+            if (mid != solvedMids[index] || futuresPrice != solvedFuturesPrices[index]) {
+                final double volatility = pricing.calculateImpliedVolatility(
+                    option, mid, futuresPrice, volatilities[index]
+                );
+                if (!Double.isNaN(volatility)) {
+                    volatilities[index] = volatility;
+                }
+                solvedMids[index] = mid;
+                solvedFuturesPrices[index] = futuresPrice;
+            }
+        }
+        return volatilities[index] > 0 ? volatilities[index] : Double.NaN;
+    }
+
+    /**
+     * @return mid of the two-sided order book of the instrument, NaN if there is none
+     */
+    public double getMid(final int instrumentId) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        return index == LongIntHashMap.MISSING ? Double.NaN : mids[index];
+    }
+
+    private int addInstrument(final int instrumentId) {
+        if (instruments == mids.length) {
+            final int capacity = Math.max(instruments << 1, 16);
+            mids = Arrays.copyOf(mids, capacity);
+            solvedMids = Arrays.copyOf(solvedMids, capacity);
+            solvedFuturesPrices = Arrays.copyOf(solvedFuturesPrices, capacity);
+            volatilities = Arrays.copyOf(volatilities, capacity);
+        }
+        instrumentIdToIndex.put(instrumentId, instruments);
+        return instruments++;
+    }
+}
@@ -4,57 +4,152 @@ import net.quedex.api.market.Instrument;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Keeps instruments and an index of the traded ones: futures, options, futures by expiration and option chains. The
+ * index is rebuilt only when the instruments change or when the next traded instrument expires, so lookups do not
+ * allocate.
+ */
 public class InstrumentManager {
     private static final Logger LOGGER = LoggerFactory.getLogger(InstrumentManager.class);
 
     private final TimeProvider timeProvider;
-    private final Map<Integer, Instrument> instruments;
+    private Map<Integer, Instrument> instruments;
+    private final Map<Integer, TickSize> tickSizes = new HashMap<>();
+
+    private List<Instrument> tradedInstruments;
+    private List<Instrument> tradedFutures;
+    private List<Instrument> tradedOptions;
+    private List<OptionChain> optionChains;
+    private final LongIntHashMap expirationToChainIndex = new LongIntHashMap(16);
+    private long nextRebuildTime;
 
     public InstrumentManager(final TimeProvider timeProvider, final Map<Integer, Instrument> instruments) {
         this.timeProvider = checkNotNull(timeProvider, "null timeProvider");
-        this.instruments = checkNotNull(instruments, "null instruments");
+        updateInstruments(instruments);
 
         LOGGER.info("Initialised with instruments: {}", instruments);
     }
 
+    /**
+     * Replaces the instruments, e.g. on listing of new ones.
+     */
+    public void updateInstruments(final Map<Integer, Instrument> instruments) {
+        this.instruments = checkNotNull(instruments, "null instruments");
+
+        for (final Instrument instrument : instruments.values()) {
+            tickSizes.computeIfAbsent(instrument.getInstrumentId(), id -> new TickSize(instrument.getTickSize()));
+        }
+        rebuildIndex(timeProvider.getCurrentTime());
+    }
+
     public Instrument getInstrument(final int instrumentId) {
         checkArgument(instruments.containsKey(instrumentId), "instrumentId=%s not found", instrumentId);
         return instruments.get(instrumentId);
     }
 
+    public TickSize getTickSize(final int instrumentId) {
+        checkArgument(tickSizes.containsKey(instrumentId), "instrumentId=%s not found", instrumentId);
+        return tickSizes.get(instrumentId);
+    }
+
     public List<Instrument> getTradedInstruments() {
-        return instruments.values().stream()
-            .filter(i -> i.isTraded(timeProvider.getCurrentTime()))
-            .collect(Collectors.toList());
+        refreshIndex();
+        return tradedInstruments;
     }
 
     public List<Instrument> getTradedFutures() {
-        return instruments.values().stream()
-            .filter(Instrument::isFutures)
-            .filter(i -> i.isTraded(timeProvider.getCurrentTime()))
-            .collect(Collectors.toList());
+        refreshIndex();
+        return tradedFutures;
     }
 
     public List<Instrument> getTradedOptions() {
-        return instruments.values().stream()
-            .filter(i -> !i.isFutures())
-            .filter(i -> i.isTraded(timeProvider.getCurrentTime()))
-            .collect(Collectors.toList());
+        refreshIndex();
+        return tradedOptions;
+    }
+
+    /**
+     * @return chains of traded options, one per traded futures, sorted by expiration
+     */
+    public List<OptionChain> getOptionChains() {
+        refreshIndex();
+        return optionChains;
+    }
+
+    public OptionChain getOptionChain(final long expirationDate) {
+        refreshIndex();
+        final int index = expirationToChainIndex.get(expirationDate);
+        if (index == LongIntHashMap.MISSING) {
+            throw new IllegalArgumentException("Futures with expiration date: " + expirationDate + " not found");
+        }
+        return optionChains.get(index);
     }
 
     public Instrument getFuturesAtExpiration(final long expirationDate) {
-        for (final Instrument futures : getTradedFutures()) {
-            if (futures.getExpirationDate() == expirationDate) {
-                return futures;
+        return getOptionChain(expirationDate).getFutures();
+    }
+
+    private void refreshIndex() {
+        final long currentTime = timeProvider.getCurrentTime();
+        if (currentTime >= nextRebuildTime) {
+            rebuildIndex(currentTime);
+        }
+    }
+
+    private void rebuildIndex(final long currentTime) {
+        final List<Instrument> instrumentsTraded = new ArrayList<>();
+        final List<Instrument> futuresTraded = new ArrayList<>();
+        final List<Instrument> optionsTraded = new ArrayList<>();
+        final Map<Long, List<Instrument>> expirationToOptions = new HashMap<>();
+        long nextChange = Long.MAX_VALUE;
+
+        for (final Instrument instrument : instruments.values()) {
+            if (!instrument.isTraded(currentTime)) {
+                continue;
             }
+            instrumentsTraded.add(instrument);
+            if (instrument.isFutures()) {
+                futuresTraded.add(instrument);
+            } else {
+                optionsTraded.add(instrument);
+                expirationToOptions.computeIfAbsent(instrument.getExpirationDate(), e -> new ArrayList<>())
+                    .add(instrument);
+            }
+            if (instrument.getExpirationDate() > currentTime) {
+                nextChange = Math.min(nextChange, instrument.getExpirationDate());
+            }
+        }
+
+        final OptionChain[] chains = new OptionChain[futuresTraded.size()];
+        futuresTraded.sort((f1, f2) -> Long.compare(f1.getExpirationDate(), f2.getExpirationDate()));
+        expirationToChainIndex.clear();
+        for (int i = 0; i < chains.length; i++) {
+            final Instrument futures = futuresTraded.get(i);
+            chains[i] = new OptionChain(
+                futures,
+                expirationToOptions.getOrDefault(futures.getExpirationDate(), Collections.emptyList())
+            );
+            expirationToChainIndex.put(futures.getExpirationDate(), i);
         }
-        throw new IllegalArgumentException("Futures with expiration date: " + expirationDate + " not found");
+
+        tradedInstruments = Collections.unmodifiableList(instrumentsTraded);
+        tradedFutures = Collections.unmodifiableList(futuresTraded);
+        tradedOptions = Collections.unmodifiableList(optionsTraded);
+        optionChains = Collections.unmodifiableList(Arrays.asList(chains));
+        nextRebuildTime = nextChange;
+
+        LOGGER.info(
+            "Indexed traded instruments: futures={}, options={}, next rebuild at {}",
+            futuresTraded.size(), optionsTraded.size(), nextRebuildTime
+        );
     }
 }
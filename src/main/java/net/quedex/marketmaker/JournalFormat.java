@@ -0,0 +1,124 @@
+package net.quedex.marketmaker;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Layout of journal files written by {@link JournalWriter}.
+ * <p>
+ * Files are named {@code journal-<index>.bin}, with indices increasing. A file is a sequence of records, each being a
+ * header:
+ * <pre>
+ * int type | int payload size | long timestamp (millis)
+ * </pre>
+ * followed by a payload of a layout for the type, of a fixed size except for instruments (decimals being
+ * {@code long unscaled | int scale}, with {@link #NULL_SCALE} for null, and sides and instrument types {@code int}
+ * ordinals of their enums). A record of type 0 (not written) ends the file. Byte order is big-endian.
+ */
+final class JournalFormat {
+    static final int HEADER_SIZE = 16;
+    static final int NULL_SCALE = Integer.MIN_VALUE;
+
+    static final int QUOTES = 1;
+    static final int ORDER_PLACED = 2;
+    static final int ORDER_PLACE_FAILED = 3;
+    static final int ORDER_FILLED = 4;
+    static final int ORDER_CANCELLED = 5;
+    static final int ORDER_FORCEFULLY_CANCELLED = 6;
+    static final int ORDER_CANCEL_FAILED = 7;
+    static final int ALL_ORDERS_CANCELLED = 8;
+    static final int ORDER_MODIFIED = 9;
+    static final int ORDER_MODIFICATION_FAILED = 10;
+    static final int OPEN_POSITION = 11;
+    static final int BATCH = 12;
+    static final int LIMIT_ORDER_SPEC = 13;
+    static final int ORDER_MODIFICATION_SPEC = 14;
+    static final int ORDER_CANCEL_SPEC = 15;
+    static final int CANCEL_ALL_ORDERS_SPEC = 16;
+    static final int INSTRUMENTS = 17;
+
+    /**
+     * int instrumentId | decimal last | int lastQuantity | decimal bid | int bidQuantity | decimal ask |
+     * int askQuantity | long volume | int openInterest
+     */
+    static final int QUOTES_SIZE = 64;
+    /**
+     * long clientOrderId | int instrumentId | decimal price | int initialQuantity | int quantity | int side
+     */
+    static final int ORDER_PLACED_SIZE = 36;
+    /**
+     * long clientOrderId | int instrumentId | decimal tradePrice | int filledQuantity | int leavesQuantity | int side
+     */
+    static final int ORDER_FILLED_SIZE = 36;
+    /**
+     * long clientOrderId
+     */
+    static final int ORDER_ID_SIZE = 8;
+    /**
+     * int instrumentId | int signed quantity
+     */
+    static final int OPEN_POSITION_SIZE = 8;
+    /**
+     * int number of commands following
+     */
+    static final int BATCH_SIZE = 4;
+    /**
+     * long clientOrderId | int instrumentId | int side | int quantity | decimal price
+     */
+    static final int LIMIT_ORDER_SPEC_SIZE = 32;
+    /**
+     * long clientOrderId | int newQuantity | decimal newPrice
+     */
+    static final int ORDER_MODIFICATION_SPEC_SIZE = 24;
+
+    /**
+     * int number of instruments, each being {@link #INSTRUMENT_SIZE} bytes followed by its symbol
+     */
+    static final int INSTRUMENTS_SIZE = 4;
+    /**
+     * int instrumentId | int type | int optionType (-1 for futures) | long expirationDate | long firstNoticeDate |
+     * decimal strike | decimal tickSize | int notionalAmount | short symbol length (bytes of UTF-8)
+     */
+    static final int INSTRUMENT_SIZE = 58;
+
+    /**
+     * of records of a fixed size - instruments records are of a variable size
+     */
+    static final int MAX_RECORD_SIZE = HEADER_SIZE + QUOTES_SIZE;
+
+    private static final Pattern FILE_NAME = Pattern.compile("journal-(\\d+)\\.bin");
+
+    private JournalFormat() {
+        throw new AssertionError();
+    }
+
+    static String getFileName(final int index) {
+        return String.format("journal-%06d.bin", index);
+    }
+
+    static int getFileIndex(final Path file) {
+        final Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a journal file: " + file);
+        }
+        return Integer.parseInt(matcher.group(1));
+    }
+
+    /**
+     * @return journal files in the directory, in the order of writing
+     */
+    static List<Path> listFiles(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(file -> FILE_NAME.matcher(file.getFileName().toString()).matches())
+                .sorted((f1, f2) -> Integer.compare(getFileIndex(f1), getFileIndex(f2)))
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.user.CancelAllOrdersSpec;
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderFilled;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSide;
+import net.quedex.api.user.OrderSpec;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a journal written by {@link JournalWriter}, passing the records to a {@link Handler} in the order of writing.
+ * Run as a program, prints the records of the journal in the given directory.
+ */
+public class JournalReader {
+    private static final OrderSide[] SIDES = OrderSide.values();
+    private static final Instrument.Type[] TYPES = Instrument.Type.values();
+    private static final Instrument.OptionType[] OPTION_TYPES = Instrument.OptionType.values();
+
+    private final Path directory;
+
+    public JournalReader(final Path directory) {
+        this.directory = checkNotNull(directory, "null directory");
+    }
+
+    public static void main(final String... args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: JournalReader <journal directory>");
+            System.exit(1);
+        }
+        new JournalReader(Paths.get(args[0])).read(new Printer());
+    }
+
+    public void read(final Handler handler) throws IOException {
+        for (final Path file : JournalFormat.listFiles(directory)) {
+            readFile(file, handler);
+        }
+    }
+
+    private void readFile(final Path file, final Handler handler) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        List<OrderSpec> batch = null;
+        int batchSize = 0;
+        long batchTimestamp = 0;
+        int position = 0;
+
+        while (position + JournalFormat.HEADER_SIZE <= buffer.limit()) {
+            final int type = buffer.getInt(position);
+            if (type == 0) {
+                break;
+            }
+            final int size = buffer.getInt(position + 4);
+            final long timestamp = buffer.getLong(position + 8);
+            final int at = position + JournalFormat.HEADER_SIZE;
+            position = at + size;
+
+            OrderSpec orderSpec = null;
+            switch (type) {
+                case JournalFormat.INSTRUMENTS:
+                    handler.onInstruments(timestamp, readInstruments(buffer, at));
+                    break;
+                case JournalFormat.QUOTES:
+                    handler.onQuotes(timestamp, readQuotes(buffer, at));
+                    break;
+                case JournalFormat.ORDER_PLACED:
+                    handler.onOrderPlaced(timestamp, new OrderPlaced(
+                        buffer.getLong(at),
+                        buffer.getInt(at + 8),
+                        readDecimal(buffer, at + 12),
+                        buffer.getInt(at + 24),
+                        buffer.getInt(at + 28),
+                        SIDES[buffer.getInt(at + 32)]
+                    ));
+                    break;
+                case JournalFormat.ORDER_PLACE_FAILED:
+                    handler.onOrderPlaceFailed(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.ORDER_FILLED:
+                    handler.onOrderFilled(timestamp, new OrderFilled(
+                        buffer.getLong(at),
+                        buffer.getInt(at + 8),
+                        readDecimal(buffer, at + 12),
+                        buffer.getInt(at + 24),
+                        buffer.getInt(at + 28),
+                        SIDES[buffer.getInt(at + 32)]
+                    ));
+                    break;
+                case JournalFormat.ORDER_CANCELLED:
+                    handler.onOrderCancelled(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.ORDER_FORCEFULLY_CANCELLED:
+                    handler.onOrderForcefullyCancelled(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.ORDER_CANCEL_FAILED:
+                    handler.onOrderCancelFailed(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.ALL_ORDERS_CANCELLED:
+                    handler.onAllOrdersCancelled(timestamp);
+                    break;
+                case JournalFormat.ORDER_MODIFIED:
+                    handler.onOrderModified(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.ORDER_MODIFICATION_FAILED:
+                    handler.onOrderModificationFailed(timestamp, buffer.getLong(at));
+                    break;
+                case JournalFormat.OPEN_POSITION:
+                    final int quantity = buffer.getInt(at + 4);
+                    handler.onOpenPosition(timestamp, new OpenPosition(
+                        buffer.getInt(at),
+                        Math.abs(quantity),
+                        quantity < 0 ? OrderSide.SELL : OrderSide.BUY
+                    ));
+                    break;
+                case JournalFormat.BATCH:
+                    batchSize = buffer.getInt(at);
+                    batch = new ArrayList<>(batchSize);
+                    batchTimestamp = timestamp;
+                    break;
+                case JournalFormat.LIMIT_ORDER_SPEC:
+                    orderSpec = new LimitOrderSpec(
+                        buffer.getLong(at),
+                        buffer.getInt(at + 8),
+                        SIDES[buffer.getInt(at + 12)],
+                        buffer.getInt(at + 16),
+                        readDecimal(buffer, at + 20)
+                    );
+                    break;
+                case JournalFormat.ORDER_MODIFICATION_SPEC:
+                    orderSpec = new OrderModificationSpec(
+                        buffer.getLong(at),
+                        buffer.getInt(at + 8),
+                        readDecimal(buffer, at + 12)
+                    );
+                    break;
+                case JournalFormat.ORDER_CANCEL_SPEC:
+                    orderSpec = new OrderCancelSpec(buffer.getLong(at));
+                    break;
+                case JournalFormat.CANCEL_ALL_ORDERS_SPEC:
+                    orderSpec = CancelAllOrdersSpec.INSTANCE;
+                    break;
+                default:
+                    // unknown record - skipped
+            }
+
+            if (orderSpec != null && batch != null) {
+                batch.add(orderSpec);
+            }
+            if (batch != null && batch.size() == batchSize) {
+                handler.onOrderSpecs(batchTimestamp, batch);
+                batch = null;
+            }
+        }
+    }
+
+    private static Map<Integer, Instrument> readInstruments(final MappedByteBuffer buffer, final int at) {
+        final int count = buffer.getInt(at);
+        final Map<Integer, Instrument> instruments = new HashMap<>(count * 2);
+        int offset = at + JournalFormat.INSTRUMENTS_SIZE;
+
+        for (int i = 0; i < count; i++) {
+            final int optionType = buffer.getInt(offset + 8);
+            final byte[] symbol = new byte[buffer.getShort(offset + 56)];
+            for (int j = 0; j < symbol.length; j++) {
+                symbol[j] = buffer.get(offset + JournalFormat.INSTRUMENT_SIZE + j);
+            }
+            final Instrument instrument = new Instrument(
+                new String(symbol, StandardCharsets.UTF_8),
+                buffer.getInt(offset),
+                TYPES[buffer.getInt(offset + 4)],
+                optionType < 0 ? null : OPTION_TYPES[optionType],
+                buffer.getLong(offset + 12),
+                readDecimal(buffer, offset + 28),
+                readDecimal(buffer, offset + 40),
+                buffer.getInt(offset + 52),
+                buffer.getLong(offset + 20)
+            );
+            instruments.put(instrument.getInstrumentId(), instrument);
+            offset += JournalFormat.INSTRUMENT_SIZE + symbol.length;
+        }
+        return instruments;
+    }
+
+    private static Quotes readQuotes(final MappedByteBuffer buffer, final int at) {
+        final BigDecimal bid = readDecimal(buffer, at + 20);
+        final BigDecimal ask = readDecimal(buffer, at + 36);
+        return new Quotes(
+            buffer.getInt(at),
+            readDecimal(buffer, at + 4),
+            buffer.getInt(at + 16),
+            bid,
+            bid != null ? buffer.getInt(at + 32) : null,
+            ask,
+            ask != null ? buffer.getInt(at + 48) : null,
+            buffer.getLong(at + 52),
+            buffer.getInt(at + 60)
+        );
+    }
+
+    private static BigDecimal readDecimal(final MappedByteBuffer buffer, final int at) {
+        final int scale = buffer.getInt(at + 8);
+        return scale == JournalFormat.NULL_SCALE ? null : BigDecimal.valueOf(buffer.getLong(at), scale);
+    }
+
+    /**
+     * Receives records of a journal, ignoring them by default. Order events without data beyond the order id are
+     * passed as the id.
+     */
+    public interface Handler {
+        default void onInstruments(final long timestamp, final Map<Integer, Instrument> instruments) {
+        }
+
+        default void onQuotes(final long timestamp, final Quotes quotes) {
+        }
+
+        default void onOrderPlaced(final long timestamp, final OrderPlaced orderPlaced) {
+        }
+
+        default void onOrderPlaceFailed(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onOrderFilled(final long timestamp, final OrderFilled orderFilled) {
+        }
+
+        default void onOrderCancelled(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onOrderForcefullyCancelled(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onOrderCancelFailed(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onAllOrdersCancelled(final long timestamp) {
+        }
+
+        default void onOrderModified(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onOrderModificationFailed(final long timestamp, final long clientOrderId) {
+        }
+
+        default void onOpenPosition(final long timestamp, final OpenPosition openPosition) {
+        }
+
+        default void onOrderSpecs(final long timestamp, final List<OrderSpec> orderSpecs) {
+        }
+    }
+
+    private static final class Printer implements Handler {
+        @Override
+        public void onInstruments(final long timestamp, final Map<Integer, Instrument> instruments) {
+            print(timestamp, instruments.values());
+        }
+
+        @Override
+        public void onQuotes(final long timestamp, final Quotes quotes) {
+            print(timestamp, quotes);
+        }
+
+        @Override
+        public void onOrderPlaced(final long timestamp, final OrderPlaced orderPlaced) {
+            print(timestamp, orderPlaced);
+        }
+
+        @Override
+        public void onOrderPlaceFailed(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderPlaceFailed " + clientOrderId);
+        }
+
+        @Override
+        public void onOrderFilled(final long timestamp, final OrderFilled orderFilled) {
+            print(timestamp, orderFilled);
+        }
+
+        @Override
+        public void onOrderCancelled(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderCancelled " + clientOrderId);
+        }
+
+        @Override
+        public void onOrderForcefullyCancelled(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderForcefullyCancelled " + clientOrderId);
+        }
+
+        @Override
+        public void onOrderCancelFailed(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderCancelFailed " + clientOrderId);
+        }
+
+        @Override
+        public void onAllOrdersCancelled(final long timestamp) {
+            print(timestamp, "AllOrdersCancelled");
+        }
+
+        @Override
+        public void onOrderModified(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderModified " + clientOrderId);
+        }
+
+        @Override
+        public void onOrderModificationFailed(final long timestamp, final long clientOrderId) {
+            print(timestamp, "OrderModificationFailed " + clientOrderId);
+        }
+
+        @Override
+        public void onOpenPosition(final long timestamp, final OpenPosition openPosition) {
+            print(timestamp, openPosition);
+        }
+
+        @Override
+        public void onOrderSpecs(final long timestamp, final List<OrderSpec> orderSpecs) {
+            print(timestamp, orderSpecs);
+        }
+
+        private static void print(final long timestamp, final Object record) {
+            System.out.println(timestamp + " " + record);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.InstrumentsListener;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+import net.quedex.api.user.CancelAllOrdersFailed;
+import net.quedex.api.user.CancelAllOrdersSpec;
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.LiquidationOrderCancelled;
+import net.quedex.api.user.LiquidationOrderFilled;
+import net.quedex.api.user.LiquidationOrderPlaced;
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OpenPositionListener;
+import net.quedex.api.user.OrderCancelFailed;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderCancelled;
+import net.quedex.api.user.OrderFilled;
+import net.quedex.api.user.OrderForcefullyCancelled;
+import net.quedex.api.user.OrderListener;
+import net.quedex.api.user.OrderModificationFailed;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderModified;
+import net.quedex.api.user.OrderPlaceFailed;
+import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Records instruments, market data, order events, positions and sent commands to an append-only binary journal, to be
+ * read by {@link JournalReader}. Registered as a listener, it records events as they are dispatched.
+ * <p>
+ * The journal is a sequence of files of a fixed size, memory-mapped for writing, so recording an event is a few
+ * stores to memory. A file holds records with a fixed layout per type, see {@link JournalFormat}; when the next record
+ * does not fit, a new file is started.
+ */
+@NotThreadSafe
+public class JournalWriter
+    implements InstrumentsListener, QuotesListener, OrderListener, OpenPositionListener, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(JournalWriter.class);
+
+    private final Path directory;
+    private final int fileSize;
+    private final TimeProvider timeProvider;
+
+    private int fileIndex;
+    private MappedByteBuffer buffer;
+    private int position;
+    private boolean closed = false;
+
+    public JournalWriter(final Path directory, final int fileSize, final TimeProvider timeProvider) {
+        this.directory = checkNotNull(directory, "null directory");
+        checkArgument(fileSize >= JournalFormat.MAX_RECORD_SIZE, "fileSize=%s too small", fileSize);
+        this.fileSize = fileSize;
+        this.timeProvider = checkNotNull(timeProvider, "null timeProvider");
+
+        try {
+            Files.createDirectories(directory);
+            fileIndex = JournalFormat.listFiles(directory).stream()
+                .mapToInt(JournalFormat::getFileIndex)
+                .max()
+                .orElse(-1);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        nextFile();
+    }
+
+    @Override
+    public void onInstruments(final Map<Integer, Instrument> instruments) {
+        final byte[][] symbols = new byte[instruments.size()][];
+        int payloadSize = JournalFormat.INSTRUMENTS_SIZE;
+        int i = 0;
+        for (final Instrument instrument : instruments.values()) {
+            symbols[i] = instrument.getSymbol().getBytes(StandardCharsets.UTF_8);
+            payloadSize += JournalFormat.INSTRUMENT_SIZE + symbols[i].length;
+            i++;
+        }
+
+        final int at = startRecord(payloadSize);
+        buffer.putInt(at, instruments.size());
+        int offset = at + JournalFormat.INSTRUMENTS_SIZE;
+        i = 0;
+        for (final Instrument instrument : instruments.values()) {
+            buffer.putInt(offset, instrument.getInstrumentId());
+            buffer.putInt(offset + 4, instrument.getType().ordinal());
+            buffer.putInt(offset + 8, instrument.isFutures() ? -1 : instrument.getOptionType().ordinal());
+            buffer.putLong(offset + 12, instrument.getExpirationDate());
+            buffer.putLong(offset + 20, instrument.getFirstNoticeDate());
+            putDecimal(offset + 28, instrument.getStrike());
+            putDecimal(offset + 40, instrument.getTickSize());
+            buffer.putInt(offset + 52, instrument.getNotionalAmount());
+            buffer.putShort(offset + 56, (short) symbols[i].length);
+            offset += JournalFormat.INSTRUMENT_SIZE;
+            for (final byte b : symbols[i]) {
+                buffer.put(offset++, b);
+            }
+            i++;
+        }
+        endRecord(JournalFormat.INSTRUMENTS, payloadSize);
+    }
+
+    @Override
+    public void onQuotes(final Quotes quotes) {
+        final int at = startRecord(JournalFormat.QUOTES_SIZE);
+        buffer.putInt(at, quotes.getInstrumentId());
+        putDecimal(at + 4, quotes.getLast());
+        buffer.putInt(at + 16, quotes.getLastQuantity());
+        if (quotes.getBid() != null) {
+            putDecimal(at + 20, quotes.getBid().getPrice());
+            buffer.putInt(at + 32, quotes.getBid().getQuantity());
+        } else {
+            putDecimal(at + 20, null);
+        }
+        if (quotes.getAsk() != null) {
+            putDecimal(at + 36, quotes.getAsk().getPrice());
+            buffer.putInt(at + 48, quotes.getAsk().getQuantity());
+        } else {
+            putDecimal(at + 36, null);
+        }
+        buffer.putLong(at + 52, quotes.getVolume());
+        buffer.putInt(at + 60, quotes.getOpenInterest());
+        endRecord(JournalFormat.QUOTES, JournalFormat.QUOTES_SIZE);
+    }
+
+    @Override
+    public void onOrderPlaced(final OrderPlaced orderPlaced) {
+        final int at = startRecord(JournalFormat.ORDER_PLACED_SIZE);
+        buffer.putLong(at, orderPlaced.getClientOrderId());
+        buffer.putInt(at + 8, orderPlaced.getInstrumentId());
+        putDecimal(at + 12, orderPlaced.getPrice());
+        buffer.putInt(at + 24, orderPlaced.getInitialQuantity());
+        buffer.putInt(at + 28, orderPlaced.getQuantity());
+        buffer.putInt(at + 32, orderPlaced.getSide().ordinal());
+        endRecord(JournalFormat.ORDER_PLACED, JournalFormat.ORDER_PLACED_SIZE);
+    }
+
+    @Override
+    public void onOrderFilled(final OrderFilled orderFilled) {
+        final int at = startRecord(JournalFormat.ORDER_FILLED_SIZE);
+        buffer.putLong(at, orderFilled.getClientOrderId());
+        buffer.putInt(at + 8, orderFilled.getInstrumentId());
+        putDecimal(at + 12, orderFilled.getTradePrice());
+        buffer.putInt(at + 24, orderFilled.getFilledQuantity());
+        buffer.putInt(at + 28, orderFilled.getLeavesQuantity());
+        buffer.putInt(at + 32, orderFilled.getSide().ordinal());
+        endRecord(JournalFormat.ORDER_FILLED, JournalFormat.ORDER_FILLED_SIZE);
+    }
+
+    @Override
+    public void onOrderCancelled(final OrderCancelled orderCancelled) {
+        putOrderId(JournalFormat.ORDER_CANCELLED, orderCancelled.getClientOrderId());
+    }
+
+    @Override
+    public void onOrderForcefullyCancelled(final OrderForcefullyCancelled orderForcefullyCancelled) {
+        putOrderId(JournalFormat.ORDER_FORCEFULLY_CANCELLED, orderForcefullyCancelled.getClientOrderId());
+    }
+
+    @Override
+    public void onOrderModified(final OrderModified orderModified) {
+        putOrderId(JournalFormat.ORDER_MODIFIED, orderModified.getClientOrderId());
+    }
+
+    @Override
+    public void onOpenPosition(final OpenPosition openPosition) {
+        final int at = startRecord(JournalFormat.OPEN_POSITION_SIZE);
+        buffer.putInt(at, openPosition.getInstrumentId());
+        buffer.putInt(at + 4, openPosition.getQuantitySigned());
+        endRecord(JournalFormat.OPEN_POSITION, JournalFormat.OPEN_POSITION_SIZE);
+    }
+
+    /**
+     * Records a batch of commands to be sent, as a batch record followed by a record per command.
+     */
+    public void onOrderSpecs(final List<OrderSpec> orderSpecs) {
+        final int at = startRecord(JournalFormat.BATCH_SIZE);
+        buffer.putInt(at, orderSpecs.size());
+        endRecord(JournalFormat.BATCH, JournalFormat.BATCH_SIZE);
+
+        for (final OrderSpec orderSpec : orderSpecs) {
+            if (orderSpec instanceof LimitOrderSpec) {
+                putLimitOrderSpec((LimitOrderSpec) orderSpec);
+            } else if (orderSpec instanceof OrderModificationSpec) {
+                putOrderModificationSpec((OrderModificationSpec) orderSpec);
+            } else if (orderSpec instanceof OrderCancelSpec) {
+                putOrderId(JournalFormat.ORDER_CANCEL_SPEC, ((OrderCancelSpec) orderSpec).getClientOrderId());
+            } else if (orderSpec instanceof CancelAllOrdersSpec) {
+                startRecord(0);
+                endRecord(JournalFormat.CANCEL_ALL_ORDERS_SPEC, 0);
+            } else {
+                throw new IllegalArgumentException("Unsupported orderSpec=" + orderSpec);
+            }
+        }
+    }
+
+    @Override
+    public void onOrderPlaceFailed(final OrderPlaceFailed orderPlaceFailed) {
+        putOrderId(JournalFormat.ORDER_PLACE_FAILED, orderPlaceFailed.getClientOrderId());
+    }
+
+    @Override
+    public void onOrderCancelFailed(final OrderCancelFailed orderCancelFailed) {
+        putOrderId(JournalFormat.ORDER_CANCEL_FAILED, orderCancelFailed.getClientOrderId());
+    }
+
+    @Override
+    public void onOrderModificationFailed(final OrderModificationFailed orderModificationFailed) {
+        putOrderId(JournalFormat.ORDER_MODIFICATION_FAILED, orderModificationFailed.getClientOrderId());
+    }
+
+    @Override
+    public void onAllOrdersCancelled() {
+        startRecord(0);
+        endRecord(JournalFormat.ALL_ORDERS_CANCELLED, 0);
+    }
+
+    @Override
+    public void onCancelAllOrdersFailed(final CancelAllOrdersFailed cancelAllOrdersFailed) {
+        // not recorded
+    }
+
+    @Override
+    public void onLiquidationOrderPlaced(final LiquidationOrderPlaced liquidationOrderPlaced) {
+        // not recorded
+    }
+
+    @Override
+    public void onLiquidationOrderCancelled(final LiquidationOrderCancelled liquidationOrderCancelled) {
+        // not recorded
+    }
+
+    @Override
+    public void onLiquidationOrderFilled(final LiquidationOrderFilled liquidationOrderFilled) {
+        // not recorded
+    }
+
+    /**
+     * Flushes the current file. To be called once no more events are recorded.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            buffer.force();
+            LOGGER.info("Closed journal file {}", JournalFormat.getFileName(fileIndex));
+        }
+    }
+
+    private void putOrderId(final int type, final long clientOrderId) {
+        final int at = startRecord(JournalFormat.ORDER_ID_SIZE);
+        buffer.putLong(at, clientOrderId);
+        endRecord(type, JournalFormat.ORDER_ID_SIZE);
+    }
+
+    private void putLimitOrderSpec(final LimitOrderSpec limitOrderSpec) {
+        final int at = startRecord(JournalFormat.LIMIT_ORDER_SPEC_SIZE);
+        buffer.putLong(at, limitOrderSpec.getClientOrderId());
+        buffer.putInt(at + 8, limitOrderSpec.getInstrumentId());
+        buffer.putInt(at + 12, limitOrderSpec.getSide().ordinal());
+        buffer.putInt(at + 16, limitOrderSpec.getQuantity());
+        putDecimal(at + 20, limitOrderSpec.getPrice());
+        endRecord(JournalFormat.LIMIT_ORDER_SPEC, JournalFormat.LIMIT_ORDER_SPEC_SIZE);
+    }
+
+    private void putOrderModificationSpec(final OrderModificationSpec orderModificationSpec) {
+        final int at = startRecord(JournalFormat.ORDER_MODIFICATION_SPEC_SIZE);
+        buffer.putLong(at, orderModificationSpec.getClientOrderId());
+        buffer.putInt(at + 8, orderModificationSpec.getNewQuantity());
+        putDecimal(at + 12, orderModificationSpec.getNewPrice());
+        endRecord(JournalFormat.ORDER_MODIFICATION_SPEC, JournalFormat.ORDER_MODIFICATION_SPEC_SIZE);
+    }
+
+    private void putDecimal(final int at, final BigDecimal value) {
+        if (value == null) {
+            buffer.putLong(at, 0);
+            buffer.putInt(at + 8, JournalFormat.NULL_SCALE);
+        } else {
+            buffer.putLong(at, value.unscaledValue().longValueExact());
+            buffer.putInt(at + 8, value.scale());
+        }
+    }
+
+    /**
+     * @return offset of the payload of the record
+     */
+    private int startRecord(final int payloadSize) {
+        checkState(!closed, "Journal closed");
+        checkArgument(
+            JournalFormat.HEADER_SIZE + payloadSize <= fileSize,
+            "Record of payloadSize=%s does not fit in fileSize=%s", payloadSize, fileSize
+        );
+        if (position + JournalFormat.HEADER_SIZE + payloadSize > fileSize) {
+            nextFile();
+        }
+        return position + JournalFormat.HEADER_SIZE;
+    }
+
+    /**
+     * Writes the header, the type last, as a non-zero type marks the record as complete.
+     */
+    private void endRecord(final int type, final int payloadSize) {
+        buffer.putInt(position + 4, payloadSize);
+        buffer.putLong(position + 8, timeProvider.getCurrentTime());
+        buffer.putInt(position, type);
+        position += JournalFormat.HEADER_SIZE + payloadSize;
+    }
+
+    private void nextFile() {
+        fileIndex++;
+        final Path file = directory.resolve(JournalFormat.getFileName(fileIndex));
+
+        try (FileChannel channel = FileChannel.open(
+            file,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE
+        )) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize); // stays valid after closing channel
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+
+        LOGGER.info("Started journal file {}", file);
+    }
+}
@@ -0,0 +1,64 @@
+package net.quedex.marketmaker;
+
+import org.apache.commons.configuration.ConfigurationException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link MarketMakerRunner} against a {@link SimulatedExchange} for a given time, then prints throughput and
+ * tick-to-order latency measured by the exchange.
+ */
+public final class LoadTest {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 100};
+
+    private LoadTest() {
+        throw new AssertionError();
+    }
+
+    public static void main(final String... args) throws ConfigurationException, InterruptedException {
+        if (args.length != 6) {
+            System.err.println(
+                "Usage: LoadTest <market maker properties file name> <expirations> <strikes per expiration> "
+                    + "<quotes per second> <latency micros> <duration seconds>"
+            );
+            System.exit(1);
+        }
+        final MarketMakerConfiguration config = MarketMakerConfiguration.fromPropertiesFile(args[0]);
+        final SimulatedExchange exchange = new SimulatedExchange(
+            Integer.parseInt(args[1]),
+            Integer.parseInt(args[2]),
+            Integer.parseInt(args[3]),
+            Long.parseLong(args[4]),
+            0
+        );
+        final long durationSeconds = Long.parseLong(args[5]);
+
+        final MarketMakerRunner runner = new MarketMakerRunner(
+            exchange.getMarketStream(),
+            exchange.getUserStream(),
+            config
+        );
+        final Thread runnerThread = new Thread(runner::runLoop, "runner");
+        final long startNanos = System.nanoTime();
+        runnerThread.start();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        runner.stop();
+        runnerThread.join(); // includes cancelling orders at the end, with the exchange running
+        final long elapsedSeconds = Math.max(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos), 1);
+
+        System.out.printf(
+            "instruments=%d, quotes=%d (%d/s), batches=%d, commands=%d, fills=%d%n",
+            exchange.getInstruments().size(),
+            exchange.getQuotes(),
+            exchange.getQuotes() / elapsedSeconds,
+            exchange.getBatches(),
+            exchange.getCommands(),
+            exchange.getFills()
+        );
+        final StringBuilder latencies = new StringBuilder("tick-to-order micros:");
+        for (final double percentile : PERCENTILES) {
+            latencies.append(" p").append(percentile).append('=').append(exchange.getTickToOrderMicros(percentile));
+        }
+        System.out.println(latencies);
+    }
+}
@@ -0,0 +1,149 @@
+package net.quedex.marketmaker;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Open-addressing hash map from {@code long} keys to {@code int} values, with linear probing and backward shift
+ * deletion. Allocates only when growing.
+ */
+@NotThreadSafe
+public final class LongIntHashMap {
+    public static final int MISSING = -1;
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final double LOAD_FACTOR = 0.5;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    public LongIntHashMap(final int expectedSize) {
+        checkArgument(expectedSize >= 0, "expectedSize=%s < 0", expectedSize);
+        allocate(Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR), 8) - 1) << 1);
+    }
+
+    /**
+     * @return value for the key or {@link #MISSING}
+     */
+    public int get(final long key) {
+        int i = index(key);
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public boolean containsKey(final long key) {
+        return get(key) != MISSING;
+    }
+
+    /**
+     * @param value any value but {@link #MISSING}
+     */
+    public void put(final long key, final int value) {
+        checkArgument(key != FREE, "Unsupported key=%s", key);
+        checkArgument(value != MISSING, "Unsupported value=%s", value);
+
+        int i = index(key);
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /**
+     * @return removed value or {@link #MISSING}
+     */
+    public int remove(final long key) {
+        int i = index(key);
+        long k;
+        while ((k = keys[i]) != FREE) {
+            if (k == key) {
+                final int value = values[i];
+                compactFrom(i);
+                size--;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    /**
+     * Shifts back entries following the removed one which would otherwise become unreachable.
+     */
+    private void compactFrom(int free) {
+        int i = (free + 1) & mask;
+        long k;
+        while ((k = keys[i]) != FREE) {
+            final int home = index(k);
+            // move the entry if its home is not cyclically within (free, i]
+            if (((i - home) & mask) >= ((i - free) & mask)) {
+                keys[free] = k;
+                values[free] = values[i];
+                free = i;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[free] = FREE;
+    }
+
+    private void rehash(final int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        allocate(capacity);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int j = index(oldKeys[i]);
+                while (keys[j] != FREE) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private int index(final long key) {
+        final long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
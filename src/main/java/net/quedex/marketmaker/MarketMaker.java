@@ -1,10 +1,11 @@
 package net.quedex.marketmaker;
 
+import com.google.common.collect.ObjectArrays;
 import net.quedex.api.market.Instrument;
+import net.quedex.api.market.InstrumentsListener;
 import net.quedex.api.market.Quotes;
 import net.quedex.api.market.QuotesListener;
 import net.quedex.api.user.CancelAllOrdersFailed;
-import net.quedex.api.user.CancelAllOrdersSpec;
 import net.quedex.api.user.LiquidationOrderCancelled;
 import net.quedex.api.user.LiquidationOrderFilled;
 import net.quedex.api.user.LiquidationOrderPlaced;
@@ -27,60 +28,160 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.concurrent.NotThreadSafe;
 
 import java.math.BigDecimal;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 @NotThreadSafe
-public class MarketMaker implements QuotesListener, OrderListener, OpenPositionListener {
+public class MarketMaker implements InstrumentsListener, QuotesListener, OrderListener, OpenPositionListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(MarketMaker.class);
 
+    private static final int TASK = 0;
+    private static final int QUOTES = 1;
+    private static final int OPEN_POSITION = 2;
+    private static final int ORDER_PLACED = 3;
+    private static final int ORDER_PLACE_FAILED = 4;
+    private static final int ORDER_CANCELLED = 5;
+    private static final int ORDER_FORCEFULLY_CANCELLED = 6;
+    private static final int ORDER_CANCEL_FAILED = 7;
+    private static final int ALL_ORDERS_CANCELLED = 8;
+    private static final int ORDER_MODIFIED = 9;
+    private static final int ORDER_MODIFICATION_FAILED = 10;
+    private static final int ORDER_FILLED = 11;
+    private static final int QUOTES_DRAIN = 12;
+    private static final int INSTRUMENTS = 13;
+
+    private static final int NO_INSTRUMENT = -1;
+
     private final QuotesListener[] quotesListeners;
     private final OrderListener[] orderListeners;
     private final OpenPositionListener[] openPositionListeners;
 
     /**
-     * Thread confinement to this thread guarantees thread-safety of the whole application.
+     * Thread confinement to the thread of this loop guarantees thread-safety of the whole application. Null in replay,
+     * when events are handled on the calling thread.
      */
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final EventLoop eventLoop;
+    private final QuotesConflator quotesConflator;
+    private final QuotesListener conflatedQuotesListener = this::onQuotesNoSync;
     private final Consumer<Exception> exceptionHandler;
 
+    private final TimeProvider timeProvider;
     private final InstrumentManager instrumentManager;
     private final OrderPlacingStrategy futuresOrderPalcingStrategy;
     private final OrderPlacingStrategy optionOrderPlacingStrategy;
+    private final ParallelOrderCalculator parallelOrderCalculator; // null if option orders are calculated serially
     private final OrderManager orderManager;
+    private final OrderReconciler orderReconciler;
+    private final FillExposure fillExposure; // null if disabled
+    private final JournalWriter journalWriter; // null if disabled
+    private final FairPriceProvider futuresFairPriceProvider;
+    private final FairPriceProvider fairVolatilityProvider;
+    private final RiskManager riskManager;
+    private final ScenarioEngine scenarioEngine; // null if disabled
+    private final Pricing pricing;
+    private final QuoteInputs quoteInputs;
+    private final double deltaLimit;
+    private final double vegaLimit;
+    private final MarketMakerMetrics metrics = new MarketMakerMetrics();
+
+    private final RequoteScheduler requoteScheduler;
+    private final double requoteFuturesPriceFraction;
+    private final double requoteDeltaChange;
+    private final double requoteVegaChange;
+
+    // state at the last recalculation, to which market and risk are compared to trigger a requote
+    private final Map<Integer, BigDecimal> requotedFuturesPrices = new HashMap<>();
+    private double requotedDelta = 0;
+    private double requotedVega = 0;
+    private int requotedScenarioDeltaState = 0;
+    private int requotedScenarioVegaState = 0;
 
     public MarketMaker(final TimeProvider timeProvider,
                        final MarketMakerConfiguration config,
                        final Map<Integer, Instrument> instrumentData,
                        final Consumer<Exception> exceptionHandler) {
+        this(timeProvider, config, instrumentData, exceptionHandler, false);
+    }
+
+    /**
+     * @param replay whether to run driven by the caller, for replays in simulated time (see {@link Backtest}): events
+     *               are handled on the calling thread, exceptions propagating to it, and requotes are scheduled in the
+     *               time of the {@code timeProvider}, to be done when {@link #tryRequote()} returns true
+     */
+    MarketMaker(final TimeProvider timeProvider,
+                final MarketMakerConfiguration config,
+                final Map<Integer, Instrument> instrumentData,
+                final Consumer<Exception> exceptionHandler,
+                final boolean replay) {
+        this.timeProvider = checkNotNull(timeProvider, "null timeProvider");
         instrumentManager = new InstrumentManager(timeProvider, instrumentData);
         final MarketDataManager marketDataManager = new MarketDataManager();
-        final FairPriceProvider futuresFairPriceProvider = new LastFairPriceProvider(marketDataManager);
-        final FairPriceProvider fairVolatilityProvider = s -> BigDecimal.valueOf(config.getFairVolatility());
-        final Pricing pricing = new Pricing(timeProvider);
-        final RiskManager riskManager = new RiskManager(
+        futuresFairPriceProvider = new LastFairPriceProvider(marketDataManager);
+        pricing = new Pricing(timeProvider, config.getPricingCacheSize(), config.getPricingClockMillis());
+        final QuotesListener volatilityListener;
+        if (config.isVolatilitySmile() || config.isImpliedVolatility()) {
+            final ImpliedVolatilityProvider impliedVolatilityProvider = new ImpliedVolatilityProvider(
+                instrumentManager,
+                futuresFairPriceProvider,
+                pricing,
+                config.getFairVolatility()
+            );
+            if (config.isVolatilitySmile()) {
+                final VolatilitySmileProvider volatilitySmileProvider = new VolatilitySmileProvider(
+                    instrumentManager,
+                    impliedVolatilityProvider,
+                    futuresFairPriceProvider,
+                    config.getVolatilitySmileRefitFraction()
+                );
+                fairVolatilityProvider = volatilitySmileProvider;
+                volatilityListener = volatilitySmileProvider;
+            } else {
+                fairVolatilityProvider = impliedVolatilityProvider;
+                volatilityListener = impliedVolatilityProvider;
+            }
+        } else {
+            fairVolatilityProvider = s -> BigDecimal.valueOf(config.getFairVolatility());
+            volatilityListener = null;
+        }
+        riskManager = new RiskManager(
             instrumentManager,
             fairVolatilityProvider,
             futuresFairPriceProvider,
-            pricing
+            pricing,
+            config.getRiskRepriceFuturesPriceFraction(),
+            config.getRiskRepriceVolatilityChange(),
+            config.getScenarioMaxLoss()
+        );
+        scenarioEngine = config.getScenarioMaxLoss() == 0 ? null : new ScenarioEngine(
+            config.getScenarioFuturesPriceShock(),
+            config.getScenarioFuturesPriceSteps(),
+            config.getScenarioVolatilityShock(),
+            config.getScenarioVolatilitySteps(),
+            config.getScenarioParallelism(),
+            replay
         );
         futuresOrderPalcingStrategy = new UniformFuturesOrderPlacingStrategy(
             futuresFairPriceProvider,
             riskManager,
+            instrumentManager,
             config.getNumLevels(),
             config.getQtyOnLevel(),
             config.getDeltaLimit(),
             config.getFuturesSpreadFraction()
         );
-        optionOrderPlacingStrategy = new UniformOptionOrderPlacingStrategy(
+        final UniformOptionOrderPlacingStrategy optionStrategy = new UniformOptionOrderPlacingStrategy(
             fairVolatilityProvider,
             futuresFairPriceProvider,
             riskManager,
@@ -90,54 +191,311 @@ public class MarketMaker implements QuotesListener, OrderListener, OpenPositionL
             config.getQtyOnLevel(),
             config.getDeltaLimit(),
             config.getVegaLimit(),
-            config.getVolatilitySpreadFraction()
+            config.getVolatilitySpreadFraction(),
+            config.getLadderMaxErrorTicks()
         );
-        orderManager = new OrderManager();
-
-        quotesListeners = new QuotesListener[] {marketDataManager};
-        orderListeners = new OrderListener[] {orderManager};
-        openPositionListeners = new OpenPositionListener[] {riskManager};
+        optionOrderPlacingStrategy = optionStrategy;
+        parallelOrderCalculator = config.getRecalculationParallelism() == 0
+            ? null
+            : new ParallelOrderCalculator(optionStrategy, pricing, config.getRecalculationParallelism());
+        orderManager = new OrderManager(instrumentManager);
+        orderReconciler = new OrderReconciler(orderManager);
+        fillExposure = config.getFillDeltaLimit() == 0 && config.getFillVegaLimit() == 0
+            ? null
+            : new FillExposure(
+                orderManager.getOrderStore(),
+                pricing,
+                config.getFillDeltaLimit(),
+                config.getFillVegaLimit()
+            );
+        // options are repriced at least as often as orders are recalculated when nothing moves - the max age is a tenth
+        // short of the max interval, as orders are calculated a little after the requote the interval is counted from
+        final long maxIntervalMillis = config.getTimeSleepSeconds() * 1000L;
+        quoteInputs = new QuoteInputs(maxIntervalMillis - maxIntervalMillis / 10);
+        deltaLimit = config.getDeltaLimit();
+        vegaLimit = config.getVegaLimit();
+
+        requoteScheduler = new RequoteScheduler(
+            replay ? () -> TimeUnit.MILLISECONDS.toNanos(timeProvider.getCurrentTime()) : System::nanoTime,
+            config.getRequoteDebounceMillis(),
+            config.getRequoteMinIntervalMillis(),
+            maxIntervalMillis
+        );
+        requoteFuturesPriceFraction = config.getRequoteFuturesPriceFraction();
+        requoteDeltaChange = config.getRequoteDeltaChange();
+        requoteVegaChange = config.getRequoteVegaChange();
+
+        // market data has to be updated before risk is repriced with it
+        final QuotesListener[] marketDataListeners = volatilityListener != null
+            ? new QuotesListener[] {marketDataManager, volatilityListener, riskManager}
+            : new QuotesListener[] {marketDataManager, riskManager};
+        if (config.getJournalDirectory().isEmpty()) {
+            journalWriter = null;
+            quotesListeners = marketDataListeners;
+            orderListeners = new OrderListener[] {orderManager};
+            openPositionListeners = new OpenPositionListener[] {riskManager};
+        } else {
+            journalWriter = new JournalWriter(
+                Paths.get(config.getJournalDirectory()),
+                config.getJournalFileSizeMegabytes() << 20,
+                timeProvider
+            );
+            // events are recorded before being handled
+            quotesListeners = ObjectArrays.concat(journalWriter, marketDataListeners);
+            orderListeners = new OrderListener[] {journalWriter, orderManager};
+            openPositionListeners = new OpenPositionListener[] {journalWriter, riskManager};
+            journalWriter.onInstruments(instrumentData);
+        }
 
         this.exceptionHandler = checkNotNull(exceptionHandler, "null exceptionHandler");
+        eventLoop = replay ? null : new EventLoop(
+            config.getEventLoopCapacity(),
+            config.getEventLoopWaitStrategy(),
+            this::onEvent,
+            exceptionHandler,
+            metrics
+        );
+        quotesConflator = new QuotesConflator(
+            instrumentData.keySet(),
+            () -> publish(QUOTES_DRAIN, null)
+        );
+        if (!replay) {
+            metrics.start(config.getMetricsIntervalSeconds());
+        }
     }
 
     public Future<List<OrderSpec>> recalculate() {
-        return executor.submit(this::recalculateNoSync);
+        return submit(this::recalculateNoSync);
+    }
+
+    /**
+     * Blocks until orders should be recalculated, which is when the market or risk moved or when they have not been
+     * recalculated for {@link MarketMakerConfiguration#getTimeSleepSeconds()}.
+     */
+    public void awaitRequote() throws InterruptedException {
+        requoteScheduler.awaitRequote();
+    }
+
+    /**
+     * Replay counterpart of {@link #awaitRequote()}.
+     *
+     * @return whether orders should be recalculated now, in which case the requote is considered done
+     */
+    boolean tryRequote() {
+        return requoteScheduler.tryRequote();
+    }
+
+    /**
+     * @return time of the {@code timeProvider} when orders should be recalculated next in replay,
+     *         {@link Long#MIN_VALUE} before the first recalculation
+     */
+    long getRequoteDueTime() {
+        final long dueNanos = requoteScheduler.getDueNanos();
+        return dueNanos == Long.MIN_VALUE ? Long.MIN_VALUE : TimeUnit.NANOSECONDS.toMillis(dueNanos);
+    }
+
+    public MarketMakerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * May be called from any thread.
+     *
+     * @return number of commands of recalculated orders not acknowledged (or rejected) yet
+     */
+    public int getPendingCommands() {
+        return orderManager.getPendingCommands();
     }
 
     public Future<List<OrderSpec>> getAllOrderCancels() {
-        return executor.submit(
+        return submit(
             () -> orderManager.getAllOrderIds().stream().map(OrderCancelSpec::new).collect(Collectors.toList())
         );
     }
 
     public void stop() {
-        executor.shutdown();
+        if (eventLoop != null) {
+            eventLoop.stop();
+        }
+        if (parallelOrderCalculator != null) {
+            parallelOrderCalculator.shutdown();
+        }
+        if (scenarioEngine != null) {
+            scenarioEngine.shutdown();
+        }
+        metrics.stop();
+        if (journalWriter != null) {
+            if (eventLoop != null) {
+                try {
+                    eventLoop.awaitTermination();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            journalWriter.close();
+        }
+    }
+
+    private <T> Future<T> submit(final Callable<T> callable) {
+        final FutureTask<T> task = new FutureTask<>(callable);
+        if (!publish(TASK, task)) {
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    private boolean publish(final int type, final Object payload) {
+        if (eventLoop == null) {
+            onEvent(type, payload);
+            return true;
+        }
+        return eventLoop.publish(type, payload);
     }
 
     private List<OrderSpec> recalculateNoSync() {
 
         try {
+            final long startNanos = System.nanoTime();
+            final long startPricings = getPricings();
             final List<OrderSpec> orderSpecs = new ArrayList<>();
-
-            orderSpecs.add(CancelAllOrdersSpec.INSTANCE);
+            orderReconciler.resetCounters();
+            quoteInputs.resetCounters();
+            final long currentTime = timeProvider.getCurrentTime();
+            if (scenarioEngine != null) {
+                // valued in the background for the next recalculation (or a requote when the gates change), unless in
+                // replay, at the cost of a snapshot of positions
+                scenarioEngine.submit(riskManager.getSnapshot(currentTime));
+                riskManager.onScenarioGrid(scenarioEngine.getGrid());
+            }
+            final int deltaState = RiskManager.limitState(
+                riskManager.getTotalDelta(), deltaLimit, riskManager.getScenarioDeltaState()
+            );
+            final int optionLimits = 3 * deltaState + RiskManager.limitState(
+                riskManager.getTotalVega(), vegaLimit, riskManager.getScenarioVegaState()
+            );
 
             for (final Instrument futures : instrumentManager.getTradedFutures()) {
-                orderSpecs.addAll(
-                    futuresOrderPalcingStrategy.getOrders(futures).stream()
-                        .map(o -> o.toLimitOrderSpec(orderManager.getNextOrderId()))
-                        .collect(Collectors.toList())
+                final int futuresId = futures.getInstrumentId();
+                final BigDecimal fairPrice = futuresFairPriceProvider.getFairPrice(futuresId);
+                if (quoteInputs.update(futuresId, fairPrice.doubleValue(), 0, 0, deltaState, currentTime)) {
+                    reconcile(
+                        futures,
+                        0,
+                        fairPrice.doubleValue(),
+                        futuresOrderPalcingStrategy.getOrders(futures)
+                    );
+                }
+                requotedFuturesPrices.put(futuresId, fairPrice);
+            }
+            final long futuresEndNanos = System.nanoTime();
+
+            final List<OptionChain> chains = instrumentManager.getOptionChains();
+            if (parallelOrderCalculator != null) {
+                parallelOrderCalculator.clear(
+                    riskManager.getTotalDelta(),
+                    riskManager.getTotalVega(),
+                    riskManager.getScenarioDeltaState(),
+                    riskManager.getScenarioVegaState(),
+                    currentTime
                 );
-
             }
-
-            for (final Instrument option : instrumentManager.getTradedOptions()) {
-                orderSpecs.addAll(
-                    optionOrderPlacingStrategy.getOrders(option).stream()
-                        .map(o -> o.toLimitOrderSpec(orderManager.getNextOrderId()))
-                        .collect(Collectors.toList())
+            for (final OptionChain chain : chains) {
+                final double futuresPrice = futuresFairPriceProvider.getFairPrice(
+                    chain.getFutures().getInstrumentId()
+                ).doubleValue();
+                final int parallelChain = parallelOrderCalculator != null
+                    ? parallelOrderCalculator.addChain(chain, futuresPrice)
+                    : -1;
+
+                for (int i = 0; i < chain.size(); i++) {
+                    final Instrument option = chain.getOption(i);
+                    final int optionId = option.getInstrumentId();
+                    final double volatility = fairVolatilityProvider.getFairPrice(optionId).doubleValue();
+                    if (!quoteInputs.update(
+                        optionId,
+                        futuresPrice,
+                        requoteFuturesPriceFraction,
+                        volatility,
+                        optionLimits,
+                        currentTime
+                    )) {
+                        continue;
+                    }
+                    if (parallelOrderCalculator != null) {
+                        parallelOrderCalculator.addOption(parallelChain, i, volatility);
+                    } else {
+                        reconcile(
+                            option,
+                            volatility,
+                            futuresPrice,
+                            optionOrderPlacingStrategy.getOrders(option)
+                        );
+                    }
+                }
+            }
+            if (parallelOrderCalculator != null) {
+                parallelOrderCalculator.calculate();
+                // merged in the order of the serial calculation, for the same order ids and commands
+                for (int c = 0; c < chains.size(); c++) {
+                    final OptionChain chain = chains.get(c);
+                    for (int i = 0; i < chain.size(); i++) {
+                        final Collection<GenericOrder> orders = parallelOrderCalculator.getOrders(c, i);
+                        if (orders != null) {
+                            reconcile(
+                                chain.getOption(i),
+                                parallelOrderCalculator.getVolatility(c, i),
+                                parallelOrderCalculator.getFuturesPrice(c),
+                                orders
+                            );
+                        }
+                    }
+                }
+            }
+            orderReconciler.drainTo(orderSpecs); // in the order to be sent in
+            final long optionsEndNanos = System.nanoTime();
+
+            requotedDelta = riskManager.getTotalDelta();
+            requotedVega = riskManager.getTotalVega();
+            requotedScenarioDeltaState = riskManager.getScenarioDeltaState();
+            requotedScenarioVegaState = riskManager.getScenarioVegaState();
+
+            LOGGER.debug(
+                "Quotes: received={}, conflated={}, drains={}",
+                quotesConflator.getReceived(),
+                quotesConflator.getConflated(),
+                quotesConflator.getDrains()
+            );
+            if (fillExposure != null) {
+                LOGGER.debug(
+                    "Fill exposure: bidsDelta={}, bidsVega={}, asksDelta={}, asksVega={}, trimmed={}",
+                    fillExposure.getBidsDelta(),
+                    fillExposure.getBidsVega(),
+                    fillExposure.getAsksDelta(),
+                    fillExposure.getAsksVega(),
+                    fillExposure.getTrimmedOrders()
                 );
             }
+            LOGGER.debug(
+                "Requote: recalculated={}, unchanged={}, kept={}, modified={}, placed={}, cancelled={}",
+                quoteInputs.getRecalculated(),
+                quoteInputs.getUnchanged(),
+                orderReconciler.getKept(),
+                orderReconciler.getModified(),
+                orderReconciler.getPlaced(),
+                orderReconciler.getCancelled()
+            );
+            if (journalWriter != null && !orderSpecs.isEmpty()) {
+                journalWriter.onOrderSpecs(orderSpecs);
+            }
+            metrics.onRecalculation(
+                futuresEndNanos - startNanos,
+                optionsEndNanos - futuresEndNanos,
+                System.nanoTime() - startNanos,
+                getPricings() - startPricings,
+                getPricings(),
+                getPricingCacheHits(),
+                getPricingCacheMisses()
+            );
             return orderSpecs;
         } catch (final RuntimeException e) {
             exceptionHandler.accept(e);
@@ -145,68 +503,57 @@ public class MarketMaker implements QuotesListener, OrderListener, OpenPositionL
         }
     }
 
+    @Override
+    public void onInstruments(final Map<Integer, Instrument> instruments) {
+        publish(INSTRUMENTS, instruments);
+    }
+
     @Override
     public void onQuotes(final Quotes quotes) {
-        catchingExecute(() -> {
-            for (final QuotesListener quotesListener : quotesListeners) {
-                quotesListener.onQuotes(quotes);
-            }
-        });
+        if (!quotesConflator.offer(quotes)) {
+            publish(QUOTES, quotes);
+        }
     }
 
     @Override
     public void onOpenPosition(final OpenPosition openPosition) {
-        catchingExecute(() -> {
-            for (final OpenPositionListener openPositionListener : openPositionListeners) {
-                openPositionListener.onOpenPosition(openPosition);
-            }
-        });
+        publish(OPEN_POSITION, openPosition);
     }
 
     @Override
     public void onOrderPlaced(final OrderPlaced orderPlaced) {
-        catchingExecute(() -> {
-            for (final OrderListener orderListener : orderListeners) {
-                orderListener.onOrderPlaced(orderPlaced);
-            }
-        });
+        metrics.onPlaceAcknowledged(orderPlaced.getClientOrderId());
+        publish(ORDER_PLACED, orderPlaced);
     }
 
     @Override
     public void onOrderPlaceFailed(final OrderPlaceFailed orderPlaceFailed) {
         LOGGER.error("{}", orderPlaceFailed);
+        metrics.onPlaceFailed(orderPlaceFailed.getClientOrderId());
+        publish(ORDER_PLACE_FAILED, orderPlaceFailed);
     }
 
     @Override
     public void onOrderCancelled(final OrderCancelled orderCancelled) {
-        catchingExecute(() -> {
-            for (final OrderListener orderListener : orderListeners) {
-                orderListener.onOrderCancelled(orderCancelled);
-            }
-        });
+        metrics.onCancelAcknowledged(orderCancelled.getClientOrderId());
+        publish(ORDER_CANCELLED, orderCancelled);
     }
 
     @Override
     public void onOrderForcefullyCancelled(final OrderForcefullyCancelled orderForcefullyCancelled) {
-        catchingExecute(() -> {
-            for (final OrderListener orderListener : orderListeners) {
-                orderListener.onOrderForcefullyCancelled(orderForcefullyCancelled);
-            }
-        });
+        publish(ORDER_FORCEFULLY_CANCELLED, orderForcefullyCancelled);
     }
 
     @Override
     public void onOrderCancelFailed(final OrderCancelFailed orderCancelFailed) {
         LOGGER.error("{}", orderCancelFailed);
+        metrics.onCancelFailed(orderCancelFailed.getClientOrderId());
+        publish(ORDER_CANCEL_FAILED, orderCancelFailed);
     }
 
     @Override
     public void onAllOrdersCancelled() {
-        catchingExecute(() -> {
-            for (final OrderListener orderListener : orderListeners) {
-                orderListener.onAllOrdersCancelled();
-            }
-        });
+        publish(ALL_ORDERS_CANCELLED, null);
     }
 
     @Override
@@ -216,21 +563,20 @@ public class MarketMaker implements QuotesListener, OrderListener, OpenPositionL
 
     @Override
     public void onOrderModified(final OrderModified orderModified) {
-        // no-op
+        metrics.onModifyAcknowledged(orderModified.getClientOrderId());
+        publish(ORDER_MODIFIED, orderModified);
     }
 
     @Override
     public void onOrderModificationFailed(final OrderModificationFailed orderModificationFailed) {
-        // no-op
+        LOGGER.error("{}", orderModificationFailed);
+        metrics.onModifyFailed(orderModificationFailed.getClientOrderId());
+        publish(ORDER_MODIFICATION_FAILED, orderModificationFailed);
     }
 
     @Override
     public void onOrderFilled(final OrderFilled orderFilled) {
-        catchingExecute(() -> {
-            for (final OrderListener orderListener : orderListeners) {
-                orderListener.onOrderFilled(orderFilled);
-            }
-        });
+        publish(ORDER_FILLED, orderFilled);
     }
 
     @Override
@@ -248,14 +594,219 @@ public class MarketMaker implements QuotesListener, OrderListener, OpenPositionL
         // TODO: do something sensible
     }
 
-    private void catchingExecute(final Runnable runnable) {
-        executor.execute(() -> {
-            try {
-                runnable.run();
-            } catch (final RuntimeException e) {
-                exceptionHandler.accept(e);
-                throw e;
-            }
-        });
+    /**
+     * Handles events on the event thread.
+     */
+    private void onEvent(final int type, final Object payload) {
+        switch (type) {
+            case TASK:
+                ((Runnable) payload).run();
+                break;
+            case QUOTES:
+                onQuotesNoSync((Quotes) payload);
+                break;
+            case QUOTES_DRAIN:
+                quotesConflator.drain(conflatedQuotesListener);
+                break;
+            case INSTRUMENTS:
+                @SuppressWarnings("unchecked")
+                final Map<Integer, Instrument> instruments = (Map<Integer, Instrument>) payload;
+                if (journalWriter != null) {
+                    journalWriter.onInstruments(instruments);
+                }
+                instrumentManager.updateInstruments(instruments);
+                break;
+            case OPEN_POSITION:
+                for (final OpenPositionListener openPositionListener : openPositionListeners) {
+                    openPositionListener.onOpenPosition((OpenPosition) payload);
+                }
+                if (isRiskMoved()) {
+                    requoteScheduler.trigger();
+                }
+                break;
+            case ORDER_PLACED:
+                if (orderManager.getOrderStore().find(((OrderPlaced) payload).getClientOrderId()) == OrderStore.NONE) {
+                    quoteInputs.invalidate(((OrderPlaced) payload).getInstrumentId()); // not placed by us
+                }
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderPlaced((OrderPlaced) payload);
+                }
+                break;
+            case ORDER_PLACE_FAILED:
+                invalidateOrderInstrument(((OrderPlaceFailed) payload).getClientOrderId());
+                final int failedInstrument = fillExposureInstrument(((OrderPlaceFailed) payload).getClientOrderId());
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderPlaceFailed((OrderPlaceFailed) payload);
+                }
+                updateFillExposure(failedInstrument);
+                break;
+            case ORDER_CANCELLED:
+                final int cancelledInstrument = fillExposureInstrument(((OrderCancelled) payload).getClientOrderId());
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderCancelled((OrderCancelled) payload);
+                }
+                updateFillExposure(cancelledInstrument);
+                break;
+            case ORDER_FORCEFULLY_CANCELLED:
+                invalidateOrderInstrument(((OrderForcefullyCancelled) payload).getClientOrderId());
+                final int forcefullyCancelledInstrument = fillExposureInstrument(
+                    ((OrderForcefullyCancelled) payload).getClientOrderId()
+                );
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderForcefullyCancelled((OrderForcefullyCancelled) payload);
+                }
+                updateFillExposure(forcefullyCancelledInstrument);
+                break;
+            case ORDER_CANCEL_FAILED:
+                invalidateOrderInstrument(((OrderCancelFailed) payload).getClientOrderId());
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderCancelFailed((OrderCancelFailed) payload);
+                }
+                break;
+            case ALL_ORDERS_CANCELLED:
+                quoteInputs.invalidateAll();
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onAllOrdersCancelled();
+                }
+                if (fillExposure != null) {
+                    fillExposure.clear();
+                }
+                break;
+            case ORDER_MODIFIED:
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderModified((OrderModified) payload);
+                }
+                updateFillExposure(fillExposureInstrument(((OrderModified) payload).getClientOrderId()));
+                break;
+            case ORDER_MODIFICATION_FAILED:
+                invalidateOrderInstrument(((OrderModificationFailed) payload).getClientOrderId());
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderModificationFailed((OrderModificationFailed) payload);
+                }
+                // the order stays tracked
+                updateFillExposure(fillExposureInstrument(((OrderModificationFailed) payload).getClientOrderId()));
+                break;
+            case ORDER_FILLED:
+                quoteInputs.invalidate(((OrderFilled) payload).getInstrumentId());
+                for (final OrderListener orderListener : orderListeners) {
+                    orderListener.onOrderFilled((OrderFilled) payload);
+                }
+                updateFillExposure(((OrderFilled) payload).getInstrumentId());
+                break;
+            default:
+                throw new IllegalStateException("Unknown event type=" + type);
+        }
+    }
+
+    private void onQuotesNoSync(final Quotes quotes) {
+        for (final QuotesListener quotesListener : quotesListeners) {
+            quotesListener.onQuotes(quotes);
+        }
+        if (isFuturesPriceMoved(quotes.getInstrumentId()) || isRiskMoved()) {
+            requoteScheduler.trigger();
+        }
+    }
+
+    /**
+     * @return whether the instrument is a futures whose fair price moved since the last recalculation
+     */
+    private boolean isFuturesPriceMoved(final int instrumentId) {
+        final BigDecimal requotedPrice = requotedFuturesPrices.get(instrumentId);
+        if (requotedPrice == null) {
+            return false;
+        }
+        final double price = futuresFairPriceProvider.getFairPrice(instrumentId).doubleValue();
+        final double requoted = requotedPrice.doubleValue();
+        return Math.abs(price - requoted) > requoteFuturesPriceFraction * requoted;
+    }
+
+    private long getPricings() {
+        return pricing.getCalculations()
+            + (parallelOrderCalculator != null ? parallelOrderCalculator.getCalculations() : 0);
+    }
+
+    private long getPricingCacheHits() {
+        return pricing.getCacheHits()
+            + (parallelOrderCalculator != null ? parallelOrderCalculator.getCacheHits() : 0);
+    }
+
+    private long getPricingCacheMisses() {
+        return pricing.getCacheMisses()
+            + (parallelOrderCalculator != null ? parallelOrderCalculator.getCacheMisses() : 0);
+    }
+
+    /**
+     * Reconciles the orders of the instrument with the calculated ones, trimmed to the fill exposure limits if enabled.
+     *
+     * @param volatility   fair volatility the orders were calculated at, ignored for futures
+     * @param futuresPrice fair futures price the orders were calculated at
+     */
+    private void reconcile(final Instrument instrument,
+                           final double volatility,
+                           final double futuresPrice,
+                           final Collection<GenericOrder> orders) {
+        final int instrumentId = instrument.getInstrumentId();
+        if (fillExposure == null) {
+            orderReconciler.reconcile(instrumentId, orders);
+            return;
+        }
+        orderReconciler.reconcile(
+            instrumentId,
+            fillExposure.trim(
+                instrument,
+                volatility,
+                futuresPrice,
+                riskManager.getTotalDelta(),
+                riskManager.getTotalVega(),
+                orders
+            )
+        );
+        fillExposure.update(instrumentId);
+    }
+
+    /**
+     * Updates the fill exposure of the instrument, if enabled, after an event changed its worst-case quantity.
+     */
+    private void updateFillExposure(final int instrumentId) {
+        if (fillExposure != null && instrumentId != NO_INSTRUMENT) {
+            fillExposure.update(instrumentId);
+        }
+    }
+
+    /**
+     * @return instrument of the order if it is known and the fill exposure enabled, {@link #NO_INSTRUMENT} otherwise
+     */
+    private int fillExposureInstrument(final long clientOrderId) {
+        if (fillExposure == null) {
+            return NO_INSTRUMENT;
+        }
+        final OrderStore orderStore = orderManager.getOrderStore();
+        final int slot = orderStore.find(clientOrderId);
+        return slot != OrderStore.NONE ? orderStore.getOrder(slot).getInstrumentId() : NO_INSTRUMENT;
+    }
+
+    /**
+     * Makes orders of the instrument of the order be recalculated, when they differ from the calculated ones.
+     */
+    private void invalidateOrderInstrument(final long clientOrderId) {
+        final OrderStore orderStore = orderManager.getOrderStore();
+        final int slot = orderStore.find(clientOrderId);
+        if (slot != OrderStore.NONE) {
+            quoteInputs.invalidate(orderStore.getOrder(slot).getInstrumentId());
+        }
+    }
+
+    /**
+     * @return whether total delta or vega moved since the last recalculation, or the scenario gates changed with the
+     *         latest scenario grid
+     */
+    private boolean isRiskMoved() {
+        if (scenarioEngine != null) {
+            riskManager.onScenarioGrid(scenarioEngine.getGrid());
+        }
+        return Math.abs(riskManager.getTotalDelta() - requotedDelta) > requoteDeltaChange
+            || Math.abs(riskManager.getTotalVega() - requotedVega) > requoteVegaChange
+            || riskManager.getScenarioDeltaState() != requotedScenarioDeltaState
+            || riskManager.getScenarioVegaState() != requotedScenarioVegaState;
     }
 }
@@ -7,6 +7,7 @@ import org.apache.commons.configuration.PropertiesConfiguration;
 import java.math.BigDecimal;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
 public class MarketMakerConfiguration {
     private final int timeSleepSeconds;
@@ -23,18 +24,92 @@ public class MarketMakerConfiguration {
     private final double vegaLimit;
     private final double deltaLimit;
 
-    public MarketMakerConfiguration(final int timeSleepSeconds,
-                                    final int maxBatchSize,
-                                    final BigDecimal futuresSpreadFraction,
-                                    final double fairVolatility,
-                                    final double volatilitySpreadFraction,
-                                    final int numLevels,
-                                    final int qtyOnLevel,
-                                    final double deltaLimit,
-                                    final double vegaLimit) {
+    private final double riskRepriceFuturesPriceFraction;
+    private final double riskRepriceVolatilityChange;
+
+    private final int eventLoopCapacity;
+    private final EventLoop.WaitStrategy eventLoopWaitStrategy;
+
+    private final long requoteDebounceMillis;
+    private final long requoteMinIntervalMillis;
+    private final double requoteFuturesPriceFraction;
+    private final double requoteDeltaChange;
+    private final double requoteVegaChange;
+
+    private final String journalDirectory;
+    private final int journalFileSizeMegabytes;
+
+    private final int metricsIntervalSeconds;
+
+    private final int recalculationParallelism;
+
+    private final boolean impliedVolatility;
+
+    private final boolean volatilitySmile;
+    private final double volatilitySmileRefitFraction;
+
+    private final int pricingCacheSize;
+    private final int pricingClockMillis;
+
+    private final double ladderMaxErrorTicks;
+
+    private final double scenarioMaxLoss;
+    private final double scenarioFuturesPriceShock;
+    private final int scenarioFuturesPriceSteps;
+    private final double scenarioVolatilityShock;
+    private final int scenarioVolatilitySteps;
+    private final int scenarioParallelism;
+
+    private final double fillDeltaLimit;
+    private final double fillVegaLimit;
+
+    private final int maxBatchesInFlight;
+    private final int maxCommandsPerSecond;
+
+    private MarketMakerConfiguration(final Builder builder) {
+        this.timeSleepSeconds = builder.timeSleepSeconds;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.futuresSpreadFraction = builder.futuresSpreadFraction;
+        this.fairVolatility = builder.fairVolatility;
+        this.volatilitySpreadFraction = builder.volatilitySpreadFraction;
+        this.numLevels = builder.numLevels;
+        this.qtyOnLevel = builder.qtyOnLevel;
+        this.deltaLimit = builder.deltaLimit;
+        this.vegaLimit = builder.vegaLimit;
+        this.riskRepriceFuturesPriceFraction = builder.riskRepriceFuturesPriceFraction;
+        this.riskRepriceVolatilityChange = builder.riskRepriceVolatilityChange;
+        this.eventLoopCapacity = builder.eventLoopCapacity;
+        this.eventLoopWaitStrategy = builder.eventLoopWaitStrategy;
+        this.requoteDebounceMillis = builder.requoteDebounceMillis;
+        this.requoteMinIntervalMillis = builder.requoteMinIntervalMillis;
+        this.requoteFuturesPriceFraction = builder.requoteFuturesPriceFraction;
+        this.requoteDeltaChange = builder.requoteDeltaChange;
+        this.requoteVegaChange = builder.requoteVegaChange;
+        this.journalDirectory = builder.journalDirectory;
+        this.journalFileSizeMegabytes = builder.journalFileSizeMegabytes;
+        this.metricsIntervalSeconds = builder.metricsIntervalSeconds;
+        this.recalculationParallelism = builder.recalculationParallelism;
+        this.impliedVolatility = builder.impliedVolatility;
+        this.volatilitySmile = builder.volatilitySmile;
+        this.volatilitySmileRefitFraction = builder.volatilitySmileRefitFraction;
+        this.pricingCacheSize = builder.pricingCacheSize;
+        this.pricingClockMillis = builder.pricingClockMillis;
+        this.ladderMaxErrorTicks = builder.ladderMaxErrorTicks;
+        this.scenarioMaxLoss = builder.scenarioMaxLoss;
+        this.scenarioFuturesPriceShock = builder.scenarioFuturesPriceShock;
+        this.scenarioFuturesPriceSteps = builder.scenarioFuturesPriceSteps;
+        this.scenarioVolatilityShock = builder.scenarioVolatilityShock;
+        this.scenarioVolatilitySteps = builder.scenarioVolatilitySteps;
+        this.scenarioParallelism = builder.scenarioParallelism;
+        this.fillDeltaLimit = builder.fillDeltaLimit;
+        this.fillVegaLimit = builder.fillVegaLimit;
+        this.maxBatchesInFlight = builder.maxBatchesInFlight;
+        this.maxCommandsPerSecond = builder.maxCommandsPerSecond;
+
         checkArgument(timeSleepSeconds > 0, "timeSleepSeconds=%s <= 0", timeSleepSeconds);
         checkArgument(maxBatchSize > 0, "maxBatchSize <= 0");
         checkArgument(maxBatchSize <= 3000, "maxBatchSize > 3000");
+        checkNotNull(futuresSpreadFraction, "null futuresSpreadFraction");
         checkArgument(
             futuresSpreadFraction.compareTo(BigDecimal.ZERO) > 0,
             "futuresSpreadFraction=%s <=0", futuresSpreadFraction
@@ -49,31 +124,193 @@ public class MarketMakerConfiguration {
             fairVolatility - numLevels * fairVolatility * volatilitySpreadFraction > 0,
             "Nonpositive lowest level volatility"
         );
+        checkArgument(
+            riskRepriceFuturesPriceFraction >= 0,
+            "riskRepriceFuturesPriceFraction=%s < 0", riskRepriceFuturesPriceFraction
+        );
+        checkArgument(
+            riskRepriceVolatilityChange >= 0, "riskRepriceVolatilityChange=%s < 0", riskRepriceVolatilityChange
+        );
+
+        checkArgument(
+            eventLoopCapacity > 0 && Integer.bitCount(eventLoopCapacity) == 1,
+            "eventLoopCapacity=%s not a power of 2", eventLoopCapacity
+        );
+        checkNotNull(eventLoopWaitStrategy, "null eventLoopWaitStrategy");
+
+        checkArgument(requoteDebounceMillis >= 0, "requoteDebounceMillis=%s < 0", requoteDebounceMillis);
+        checkArgument(requoteMinIntervalMillis >= 0, "requoteMinIntervalMillis=%s < 0", requoteMinIntervalMillis);
+        checkArgument(
+            requoteMinIntervalMillis <= timeSleepSeconds * 1000L,
+            "requoteMinIntervalMillis=%s > timeSleepSeconds", requoteMinIntervalMillis
+        );
+        checkArgument(
+            requoteFuturesPriceFraction >= 0, "requoteFuturesPriceFraction=%s < 0", requoteFuturesPriceFraction
+        );
+        checkArgument(requoteDeltaChange >= 0, "requoteDeltaChange=%s < 0", requoteDeltaChange);
+        checkArgument(requoteVegaChange >= 0, "requoteVegaChange=%s < 0", requoteVegaChange);
+
+        checkNotNull(journalDirectory, "null journalDirectory");
+        checkArgument(
+            journalFileSizeMegabytes > 0 && journalFileSizeMegabytes < 2048,
+            "journalFileSizeMegabytes=%s not in (0, 2048)", journalFileSizeMegabytes
+        );
+
+        checkArgument(metricsIntervalSeconds > 0, "metricsIntervalSeconds=%s <= 0", metricsIntervalSeconds);
+
+        checkArgument(recalculationParallelism >= 0, "recalculationParallelism=%s < 0", recalculationParallelism);
+
+        checkArgument(
+            volatilitySmileRefitFraction > 0 && volatilitySmileRefitFraction <= 1,
+            "volatilitySmileRefitFraction=%s not in (0, 1]", volatilitySmileRefitFraction
+        );
+
+        checkArgument(
+            pricingCacheSize == 0 || pricingCacheSize >= 2 && Integer.bitCount(pricingCacheSize) == 1,
+            "pricingCacheSize=%s not 0 nor a power of 2 >= 2", pricingCacheSize
+        );
+        checkArgument(pricingClockMillis > 0, "pricingClockMillis=%s <= 0", pricingClockMillis);
+
+        checkArgument(ladderMaxErrorTicks >= 0, "ladderMaxErrorTicks=%s < 0", ladderMaxErrorTicks);
+
+        checkArgument(scenarioMaxLoss >= 0, "scenarioMaxLoss=%s < 0", scenarioMaxLoss);
+        checkArgument(
+            scenarioFuturesPriceShock >= 0 && scenarioFuturesPriceShock < 1,
+            "scenarioFuturesPriceShock=%s not in [0, 1)", scenarioFuturesPriceShock
+        );
+        checkArgument(
+            scenarioFuturesPriceSteps > 0 && scenarioFuturesPriceSteps % 2 == 1,
+            "scenarioFuturesPriceSteps=%s not odd", scenarioFuturesPriceSteps
+        );
+        checkArgument(
+            scenarioVolatilityShock >= 0 && scenarioVolatilityShock < 1,
+            "scenarioVolatilityShock=%s not in [0, 1)", scenarioVolatilityShock
+        );
+        checkArgument(
+            scenarioVolatilitySteps > 0 && scenarioVolatilitySteps % 2 == 1,
+            "scenarioVolatilitySteps=%s not odd", scenarioVolatilitySteps
+        );
+        checkArgument(scenarioParallelism > 0, "scenarioParallelism=%s <= 0", scenarioParallelism);
+
+        checkArgument(fillDeltaLimit >= 0, "fillDeltaLimit=%s < 0", fillDeltaLimit);
+        checkArgument(fillVegaLimit >= 0, "fillVegaLimit=%s < 0", fillVegaLimit);
 
-        this.timeSleepSeconds = timeSleepSeconds;
-        this.maxBatchSize = maxBatchSize;
-        this.futuresSpreadFraction = futuresSpreadFraction;
-        this.fairVolatility = fairVolatility;
-        this.volatilitySpreadFraction = volatilitySpreadFraction;
-        this.vegaLimit = vegaLimit;
-        this.numLevels = numLevels;
-        this.qtyOnLevel = qtyOnLevel;
-        this.deltaLimit = deltaLimit;
+        checkArgument(maxBatchesInFlight >= 0, "maxBatchesInFlight=%s < 0", maxBatchesInFlight);
+        checkArgument(
+            maxCommandsPerSecond == 0 || maxCommandsPerSecond >= maxBatchSize,
+            "maxCommandsPerSecond=%s < maxBatchSize=%s", maxCommandsPerSecond, maxBatchSize
+        );
     }
 
     public static MarketMakerConfiguration fromPropertiesFile(final String fileName) throws ConfigurationException {
         final Configuration configuration = new PropertiesConfiguration(fileName);
-        return new MarketMakerConfiguration(
-            configuration.getInt(ConfigKey.TIME_SLEEP_SECONDS.getKey()),
-            configuration.getInt(ConfigKey.MAX_BATCH_SIZE.getKey()),
-            new BigDecimal(configuration.getString(ConfigKey.SPREAD_FRACTION.getKey())),
-            configuration.getDouble(ConfigKey.FAIR_VOLATILITY.getKey()),
-            configuration.getDouble(ConfigKey.VOLATILITY_SPREAD_FRACTION.getKey()),
-            configuration.getInt(ConfigKey.NUM_LEVELS.getKey()),
-            configuration.getInt(ConfigKey.QUANTITY_ON_LEVEL.getKey()),
-            configuration.getDouble(ConfigKey.DELTA_LIMIT.getKey()),
-            configuration.getDouble(ConfigKey.VEGA_LIMIT.getKey())
-        );
+        final Builder defaults = new Builder();
+        return new Builder()
+            .timeSleepSeconds(configuration.getInt(ConfigKey.TIME_SLEEP_SECONDS.getKey()))
+            .maxBatchSize(configuration.getInt(ConfigKey.MAX_BATCH_SIZE.getKey()))
+            .futuresSpreadFraction(new BigDecimal(configuration.getString(ConfigKey.SPREAD_FRACTION.getKey())))
+            .fairVolatility(configuration.getDouble(ConfigKey.FAIR_VOLATILITY.getKey()))
+            .volatilitySpreadFraction(configuration.getDouble(ConfigKey.VOLATILITY_SPREAD_FRACTION.getKey()))
+            .numLevels(configuration.getInt(ConfigKey.NUM_LEVELS.getKey()))
+            .qtyOnLevel(configuration.getInt(ConfigKey.QUANTITY_ON_LEVEL.getKey()))
+            .deltaLimit(configuration.getDouble(ConfigKey.DELTA_LIMIT.getKey()))
+            .vegaLimit(configuration.getDouble(ConfigKey.VEGA_LIMIT.getKey()))
+            .riskRepriceFuturesPriceFraction(configuration.getDouble(
+                ConfigKey.RISK_REPRICE_FUTURES_PRICE_FRACTION.getKey(),
+                defaults.riskRepriceFuturesPriceFraction
+            ))
+            .riskRepriceVolatilityChange(configuration.getDouble(
+                ConfigKey.RISK_REPRICE_VOLATILITY_CHANGE.getKey(),
+                defaults.riskRepriceVolatilityChange
+            ))
+            .eventLoopCapacity(configuration.getInt(ConfigKey.EVENT_LOOP_CAPACITY.getKey(), defaults.eventLoopCapacity))
+            .eventLoopWaitStrategy(EventLoop.WaitStrategy.valueOf(configuration.getString(
+                ConfigKey.EVENT_LOOP_WAIT_STRATEGY.getKey(),
+                defaults.eventLoopWaitStrategy.name()
+            )))
+            .requoteDebounceMillis(configuration.getLong(
+                ConfigKey.REQUOTE_DEBOUNCE_MILLIS.getKey(),
+                defaults.requoteDebounceMillis
+            ))
+            .requoteMinIntervalMillis(configuration.getLong(
+                ConfigKey.REQUOTE_MIN_INTERVAL_MILLIS.getKey(),
+                defaults.requoteMinIntervalMillis
+            ))
+            .requoteFuturesPriceFraction(configuration.getDouble(
+                ConfigKey.REQUOTE_FUTURES_PRICE_FRACTION.getKey(),
+                defaults.requoteFuturesPriceFraction
+            ))
+            .requoteDeltaChange(configuration.getDouble(
+                ConfigKey.REQUOTE_DELTA_CHANGE.getKey(),
+                defaults.requoteDeltaChange
+            ))
+            .requoteVegaChange(configuration.getDouble(
+                ConfigKey.REQUOTE_VEGA_CHANGE.getKey(),
+                defaults.requoteVegaChange
+            ))
+            .journalDirectory(configuration.getString(ConfigKey.JOURNAL_DIRECTORY.getKey(), defaults.journalDirectory))
+            .journalFileSizeMegabytes(configuration.getInt(
+                ConfigKey.JOURNAL_FILE_SIZE_MEGABYTES.getKey(),
+                defaults.journalFileSizeMegabytes
+            ))
+            .metricsIntervalSeconds(configuration.getInt(
+                ConfigKey.METRICS_INTERVAL_SECONDS.getKey(),
+                defaults.metricsIntervalSeconds
+            ))
+            .recalculationParallelism(configuration.getInt(
+                ConfigKey.RECALCULATION_PARALLELISM.getKey(),
+                defaults.recalculationParallelism
+            ))
+            .impliedVolatility(configuration.getBoolean(
+                ConfigKey.IMPLIED_VOLATILITY.getKey(),
+                defaults.impliedVolatility
+            ))
+            .volatilitySmile(configuration.getBoolean(ConfigKey.VOLATILITY_SMILE.getKey(), defaults.volatilitySmile))
+            .volatilitySmileRefitFraction(configuration.getDouble(
+                ConfigKey.VOLATILITY_SMILE_REFIT_FRACTION.getKey(),
+                defaults.volatilitySmileRefitFraction
+            ))
+            .pricingCacheSize(configuration.getInt(ConfigKey.PRICING_CACHE_SIZE.getKey(), defaults.pricingCacheSize))
+            .pricingClockMillis(configuration.getInt(
+                ConfigKey.PRICING_CLOCK_MILLIS.getKey(),
+                defaults.pricingClockMillis
+            ))
+            .ladderMaxErrorTicks(configuration.getDouble(
+                ConfigKey.LADDER_MAX_ERROR_TICKS.getKey(),
+                defaults.ladderMaxErrorTicks
+            ))
+            .scenarioMaxLoss(configuration.getDouble(ConfigKey.SCENARIO_MAX_LOSS.getKey(), defaults.scenarioMaxLoss))
+            .scenarioFuturesPriceShock(configuration.getDouble(
+                ConfigKey.SCENARIO_FUTURES_PRICE_SHOCK.getKey(),
+                defaults.scenarioFuturesPriceShock
+            ))
+            .scenarioFuturesPriceSteps(configuration.getInt(
+                ConfigKey.SCENARIO_FUTURES_PRICE_STEPS.getKey(),
+                defaults.scenarioFuturesPriceSteps
+            ))
+            .scenarioVolatilityShock(configuration.getDouble(
+                ConfigKey.SCENARIO_VOLATILITY_SHOCK.getKey(),
+                defaults.scenarioVolatilityShock
+            ))
+            .scenarioVolatilitySteps(configuration.getInt(
+                ConfigKey.SCENARIO_VOLATILITY_STEPS.getKey(),
+                defaults.scenarioVolatilitySteps
+            ))
+            .scenarioParallelism(configuration.getInt(
+                ConfigKey.SCENARIO_PARALLELISM.getKey(),
+                defaults.scenarioParallelism
+            ))
+            .fillDeltaLimit(configuration.getDouble(ConfigKey.FILL_DELTA_LIMIT.getKey(), defaults.fillDeltaLimit))
+            .fillVegaLimit(configuration.getDouble(ConfigKey.FILL_VEGA_LIMIT.getKey(), defaults.fillVegaLimit))
+            .maxBatchesInFlight(configuration.getInt(
+                ConfigKey.MAX_BATCHES_IN_FLIGHT.getKey(),
+                defaults.maxBatchesInFlight
+            ))
+            .maxCommandsPerSecond(configuration.getInt(
+                ConfigKey.MAX_COMMANDS_PER_SECOND.getKey(),
+                defaults.maxCommandsPerSecond
+            ))
+            .build();
     }
 
     public int getTimeSleepSeconds() {
@@ -110,6 +347,122 @@ public class MarketMakerConfiguration {
         return deltaLimit;
     }
 
+    public double getRiskRepriceFuturesPriceFraction() {
+        return riskRepriceFuturesPriceFraction;
+    }
+
+    public double getRiskRepriceVolatilityChange() {
+        return riskRepriceVolatilityChange;
+    }
+
+    public int getEventLoopCapacity() {
+        return eventLoopCapacity;
+    }
+
+    public EventLoop.WaitStrategy getEventLoopWaitStrategy() {
+        return eventLoopWaitStrategy;
+    }
+
+    public long getRequoteDebounceMillis() {
+        return requoteDebounceMillis;
+    }
+
+    public long getRequoteMinIntervalMillis() {
+        return requoteMinIntervalMillis;
+    }
+
+    public double getRequoteFuturesPriceFraction() {
+        return requoteFuturesPriceFraction;
+    }
+
+    public double getRequoteDeltaChange() {
+        return requoteDeltaChange;
+    }
+
+    public double getRequoteVegaChange() {
+        return requoteVegaChange;
+    }
+
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public int getJournalFileSizeMegabytes() {
+        return journalFileSizeMegabytes;
+    }
+
+    public int getMetricsIntervalSeconds() {
+        return metricsIntervalSeconds;
+    }
+
+    public int getRecalculationParallelism() {
+        return recalculationParallelism;
+    }
+
+    public boolean isImpliedVolatility() {
+        return impliedVolatility;
+    }
+
+    public boolean isVolatilitySmile() {
+        return volatilitySmile;
+    }
+
+    public double getVolatilitySmileRefitFraction() {
+        return volatilitySmileRefitFraction;
+    }
+
+    public int getPricingCacheSize() {
+        return pricingCacheSize;
+    }
+
+    public int getPricingClockMillis() {
+        return pricingClockMillis;
+    }
+
+    public double getLadderMaxErrorTicks() {
+        return ladderMaxErrorTicks;
+    }
+
+    public double getScenarioMaxLoss() {
+        return scenarioMaxLoss;
+    }
+
+    public double getScenarioFuturesPriceShock() {
+        return scenarioFuturesPriceShock;
+    }
+
+    public int getScenarioFuturesPriceSteps() {
+        return scenarioFuturesPriceSteps;
+    }
+
+    public double getScenarioVolatilityShock() {
+        return scenarioVolatilityShock;
+    }
+
+    public int getScenarioVolatilitySteps() {
+        return scenarioVolatilitySteps;
+    }
+
+    public int getScenarioParallelism() {
+        return scenarioParallelism;
+    }
+
+    public double getFillDeltaLimit() {
+        return fillDeltaLimit;
+    }
+
+    public double getFillVegaLimit() {
+        return fillVegaLimit;
+    }
+
+    public int getMaxBatchesInFlight() {
+        return maxBatchesInFlight;
+    }
+
+    public int getMaxCommandsPerSecond() {
+        return maxCommandsPerSecond;
+    }
+
     private enum ConfigKey {
         TIME_SLEEP_SECONDS("timeSleepSeconds"),
         MAX_BATCH_SIZE("maxBatchSize"),
@@ -119,7 +472,36 @@ public class MarketMakerConfiguration {
         NUM_LEVELS("numLevels"),
         QUANTITY_ON_LEVEL("quantityOnLevel"),
         VEGA_LIMIT("vegaLimit"),
-        DELTA_LIMIT("deltaLimit");
+        DELTA_LIMIT("deltaLimit"),
+        RISK_REPRICE_FUTURES_PRICE_FRACTION("riskRepriceFuturesPriceFraction"),
+        RISK_REPRICE_VOLATILITY_CHANGE("riskRepriceVolatilityChange"),
+        EVENT_LOOP_CAPACITY("eventLoopCapacity"),
+        EVENT_LOOP_WAIT_STRATEGY("eventLoopWaitStrategy"),
+        REQUOTE_DEBOUNCE_MILLIS("requoteDebounceMillis"),
+        REQUOTE_MIN_INTERVAL_MILLIS("requoteMinIntervalMillis"),
+        REQUOTE_FUTURES_PRICE_FRACTION("requoteFuturesPriceFraction"),
+        REQUOTE_DELTA_CHANGE("requoteDeltaChange"),
+        REQUOTE_VEGA_CHANGE("requoteVegaChange"),
+        JOURNAL_DIRECTORY("journalDirectory"),
+        JOURNAL_FILE_SIZE_MEGABYTES("journalFileSizeMegabytes"),
+        METRICS_INTERVAL_SECONDS("metricsIntervalSeconds"),
+        RECALCULATION_PARALLELISM("recalculationParallelism"),
+        IMPLIED_VOLATILITY("impliedVolatility"),
+        VOLATILITY_SMILE("volatilitySmile"),
+        VOLATILITY_SMILE_REFIT_FRACTION("volatilitySmileRefitFraction"),
+        PRICING_CACHE_SIZE("pricingCacheSize"),
+        PRICING_CLOCK_MILLIS("pricingClockMillis"),
+        LADDER_MAX_ERROR_TICKS("ladderMaxErrorTicks"),
+        SCENARIO_MAX_LOSS("scenarioMaxLoss"),
+        SCENARIO_FUTURES_PRICE_SHOCK("scenarioFuturesPriceShock"),
+        SCENARIO_FUTURES_PRICE_STEPS("scenarioFuturesPriceSteps"),
+        SCENARIO_VOLATILITY_SHOCK("scenarioVolatilityShock"),
+        SCENARIO_VOLATILITY_STEPS("scenarioVolatilitySteps"),
+        SCENARIO_PARALLELISM("scenarioParallelism"),
+        FILL_DELTA_LIMIT("fillDeltaLimit"),
+        FILL_VEGA_LIMIT("fillVegaLimit"),
+        MAX_BATCHES_IN_FLIGHT("maxBatchesInFlight"),
+        MAX_COMMANDS_PER_SECOND("maxCommandsPerSecond");
 
         private static final String COMMON_PREFIX = "net.quedex.marketmaker";
         private static final char SEPARATOR = '.';
@@ -138,4 +520,245 @@ public class MarketMakerConfiguration {
             return COMMON_PREFIX + SEPARATOR + keyFragment;
         }
     }
+
+    /**
+     * Builder of configurations. Settings added to the original configuration default to their values in
+     * market-maker.properties.example, the original ones are required.
+     */
+    public static final class Builder {
+        // required
+        private int timeSleepSeconds;
+        private int maxBatchSize;
+        private BigDecimal futuresSpreadFraction;
+        private double fairVolatility;
+        private double volatilitySpreadFraction;
+        private int numLevels;
+        private int qtyOnLevel;
+        private double deltaLimit = Double.NaN;
+        private double vegaLimit = Double.NaN;
+
+        private double riskRepriceFuturesPriceFraction = 0.0005;
+        private double riskRepriceVolatilityChange = 0.005;
+        private int eventLoopCapacity = 65536;
+        private EventLoop.WaitStrategy eventLoopWaitStrategy = EventLoop.WaitStrategy.BLOCKING;
+        private long requoteDebounceMillis = 20;
+        private long requoteMinIntervalMillis = 200;
+        private double requoteFuturesPriceFraction = 0.0005;
+        private double requoteDeltaChange = 10;
+        private double requoteVegaChange = 50;
+        private String journalDirectory = "";
+        private int journalFileSizeMegabytes = 256;
+        private int metricsIntervalSeconds = 60;
+        private int recalculationParallelism = 0;
+        private boolean impliedVolatility = false;
+        private boolean volatilitySmile = false;
+        private double volatilitySmileRefitFraction = 0.2;
+        private int pricingCacheSize = 4096;
+        private int pricingClockMillis = 1000;
+        private double ladderMaxErrorTicks = 0.25;
+        private double scenarioMaxLoss = 0;
+        private double scenarioFuturesPriceShock = 0.1;
+        private int scenarioFuturesPriceSteps = 21;
+        private double scenarioVolatilityShock = 0.5;
+        private int scenarioVolatilitySteps = 11;
+        private int scenarioParallelism = 2;
+        private double fillDeltaLimit = 0;
+        private double fillVegaLimit = 0;
+        private int maxBatchesInFlight = 4;
+        private int maxCommandsPerSecond = 0;
+
+        public Builder timeSleepSeconds(final int timeSleepSeconds) {
+            this.timeSleepSeconds = timeSleepSeconds;
+            return this;
+        }
+
+        public Builder maxBatchSize(final int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder futuresSpreadFraction(final BigDecimal futuresSpreadFraction) {
+            this.futuresSpreadFraction = futuresSpreadFraction;
+            return this;
+        }
+
+        public Builder fairVolatility(final double fairVolatility) {
+            this.fairVolatility = fairVolatility;
+            return this;
+        }
+
+        public Builder volatilitySpreadFraction(final double volatilitySpreadFraction) {
+            this.volatilitySpreadFraction = volatilitySpreadFraction;
+            return this;
+        }
+
+        public Builder numLevels(final int numLevels) {
+            this.numLevels = numLevels;
+            return this;
+        }
+
+        public Builder qtyOnLevel(final int qtyOnLevel) {
+            this.qtyOnLevel = qtyOnLevel;
+            return this;
+        }
+
+        public Builder deltaLimit(final double deltaLimit) {
+            this.deltaLimit = deltaLimit;
+            return this;
+        }
+
+        public Builder vegaLimit(final double vegaLimit) {
+            this.vegaLimit = vegaLimit;
+            return this;
+        }
+
+        public Builder riskRepriceFuturesPriceFraction(final double riskRepriceFuturesPriceFraction) {
+            this.riskRepriceFuturesPriceFraction = riskRepriceFuturesPriceFraction;
+            return this;
+        }
+
+        public Builder riskRepriceVolatilityChange(final double riskRepriceVolatilityChange) {
+            this.riskRepriceVolatilityChange = riskRepriceVolatilityChange;
+            return this;
+        }
+
+        public Builder eventLoopCapacity(final int eventLoopCapacity) {
+            this.eventLoopCapacity = eventLoopCapacity;
+            return this;
+        }
+
+        public Builder eventLoopWaitStrategy(final EventLoop.WaitStrategy eventLoopWaitStrategy) {
+            this.eventLoopWaitStrategy = eventLoopWaitStrategy;
+            return this;
+        }
+
+        public Builder requoteDebounceMillis(final long requoteDebounceMillis) {
+            this.requoteDebounceMillis = requoteDebounceMillis;
+            return this;
+        }
+
+        public Builder requoteMinIntervalMillis(final long requoteMinIntervalMillis) {
+            this.requoteMinIntervalMillis = requoteMinIntervalMillis;
+            return this;
+        }
+
+        public Builder requoteFuturesPriceFraction(final double requoteFuturesPriceFraction) {
+            this.requoteFuturesPriceFraction = requoteFuturesPriceFraction;
+            return this;
+        }
+
+        public Builder requoteDeltaChange(final double requoteDeltaChange) {
+            this.requoteDeltaChange = requoteDeltaChange;
+            return this;
+        }
+
+        public Builder requoteVegaChange(final double requoteVegaChange) {
+            this.requoteVegaChange = requoteVegaChange;
+            return this;
+        }
+
+        public Builder journalDirectory(final String journalDirectory) {
+            this.journalDirectory = journalDirectory;
+            return this;
+        }
+
+        public Builder journalFileSizeMegabytes(final int journalFileSizeMegabytes) {
+            this.journalFileSizeMegabytes = journalFileSizeMegabytes;
+            return this;
+        }
+
+        public Builder metricsIntervalSeconds(final int metricsIntervalSeconds) {
+            this.metricsIntervalSeconds = metricsIntervalSeconds;
+            return this;
+        }
+
+        public Builder recalculationParallelism(final int recalculationParallelism) {
+            this.recalculationParallelism = recalculationParallelism;
+            return this;
+        }
+
+        public Builder impliedVolatility(final boolean impliedVolatility) {
+            this.impliedVolatility = impliedVolatility;
+            return this;
+        }
+
+        public Builder volatilitySmile(final boolean volatilitySmile) {
+            this.volatilitySmile = volatilitySmile;
+            return this;
+        }
+
+        public Builder volatilitySmileRefitFraction(final double volatilitySmileRefitFraction) {
+            this.volatilitySmileRefitFraction = volatilitySmileRefitFraction;
+            return this;
+        }
+
+        public Builder pricingCacheSize(final int pricingCacheSize) {
+            this.pricingCacheSize = pricingCacheSize;
+            return this;
+        }
+
+        public Builder pricingClockMillis(final int pricingClockMillis) {
+            this.pricingClockMillis = pricingClockMillis;
+            return this;
+        }
+
+        public Builder ladderMaxErrorTicks(final double ladderMaxErrorTicks) {
+            this.ladderMaxErrorTicks = ladderMaxErrorTicks;
+            return this;
+        }
+
+        public Builder scenarioMaxLoss(final double scenarioMaxLoss) {
+            this.scenarioMaxLoss = scenarioMaxLoss;
+            return this;
+        }
+
+        public Builder scenarioFuturesPriceShock(final double scenarioFuturesPriceShock) {
+            this.scenarioFuturesPriceShock = scenarioFuturesPriceShock;
+            return this;
+        }
+
+        public Builder scenarioFuturesPriceSteps(final int scenarioFuturesPriceSteps) {
+            this.scenarioFuturesPriceSteps = scenarioFuturesPriceSteps;
+            return this;
+        }
+
+        public Builder scenarioVolatilityShock(final double scenarioVolatilityShock) {
+            this.scenarioVolatilityShock = scenarioVolatilityShock;
+            return this;
+        }
+
+        public Builder scenarioVolatilitySteps(final int scenarioVolatilitySteps) {
+            this.scenarioVolatilitySteps = scenarioVolatilitySteps;
+            return this;
+        }
+
+        public Builder scenarioParallelism(final int scenarioParallelism) {
+            this.scenarioParallelism = scenarioParallelism;
+            return this;
+        }
+
+        public Builder fillDeltaLimit(final double fillDeltaLimit) {
+            this.fillDeltaLimit = fillDeltaLimit;
+            return this;
+        }
+
+        public Builder fillVegaLimit(final double fillVegaLimit) {
+            this.fillVegaLimit = fillVegaLimit;
+            return this;
+        }
+
+        public Builder maxBatchesInFlight(final int maxBatchesInFlight) {
+            this.maxBatchesInFlight = maxBatchesInFlight;
+            return this;
+        }
+
+        public Builder maxCommandsPerSecond(final int maxCommandsPerSecond) {
+            this.maxCommandsPerSecond = maxCommandsPerSecond;
+            return this;
+        }
+
+        public MarketMakerConfiguration build() {
+            return new MarketMakerConfiguration(this);
+        }
+    }
 }
@@ -0,0 +1,429 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderSpec;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Latencies and counts of the hot paths of the {@link MarketMaker}: event loop, recalculation, pricing, sending and
+ * acknowledgement of commands.
+ * <p>
+ * Values are recorded into HdrHistogram {@link Recorder}s, which is wait-free and does not allocate, from whichever
+ * thread they are measured on. Once {@link #start(int)}ed, the histograms are collected every interval on a separate
+ * thread, logged in a single line and exposed over JMX (see {@link MarketMakerMetricsMXBean}) until the next interval.
+ * <p>
+ * Acknowledgement latency is measured from the time the batch containing a command is sent, recorded by client order
+ * id in a fixed-size table - should an id collide with one still awaiting acknowledgement, the latter is not measured.
+ */
+@ThreadSafe
+public class MarketMakerMetrics implements MarketMakerMetricsMXBean, EventLoop.Probe {
+    private static final Logger LOGGER = LoggerFactory.getLogger(MarketMakerMetrics.class);
+
+    private static final String OBJECT_NAME = "net.quedex.marketmaker:type=MarketMakerMetrics";
+    private static final long MAX_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long MAX_COUNT = 1L << 30;
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final int SENT_ORDERS_CAPACITY = 1 << 13;
+    private static final long MICROS = 1000;
+
+    private enum Metric {
+        EVENT_WAIT("eventWaitUs", MAX_NANOS, MICROS),
+        EVENT_BACKLOG("eventBacklog", MAX_COUNT, 1),
+        RECALCULATION("recalculationUs", MAX_NANOS, MICROS),
+        FUTURES_STRATEGY("futuresStrategyUs", MAX_NANOS, MICROS),
+        OPTION_STRATEGY("optionStrategyUs", MAX_NANOS, MICROS),
+        PRICINGS_PER_RECALCULATION("pricingsPerRecalculation", MAX_COUNT, 1),
+        BATCH_WAIT("batchWaitUs", MAX_NANOS, MICROS),
+        BATCH_SEND("batchSendUs", MAX_NANOS, MICROS),
+        BATCH_FILL("batchFillPercent", 100, 1),
+        COMMANDS_IN_FLIGHT("commandsInFlight", MAX_COUNT, 1),
+        PLACE_ACK("placeAckUs", MAX_NANOS, MICROS),
+        MODIFY_ACK("modifyAckUs", MAX_NANOS, MICROS),
+        CANCEL_ACK("cancelAckUs", MAX_NANOS, MICROS);
+
+        private final String logName;
+        private final long highestValue;
+        private final long logUnit;
+
+        Metric(final String logName, final long highestValue, final long logUnit) {
+            this.logName = logName;
+            this.highestValue = highestValue;
+            this.logUnit = logUnit;
+        }
+    }
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final Recorder[] recorders = new Recorder[METRICS.length];
+    private final Histogram[] intervalHistograms = new Histogram[METRICS.length]; // recycled, collecting thread only
+    private final SentOrders sentPlacements = new SentOrders(SENT_ORDERS_CAPACITY);
+    private final SentOrders sentModifications = new SentOrders(SENT_ORDERS_CAPACITY);
+    private final SentOrders sentCancels = new SentOrders(SENT_ORDERS_CAPACITY);
+    private final AtomicLong pricings = new AtomicLong();
+    private final AtomicLong pricingCacheHits = new AtomicLong();
+    private final AtomicLong pricingCacheMisses = new AtomicLong();
+
+    private volatile Snapshot snapshot;
+    private ScheduledExecutorService executor; // null until started
+    private ObjectName objectName; // null if not registered
+
+    public MarketMakerMetrics() {
+        for (final Metric metric : METRICS) {
+            recorders[metric.ordinal()] = new Recorder(metric.highestValue, SIGNIFICANT_DIGITS);
+        }
+        final long now = System.currentTimeMillis();
+        snapshot = new Snapshot(now, now, emptySummaries());
+    }
+
+    /**
+     * Starts collecting histograms every interval and registers the metrics in the platform MBean server.
+     */
+    public synchronized void start(final int intervalSeconds) {
+        checkArgument(intervalSeconds > 0, "intervalSeconds=%s <= 0", intervalSeconds);
+        checkState(executor == null, "Already started");
+
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(this::report, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+
+        try {
+            final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                LOGGER.warn("Metrics not registered over JMX - {} already registered", name);
+            } else {
+                mBeanServer.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (final JMException e) {
+            LOGGER.warn("Error registering metrics over JMX", e);
+        }
+    }
+
+    /**
+     * Stops collecting histograms, logging the last interval.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdownNow();
+        executor = null;
+        report();
+
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (final JMException e) {
+                LOGGER.warn("Error unregistering metrics from JMX", e);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void onEventPolled(final long waitNanos, final int backlog) {
+        record(Metric.EVENT_WAIT, waitNanos);
+        record(Metric.EVENT_BACKLOG, backlog);
+    }
+
+    /**
+     * @param pricings          option valuations done during the recalculation
+     * @param pricingsTotal     option valuations done since the start
+     * @param cacheHitsTotal    option valuations served from the pricing cache since the start
+     * @param cacheMissesTotal  option valuations not found in the pricing cache since the start
+     */
+    public void onRecalculation(final long futuresStrategyNanos,
+                                final long optionStrategyNanos,
+                                final long recalculationNanos,
+                                final long pricings,
+                                final long pricingsTotal,
+                                final long cacheHitsTotal,
+                                final long cacheMissesTotal) {
+        record(Metric.FUTURES_STRATEGY, futuresStrategyNanos);
+        record(Metric.OPTION_STRATEGY, optionStrategyNanos);
+        record(Metric.RECALCULATION, recalculationNanos);
+        record(Metric.PRICINGS_PER_RECALCULATION, pricings);
+        this.pricings.lazySet(pricingsTotal);
+        pricingCacheHits.lazySet(cacheHitsTotal);
+        pricingCacheMisses.lazySet(cacheMissesTotal);
+    }
+
+    /**
+     * Records the send time of the commands of a batch about to be sent, to measure their acknowledgement latency. To
+     * be called from a single thread.
+     */
+    public void onBatchSending(final List<? extends OrderSpec> batch, final long sendNanos) {
+        for (final OrderSpec orderSpec : batch) {
+            if (orderSpec instanceof LimitOrderSpec) {
+                sentPlacements.put(((LimitOrderSpec) orderSpec).getClientOrderId(), sendNanos);
+            } else if (orderSpec instanceof OrderModificationSpec) {
+                sentModifications.put(((OrderModificationSpec) orderSpec).getClientOrderId(), sendNanos);
+            } else if (orderSpec instanceof OrderCancelSpec) {
+                sentCancels.put(((OrderCancelSpec) orderSpec).getClientOrderId(), sendNanos);
+            }
+        }
+    }
+
+    /**
+     * @param commands          commands in the batch
+     * @param maxBatchSize      commands a batch may have
+     * @param commandsInFlight  commands sent earlier and awaiting acknowledgement when the batch was sent
+     * @param waitNanos         time the batch waited for acknowledgements or the budget of commands
+     */
+    public void onBatchSent(final int commands,
+                            final int maxBatchSize,
+                            final int commandsInFlight,
+                            final long waitNanos,
+                            final long sendNanos) {
+        record(Metric.BATCH_FILL, 100L * commands / maxBatchSize);
+        record(Metric.COMMANDS_IN_FLIGHT, commandsInFlight);
+        record(Metric.BATCH_WAIT, waitNanos);
+        record(Metric.BATCH_SEND, sendNanos);
+    }
+
+    /**
+     * To be called from a single thread, like the other acknowledgement and failure callbacks.
+     */
+    public void onPlaceAcknowledged(final long clientOrderId) {
+        recordAck(Metric.PLACE_ACK, sentPlacements, clientOrderId);
+    }
+
+    public void onModifyAcknowledged(final long clientOrderId) {
+        recordAck(Metric.MODIFY_ACK, sentModifications, clientOrderId);
+    }
+
+    public void onCancelAcknowledged(final long clientOrderId) {
+        recordAck(Metric.CANCEL_ACK, sentCancels, clientOrderId);
+    }
+
+    public void onPlaceFailed(final long clientOrderId) {
+        sentPlacements.remove(clientOrderId);
+    }
+
+    public void onModifyFailed(final long clientOrderId) {
+        sentModifications.remove(clientOrderId);
+    }
+
+    public void onCancelFailed(final long clientOrderId) {
+        sentCancels.remove(clientOrderId);
+    }
+
+    @Override
+    public long getIntervalStartMillis() {
+        return snapshot.startMillis;
+    }
+
+    @Override
+    public long getIntervalEndMillis() {
+        return snapshot.endMillis;
+    }
+
+    @Override
+    public HistogramSummary getEventWaitNanos() {
+        return snapshot.get(Metric.EVENT_WAIT);
+    }
+
+    @Override
+    public HistogramSummary getEventBacklog() {
+        return snapshot.get(Metric.EVENT_BACKLOG);
+    }
+
+    @Override
+    public HistogramSummary getRecalculationNanos() {
+        return snapshot.get(Metric.RECALCULATION);
+    }
+
+    @Override
+    public HistogramSummary getFuturesStrategyNanos() {
+        return snapshot.get(Metric.FUTURES_STRATEGY);
+    }
+
+    @Override
+    public HistogramSummary getOptionStrategyNanos() {
+        return snapshot.get(Metric.OPTION_STRATEGY);
+    }
+
+    @Override
+    public HistogramSummary getPricingsPerRecalculation() {
+        return snapshot.get(Metric.PRICINGS_PER_RECALCULATION);
+    }
+
+    @Override
+    public long getPricings() {
+        return pricings.get();
+    }
+
+    @Override
+    public long getPricingCacheHits() {
+        return pricingCacheHits.get();
+    }
+
+    @Override
+    public long getPricingCacheMisses() {
+        return pricingCacheMisses.get();
+    }
+
+    @Override
+    public HistogramSummary getBatchWaitNanos() {
+        return snapshot.get(Metric.BATCH_WAIT);
+    }
+
+    @Override
+    public HistogramSummary getBatchSendNanos() {
+        return snapshot.get(Metric.BATCH_SEND);
+    }
+
+    @Override
+    public HistogramSummary getBatchFillPercent() {
+        return snapshot.get(Metric.BATCH_FILL);
+    }
+
+    @Override
+    public HistogramSummary getCommandsInFlight() {
+        return snapshot.get(Metric.COMMANDS_IN_FLIGHT);
+    }
+
+    @Override
+    public HistogramSummary getPlaceAckNanos() {
+        return snapshot.get(Metric.PLACE_ACK);
+    }
+
+    @Override
+    public HistogramSummary getModifyAckNanos() {
+        return snapshot.get(Metric.MODIFY_ACK);
+    }
+
+    @Override
+    public HistogramSummary getCancelAckNanos() {
+        return snapshot.get(Metric.CANCEL_ACK);
+    }
+
+    private void record(final Metric metric, final long value) {
+        // values above the range are recorded as its highest value rather than failing
+        recorders[metric.ordinal()].recordValue(Math.max(Math.min(value, metric.highestValue), 0));
+    }
+
+    private void recordAck(final Metric metric, final SentOrders sentOrders, final long clientOrderId) {
+        final long sendNanos = sentOrders.remove(clientOrderId);
+        if (sendNanos != SentOrders.NONE) {
+            record(metric, System.nanoTime() - sendNanos);
+        }
+    }
+
+    private synchronized void report() {
+        try {
+            final long startMillis = snapshot.endMillis;
+            final long endMillis = System.currentTimeMillis();
+            final HistogramSummary[] summaries = new HistogramSummary[METRICS.length];
+            for (final Metric metric : METRICS) {
+                final int i = metric.ordinal();
+                intervalHistograms[i] = recorders[i].getIntervalHistogram(intervalHistograms[i]);
+                summaries[i] = HistogramSummary.of(intervalHistograms[i]);
+            }
+            snapshot = new Snapshot(startMillis, endMillis, summaries);
+
+            final StringBuilder line = new StringBuilder("Metrics:");
+            for (final Metric metric : METRICS) {
+                line.append(' ').append(metric.logName).append('=');
+                summaries[metric.ordinal()].appendTo(line, metric.logUnit);
+            }
+            line.append(" pricings=").append(pricings.get())
+                .append(" pricingCacheHits=").append(pricingCacheHits.get())
+                .append(" pricingCacheMisses=").append(pricingCacheMisses.get());
+            LOGGER.info("{}", line);
+        } catch (final RuntimeException e) {
+            LOGGER.error("Error reporting metrics", e); // would cancel further reports if thrown
+        }
+    }
+
+    private static HistogramSummary[] emptySummaries() {
+        final HistogramSummary[] summaries = new HistogramSummary[METRICS.length];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = HistogramSummary.EMPTY;
+        }
+        return summaries;
+    }
+
+    @Immutable
+    private static final class Snapshot {
+        private final long startMillis;
+        private final long endMillis;
+        private final HistogramSummary[] summaries;
+
+        private Snapshot(final long startMillis, final long endMillis, final HistogramSummary[] summaries) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.summaries = summaries;
+        }
+
+        private HistogramSummary get(final Metric metric) {
+            return summaries[metric.ordinal()];
+        }
+    }
+
+    /**
+     * Send times by client order id, in a table indexed by the id (ids are assigned sequentially, so ids in flight
+     * rarely collide). Written by one thread and read and cleared by another one: a slot is invalidated before its time
+     * is overwritten and the id is read before and after the time, so a time is never attributed to another id.
+     */
+    @ThreadSafe
+    private static final class SentOrders {
+        private static final long NONE = Long.MIN_VALUE;
+        private static final long EMPTY = 0; // client order ids start at 1
+
+        private final int mask;
+        private final AtomicLongArray ids;
+        private final AtomicLongArray sendNanos;
+
+        private SentOrders(final int capacity) {
+            this.mask = capacity - 1;
+            this.ids = new AtomicLongArray(capacity);
+            this.sendNanos = new AtomicLongArray(capacity);
+        }
+
+        private void put(final long clientOrderId, final long nanos) {
+            final int index = (int) clientOrderId & mask;
+            ids.set(index, EMPTY);
+            sendNanos.set(index, nanos);
+            ids.set(index, clientOrderId);
+        }
+
+        /**
+         * @return send time of the order or {@link #NONE}
+         */
+        private long remove(final long clientOrderId) {
+            final int index = (int) clientOrderId & mask;
+            if (ids.get(index) != clientOrderId) {
+                return NONE;
+            }
+            final long nanos = sendNanos.get(index);
+            return ids.compareAndSet(index, clientOrderId, EMPTY) ? nanos : NONE;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package net.quedex.marketmaker;
+
+/**
+ * JMX view of {@link MarketMakerMetrics}. Histograms summarise the last reporting interval.
+ */
+public interface MarketMakerMetricsMXBean {
+
+    long getIntervalStartMillis();
+
+    long getIntervalEndMillis();
+
+    /**
+     * @return time between publishing an event to the event loop and handling it
+     */
+    HistogramSummary getEventWaitNanos();
+
+    /**
+     * @return events waiting in the event loop behind a handled one
+     */
+    HistogramSummary getEventBacklog();
+
+    HistogramSummary getRecalculationNanos();
+
+    HistogramSummary getFuturesStrategyNanos();
+
+    HistogramSummary getOptionStrategyNanos();
+
+    /**
+     * @return option valuations (one per option and volatility) done in a recalculation
+     */
+    HistogramSummary getPricingsPerRecalculation();
+
+    /**
+     * @return all option valuations, including repricing of positions
+     */
+    long getPricings();
+
+    /**
+     * @return option valuations served from the pricing cache, not included in {@link #getPricings()}
+     */
+    long getPricingCacheHits();
+
+    long getPricingCacheMisses();
+
+    /**
+     * @return time a batch of commands waited for earlier ones to be acknowledged or for the budget of commands
+     */
+    HistogramSummary getBatchWaitNanos();
+
+    /**
+     * @return duration of sending a single batch of commands
+     */
+    HistogramSummary getBatchSendNanos();
+
+    /**
+     * @return commands in a batch, in percent of the maximum batch size
+     */
+    HistogramSummary getBatchFillPercent();
+
+    /**
+     * @return commands awaiting acknowledgement when a batch is sent
+     */
+    HistogramSummary getCommandsInFlight();
+
+    /**
+     * @return time from sending the batch containing a placement to the placement being acknowledged
+     */
+    HistogramSummary getPlaceAckNanos();
+
+    HistogramSummary getModifyAckNanos();
+
+    HistogramSummary getCancelAckNanos();
+}
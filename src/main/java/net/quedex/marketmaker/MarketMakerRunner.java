@@ -1,6 +1,5 @@
 package net.quedex.marketmaker;
 
-import com.google.common.collect.Lists;
 import net.quedex.api.common.CommunicationException;
 import net.quedex.api.market.Instrument;
 import net.quedex.api.market.MarketStream;
@@ -26,7 +25,6 @@ public class MarketMakerRunner {
     private final MarketStream marketStream;
     private final UserStream userStream;
     private final MarketMakerConfiguration marketMakerConfiguration;
-    private final int sleepTimeSeconds;
 
     private volatile boolean running = false;
     private volatile Thread runningThread;
@@ -37,7 +35,6 @@ public class MarketMakerRunner {
         this.marketStream = checkNotNull(marketStream, "null marketStream");
         this.userStream = checkNotNull(userStream, "null userStream");
         this.marketMakerConfiguration = checkNotNull(mmConfig, "null marketMakerConfiguration");
-        this.sleepTimeSeconds = mmConfig.getTimeSleepSeconds();
     }
 
     public void runLoop() {
@@ -69,9 +66,18 @@ public class MarketMakerRunner {
                 instrumentsFuture.get(),
                 this::onError
             );
+            final OrderSender orderSender = new OrderSender(
+                userStream::batch,
+                marketMaker::getPendingCommands,
+                marketMaker.getMetrics(),
+                marketMakerConfiguration.getMaxBatchSize(),
+                marketMakerConfiguration.getMaxBatchesInFlight(),
+                marketMakerConfiguration.getMaxCommandsPerSecond()
+            );
 
             final CompletableFuture<AccountState> initialAccountStateFuture = new CompletableFuture<>();
 
+            marketStream.registerInstrumentsListener(marketMaker); // listing changes
             marketStream.registerQuotesListener(marketMaker).subscribe(instrumentsFuture.get().keySet());
 
             userStream.registerOpenPositionListener(marketMaker);
@@ -87,8 +93,8 @@ public class MarketMakerRunner {
 
             while (running) {
                 final Future<List<OrderSpec>> orderSpecs = marketMaker.recalculate();
-                send(orderSpecs.get());
-                Thread.sleep(sleepTimeSeconds * 1000);
+                send(orderSender, orderSpecs.get());
+                marketMaker.awaitRequote();
             }
         } catch (final InterruptedException e) {
             // ignore
@@ -100,7 +106,8 @@ public class MarketMakerRunner {
                 LOGGER.info("Cancelling all pending orders");
                 if (marketMaker != null) {
                     try {
-                        send(Collections.singletonList(CancelAllOrdersSpec.INSTANCE));
+                        // straight to the exchange, neither held back by the sender nor lost to a pending interrupt
+                        userStream.batch(Collections.singletonList(CancelAllOrdersSpec.INSTANCE));
                         Thread.sleep(10_000);
                     } catch (final InterruptedException e) {
                         // ignore
@@ -132,13 +139,9 @@ public class MarketMakerRunner {
         stop();
     }
 
-    private void send(final List<OrderSpec> orderSpecs) {
+    private static void send(final OrderSender orderSender, final List<OrderSpec> orderSpecs)
+        throws InterruptedException {
         LOGGER.debug("send({})", orderSpecs);
-        if (orderSpecs.isEmpty()) {
-            return;
-        }
-        for (final List<OrderSpec> batch : Lists.partition(orderSpecs, marketMakerConfiguration.getMaxBatchSize())) {
-            userStream.batch(batch);
-        }
+        orderSender.send(orderSpecs);
     }
 }
@@ -0,0 +1,374 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.PriceQuantity;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+import net.quedex.api.user.CancelAllOrdersSpec;
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OpenPositionListener;
+import net.quedex.api.user.OrderCancelFailed;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderCancelled;
+import net.quedex.api.user.OrderFilled;
+import net.quedex.api.user.OrderListener;
+import net.quedex.api.user.OrderModificationFailed;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderModified;
+import net.quedex.api.user.OrderPlaceFailed;
+import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSide;
+import net.quedex.api.user.OrderSpec;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Stands in for the exchange behind a {@link net.quedex.api.user.UserStream} in replays: executes batches of commands
+ * and fills resting orders against replayed {@link Quotes}, passing order events and positions to the listeners on the
+ * calling thread.
+ * <p>
+ * Matching is simple and deterministic:
+ * <ul>
+ * <li>an order crossing the opposite best quote when placed or modified is filled at the quoted price,</li>
+ * <li>a resting order crossed by new quotes is filled at its own price,</li>
+ * <li>fills are limited to the quantity at the best price, which is taken only once until the price changes, and go to
+ * orders with better prices first, then to older ones,</li>
+ * <li>replayed quotes are not affected by the simulated orders.</li>
+ * </ul>
+ */
+@NotThreadSafe
+public class MatchingSimulator implements QuotesListener {
+    private static final long DIGEST_OFFSET = 0xcbf29ce484222325L;
+    private static final long DIGEST_PRIME = 0x100000001b3L;
+
+    private static final Comparator<SimulatedOrder> BY_PRICE = Comparator.comparing(order -> order.price);
+    private static final Comparator<SimulatedOrder> BY_PRICE_DESCENDING = BY_PRICE.reversed();
+
+    private final OrderListener orderListener;
+    private final OpenPositionListener openPositionListener;
+
+    private final Map<Long, SimulatedOrder> orders = new HashMap<>();
+    private final Map<Integer, Book> books = new HashMap<>();
+    private final Map<Integer, Integer> positions = new TreeMap<>();
+    private final List<SimulatedOrder> crossing = new ArrayList<>();
+
+    private long commands = 0;
+    private long fills = 0;
+    private long filledQuantity = 0;
+    private long digest = DIGEST_OFFSET;
+
+    public MatchingSimulator(final OrderListener orderListener, final OpenPositionListener openPositionListener) {
+        this.orderListener = checkNotNull(orderListener, "null orderListener");
+        this.openPositionListener = checkNotNull(openPositionListener, "null openPositionListener");
+    }
+
+    /**
+     * Executes the commands in order, as {@link net.quedex.api.user.UserStream#batch(List)} would.
+     */
+    public void batch(final List<? extends OrderSpec> batch) {
+        for (final OrderSpec orderSpec : batch) {
+            commands++;
+            if (orderSpec instanceof LimitOrderSpec) {
+                place((LimitOrderSpec) orderSpec);
+            } else if (orderSpec instanceof OrderModificationSpec) {
+                modify((OrderModificationSpec) orderSpec);
+            } else if (orderSpec instanceof OrderCancelSpec) {
+                cancel(((OrderCancelSpec) orderSpec).getClientOrderId());
+            } else if (orderSpec instanceof CancelAllOrdersSpec) {
+                cancelAll();
+            } else {
+                throw new IllegalArgumentException("Unsupported orderSpec=" + orderSpec);
+            }
+        }
+    }
+
+    @Override
+    public void onQuotes(final Quotes quotes) {
+        final Book book = getBook(quotes.getInstrumentId());
+        book.update(quotes);
+
+        if (book.askPrice != null) {
+            collectCrossing(book, OrderSide.BUY, book.askPrice);
+            crossing.sort(BY_PRICE_DESCENDING);
+            fillCrossing(book);
+        }
+        if (book.bidPrice != null) {
+            collectCrossing(book, OrderSide.SELL, book.bidPrice);
+            crossing.sort(BY_PRICE);
+            fillCrossing(book);
+        }
+    }
+
+    /**
+     * @return number of commands executed
+     */
+    public long getCommands() {
+        return commands;
+    }
+
+    public long getFills() {
+        return fills;
+    }
+
+    public long getFilledQuantity() {
+        return filledQuantity;
+    }
+
+    public int getOpenOrders() {
+        return orders.size();
+    }
+
+    /**
+     * @return signed positions by instrument id, in the order of ids
+     */
+    public Map<Integer, Integer> getPositions() {
+        return Collections.unmodifiableMap(positions);
+    }
+
+    /**
+     * @return hash of the executed commands and fills - runs with equal digests executed the same
+     */
+    public long getDigest() {
+        return digest;
+    }
+
+    private void place(final LimitOrderSpec limitOrderSpec) {
+        final long clientOrderId = limitOrderSpec.getClientOrderId();
+        digest(1, clientOrderId, limitOrderSpec.getInstrumentId(), limitOrderSpec.getSide().ordinal(),
+            limitOrderSpec.getQuantity(), Double.doubleToLongBits(limitOrderSpec.getPrice().doubleValue()));
+
+        if (orders.containsKey(clientOrderId)
+            || limitOrderSpec.getQuantity() <= 0
+            || limitOrderSpec.getPrice().signum() <= 0) {
+            orderListener.onOrderPlaceFailed(new OrderPlaceFailed(clientOrderId));
+            return;
+        }
+
+        final SimulatedOrder order = new SimulatedOrder(
+            clientOrderId,
+            limitOrderSpec.getInstrumentId(),
+            limitOrderSpec.getSide(),
+            limitOrderSpec.getPrice(),
+            limitOrderSpec.getQuantity()
+        );
+        final Book book = getBook(order.instrumentId);
+        orders.put(clientOrderId, order);
+        book.orders.add(order);
+
+        orderListener.onOrderPlaced(new OrderPlaced(
+            clientOrderId,
+            order.instrumentId,
+            order.price,
+            order.quantity,
+            order.quantity,
+            order.side
+        ));
+        fillIfCrossing(book, order);
+    }
+
+    private void modify(final OrderModificationSpec orderModificationSpec) {
+        final long clientOrderId = orderModificationSpec.getClientOrderId();
+        digest(2, clientOrderId, orderModificationSpec.getNewQuantity(),
+            Double.doubleToLongBits(orderModificationSpec.getNewPrice().doubleValue()));
+
+        final SimulatedOrder order = orders.get(clientOrderId);
+        if (order == null
+            || orderModificationSpec.getNewQuantity() <= 0
+            || orderModificationSpec.getNewPrice().signum() <= 0) {
+            orderListener.onOrderModificationFailed(new OrderModificationFailed(clientOrderId));
+            return;
+        }
+
+        final Book book = getBook(order.instrumentId);
+        if (order.price.compareTo(orderModificationSpec.getNewPrice()) != 0) {
+            book.orders.remove(order); // loses priority
+            book.orders.add(order);
+        }
+        order.price = orderModificationSpec.getNewPrice();
+        order.quantity = orderModificationSpec.getNewQuantity();
+
+        orderListener.onOrderModified(new OrderModified(clientOrderId));
+        fillIfCrossing(book, order);
+    }
+
+    private void cancel(final long clientOrderId) {
+        digest(3, clientOrderId);
+
+        final SimulatedOrder order = orders.remove(clientOrderId);
+        if (order == null) {
+            orderListener.onOrderCancelFailed(new OrderCancelFailed(clientOrderId));
+            return;
+        }
+        getBook(order.instrumentId).orders.remove(order);
+        orderListener.onOrderCancelled(new OrderCancelled(clientOrderId));
+    }
+
+    private void cancelAll() {
+        digest(4);
+
+        orders.clear();
+        for (final Book book : books.values()) {
+            book.orders.clear();
+        }
+        orderListener.onAllOrdersCancelled();
+    }
+
+    private void fillIfCrossing(final Book book, final SimulatedOrder order) {
+        if (order.side == OrderSide.BUY) {
+            if (book.askPrice != null && order.price.compareTo(book.askPrice) >= 0) {
+                fill(book, order, book.askPrice);
+            }
+        } else {
+            if (book.bidPrice != null && order.price.compareTo(book.bidPrice) <= 0) {
+                fill(book, order, book.bidPrice);
+            }
+        }
+    }
+
+    private void collectCrossing(final Book book, final OrderSide side, final BigDecimal oppositePrice) {
+        crossing.clear();
+        final int sign = side == OrderSide.BUY ? 1 : -1;
+        for (final SimulatedOrder order : book.orders) {
+            if (order.side == side && sign * order.price.compareTo(oppositePrice) >= 0) {
+                crossing.add(order);
+            }
+        }
+    }
+
+    private void fillCrossing(final Book book) {
+        for (final SimulatedOrder order : crossing) {
+            fill(book, order, order.price);
+        }
+        crossing.clear();
+    }
+
+    private void fill(final Book book, final SimulatedOrder order, final BigDecimal tradePrice) {
+        final int quantity = Math.min(order.quantity, book.getAvailable(order.side));
+        if (quantity == 0) {
+            return;
+        }
+        book.take(order.side, quantity);
+        order.quantity -= quantity;
+        if (order.quantity == 0) {
+            orders.remove(order.clientOrderId);
+            book.orders.remove(order);
+        }
+
+        fills++;
+        filledQuantity += quantity;
+        digest(5, order.clientOrderId, quantity, Double.doubleToLongBits(tradePrice.doubleValue()));
+
+        orderListener.onOrderFilled(new OrderFilled(
+            order.clientOrderId,
+            order.instrumentId,
+            tradePrice,
+            quantity,
+            order.quantity,
+            order.side
+        ));
+
+        final int position = positions.getOrDefault(order.instrumentId, 0)
+            + (order.side == OrderSide.BUY ? quantity : -quantity);
+        positions.put(order.instrumentId, position);
+        openPositionListener.onOpenPosition(new OpenPosition(
+            order.instrumentId,
+            Math.abs(position),
+            position < 0 ? OrderSide.SELL : OrderSide.BUY
+        ));
+    }
+
+    private Book getBook(final int instrumentId) {
+        return books.computeIfAbsent(instrumentId, id -> new Book());
+    }
+
+    private void digest(final long... values) {
+        for (final long value : values) {
+            digest = (digest ^ value) * DIGEST_PRIME;
+        }
+    }
+
+    private static final class SimulatedOrder {
+        private final long clientOrderId;
+        private final int instrumentId;
+        private final OrderSide side;
+        private BigDecimal price;
+        private int quantity;
+
+        private SimulatedOrder(final long clientOrderId,
+                               final int instrumentId,
+                               final OrderSide side,
+                               final BigDecimal price,
+                               final int quantity) {
+            this.clientOrderId = clientOrderId;
+            this.instrumentId = instrumentId;
+            this.side = side;
+            this.price = price;
+            this.quantity = quantity;
+        }
+    }
+
+    /**
+     * Best quotes of an instrument, with quantities already taken by simulated fills, and simulated orders in the order
+     * of priority.
+     */
+    private static final class Book {
+        private final List<SimulatedOrder> orders = new ArrayList<>();
+
+        private BigDecimal bidPrice;
+        private int bidQuantity;
+        private int bidTaken;
+        private BigDecimal askPrice;
+        private int askQuantity;
+        private int askTaken;
+
+        private void update(final Quotes quotes) {
+            final PriceQuantity bid = quotes.getBid();
+            final BigDecimal newBidPrice = bid != null ? bid.getPrice() : null;
+            if (!isSamePrice(bidPrice, newBidPrice)) {
+                bidTaken = 0;
+            }
+            bidPrice = newBidPrice;
+            bidQuantity = bid != null ? bid.getQuantity() : 0;
+
+            final PriceQuantity ask = quotes.getAsk();
+            final BigDecimal newAskPrice = ask != null ? ask.getPrice() : null;
+            if (!isSamePrice(askPrice, newAskPrice)) {
+                askTaken = 0;
+            }
+            askPrice = newAskPrice;
+            askQuantity = ask != null ? ask.getQuantity() : 0;
+        }
+
+        /**
+         * @return quantity available to an order of the given side
+         */
+        private int getAvailable(final OrderSide side) {
+            return side == OrderSide.BUY
+                ? Math.max(askQuantity - askTaken, 0)
+                : Math.max(bidQuantity - bidTaken, 0);
+        }
+
+        private void take(final OrderSide side, final int quantity) {
+            if (side == OrderSide.BUY) {
+                askTaken += quantity;
+            } else {
+                bidTaken += quantity;
+            }
+        }
+
+        private static boolean isSamePrice(final BigDecimal price1, final BigDecimal price2) {
+            return price1 == null ? price2 == null : price2 != null && price1.compareTo(price2) == 0;
+        }
+    }
+}
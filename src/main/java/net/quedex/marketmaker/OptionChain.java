@@ -0,0 +1,102 @@
+package net.quedex.marketmaker;
+
+import com.google.common.base.MoreObjects;
+import net.quedex.api.market.Instrument;
+
+import javax.annotation.concurrent.Immutable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Options of a single expiration with the futures they are settled against, sorted by strike (calls before puts at
+ * the same strike).
+ */
+@Immutable
+public final class OptionChain {
+    private static final Comparator<Instrument> BY_STRIKE = Comparator
+        .comparing(Instrument::getStrike)
+        .thenComparing(Instrument::getOptionType);
+
+    private final long expirationDate;
+    private final Instrument futures;
+    private final Instrument[] options;
+    private final double[] strikes;
+    private final List<Instrument> optionsView;
+
+    public OptionChain(final Instrument futures, final Collection<Instrument> options) {
+        this.futures = checkNotNull(futures, "null futures");
+        checkNotNull(options, "null options");
+        this.expirationDate = futures.getExpirationDate();
+
+        this.options = options.toArray(new Instrument[options.size()]);
+        Arrays.sort(this.options, BY_STRIKE);
+        this.strikes = new double[this.options.length];
+        for (int i = 0; i < this.options.length; i++) {
+            checkArgument(
+                !this.options[i].isFutures() && this.options[i].getExpirationDate() == expirationDate,
+                "Not an option expiring with futures=%s: %s", futures.getSymbol(), this.options[i].getSymbol()
+            );
+            strikes[i] = this.options[i].getStrike().doubleValue();
+        }
+        this.optionsView = Collections.unmodifiableList(Arrays.asList(this.options));
+    }
+
+    public long getExpirationDate() {
+        return expirationDate;
+    }
+
+    public Instrument getFutures() {
+        return futures;
+    }
+
+    /**
+     * @return options sorted by strike
+     */
+    public List<Instrument> getOptions() {
+        return optionsView;
+    }
+
+    public int size() {
+        return options.length;
+    }
+
+    public Instrument getOption(final int index) {
+        return options[index];
+    }
+
+    public double getStrike(final int index) {
+        return strikes[index];
+    }
+
+    /**
+     * @return index of the first option with strike not lower than the given one, {@link #size()} if there is none
+     */
+    public int lowerBound(final double strike) {
+        int low = 0;
+        int high = strikes.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (strikes[middle] < strike) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("futures", futures.getSymbol())
+            .add("options", options.length)
+            .toString();
+    }
+}
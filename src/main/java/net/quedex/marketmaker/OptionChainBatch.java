@@ -0,0 +1,117 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Options priced together by {@link Pricing#calculateChain(OptionChainBatch)}, kept as primitive arrays (structure of
+ * arrays). Every option is priced at {@code levels} volatilities; per level inputs and outputs are stored at index
+ * {@code option * levels + level}.
+ * <p>
+ * Preallocated for a maximum number of options and reused between calculations.
+ */
+@NotThreadSafe
+public final class OptionChainBatch {
+    private final int maxOptions;
+    private final int levels;
+
+    final int[] instrumentIds;
+    final long[] expirationDates;
+    final double[] strikes;
+    final boolean[] calls;
+    final double[] futuresPrices;
+    final double[] yearsToMaturity;
+
+    final double[] volatilities;
+    final double[] prices;
+    final double[] deltas;
+    final double[] gammaPs;
+    final double[] vegas;
+    final double[] thetas;
+
+    private int size;
+
+    public OptionChainBatch(final int maxOptions, final int levels) {
+        checkArgument(maxOptions > 0, "maxOptions=%s <= 0", maxOptions);
+        checkArgument(levels > 0, "levels=%s <= 0", levels);
+        this.maxOptions = maxOptions;
+        this.levels = levels;
+
+        instrumentIds = new int[maxOptions];
+        expirationDates = new long[maxOptions];
+        strikes = new double[maxOptions];
+        calls = new boolean[maxOptions];
+        futuresPrices = new double[maxOptions];
+        yearsToMaturity = new double[maxOptions];
+
+        volatilities = new double[maxOptions * levels];
+        prices = new double[maxOptions * levels];
+        deltas = new double[maxOptions * levels];
+        gammaPs = new double[maxOptions * levels];
+        vegas = new double[maxOptions * levels];
+        thetas = new double[maxOptions * levels];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return index of the added option
+     */
+    public int add(final Instrument option, final double futuresPrice) {
+        checkArgument(!option.isFutures(), "Expected option");
+        checkState(size < maxOptions, "Batch full, maxOptions=%s", maxOptions);
+
+        instrumentIds[size] = option.getInstrumentId();
+        expirationDates[size] = option.getExpirationDate();
+        strikes[size] = option.getStrike().doubleValue();
+        calls[size] = option.getOptionType() == Instrument.OptionType.CALL_EUROPEAN;
+        futuresPrices[size] = futuresPrice;
+        return size++;
+    }
+
+    public void setVolatility(final int option, final int level, final double volatility) {
+        volatilities[index(option, level)] = volatility;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getMaxOptions() {
+        return maxOptions;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    public double getPrice(final int option, final int level) {
+        return prices[index(option, level)];
+    }
+
+    public double getDelta(final int option, final int level) {
+        return deltas[index(option, level)];
+    }
+
+    public double getGammaP(final int option, final int level) {
+        return gammaPs[index(option, level)];
+    }
+
+    public double getVega(final int option, final int level) {
+        return vegas[index(option, level)];
+    }
+
+    public double getTheta(final int option, final int level) {
+        return thetas[index(option, level)];
+    }
+
+    private int index(final int option, final int level) {
+        return option * levels + level;
+    }
+}
@@ -1,6 +1,5 @@
 package net.quedex.marketmaker;
 
-import com.google.common.collect.ImmutableMap;
 import net.quedex.api.user.CancelAllOrdersFailed;
 import net.quedex.api.user.LiquidationOrderCancelled;
 import net.quedex.api.user.LiquidationOrderFilled;
@@ -14,25 +13,37 @@ import net.quedex.api.user.OrderModificationFailed;
 import net.quedex.api.user.OrderModified;
 import net.quedex.api.user.OrderPlaceFailed;
 import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSide;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
 public class OrderManager implements OrderListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(OrderManager.class);
 
-    private final Map<Integer, Map<Long, GenericOrder>> instrumentIdToOrderIdToOrder = new HashMap<>();
-    private final Map<Long, GenericOrder> orderIdToOrder = new HashMap<>();
+    private final InstrumentManager instrumentManager;
+    private final OrderStore orderStore = new OrderStore(4096, 256);
+    private final AtomicInteger pendingCommands = new AtomicInteger(); // published for the sending thread
 
     private long maxOrderId;
 
+    public OrderManager(final InstrumentManager instrumentManager) {
+        this.instrumentManager = checkNotNull(instrumentManager, "null instrumentManager");
+    }
+
     public Collection<Long> getOrderIdsForInstrument(final int instrumentId) {
-        return instrumentIdToOrderIdToOrder.getOrDefault(instrumentId, ImmutableMap.of()).keySet();
+        final List<Long> orderIds = new ArrayList<>();
+        for (int slot = orderStore.first(instrumentId); slot != OrderStore.NONE; slot = orderStore.next(slot)) {
+            orderIds.add(orderStore.getClientOrderId(slot));
+        }
+        return orderIds;
     }
 
     public long getNextOrderId() {
@@ -40,34 +51,110 @@ public class OrderManager implements OrderListener {
     }
 
     public int getSumPlacedQtyForInstrument(final int instrumentId) {
-        return instrumentIdToOrderIdToOrder.getOrDefault(instrumentId, ImmutableMap.of()).values()
-            .stream()
-            .mapToInt(GenericOrder::getQuantity)
-            .sum();
+        return orderStore.getQuantity(instrumentId, OrderSide.BUY)
+            + orderStore.getQuantity(instrumentId, OrderSide.SELL);
     }
 
     public Collection<Long> getAllOrderIds() {
-        return orderIdToOrder.keySet();
+        final List<Long> orderIds = new ArrayList<>(orderStore.size());
+        for (int slot = 0; slot < orderStore.capacity(); slot++) {
+            if (orderStore.isUsed(slot)) {
+                orderIds.add(orderStore.getClientOrderId(slot));
+            }
+        }
+        return orderIds;
+    }
+
+    /**
+     * May be called from any thread.
+     *
+     * @return number of sent placements, modifications and cancels not acknowledged (or rejected) yet, as of the last
+     *         command sent or event handled
+     */
+    public int getPendingCommands() {
+        return pendingCommands.get();
+    }
+
+    /**
+     * @return read-only view of tracked orders, including sent but not yet acknowledged placements
+     */
+    public OrderStore getOrderStore() {
+        return orderStore;
+    }
+
+    /**
+     * Tracks an order whose placement has been requested, until it is acknowledged or rejected.
+     */
+    public void onPlacementSent(final long clientOrderId, final GenericOrder order) {
+        orderStore.add(
+            clientOrderId,
+            order.getInstrumentId(),
+            order.getSide(),
+            order.getTickSize(),
+            order.getPriceTicks(),
+            order.getQuantity(),
+            order.getInitialQuantity(),
+            true
+        );
+        publishPendingCommands();
+    }
+
+    /**
+     * @param modified the order as requested to be after the modification
+     */
+    public void onModificationSent(final long clientOrderId, final GenericOrder modified) {
+        final int slot = orderStore.find(clientOrderId);
+        checkState(slot != OrderStore.NONE, "Modified order id=%s not found", clientOrderId);
+        orderStore.setModification(slot, modified.getPriceTicks(), modified.getQuantity());
+        publishPendingCommands();
+    }
+
+    public void onCancelSent(final long clientOrderId) {
+        final int slot = orderStore.find(clientOrderId);
+        checkState(slot != OrderStore.NONE, "Cancelled order id=%s not found", clientOrderId);
+        orderStore.setCancelPending(slot, true);
+        publishPendingCommands();
     }
 
     @Override
     public void onOrderPlaced(final OrderPlaced orderPlaced) {
         LOGGER.debug("{}", orderPlaced);
 
-        final int instrumentId = orderPlaced.getInstrumentId();
-        Map<Long, GenericOrder> orderIdToOrder = instrumentIdToOrderIdToOrder.get(instrumentId);
-
-        if (orderIdToOrder == null) {
-            orderIdToOrder = new HashMap<>();
-            instrumentIdToOrderIdToOrder.put(instrumentId, orderIdToOrder);
-        }
-
         final long clientOrderId = orderPlaced.getClientOrderId();
-        final GenericOrder genericOrder = new GenericOrder(orderPlaced);
-        orderIdToOrder.put(clientOrderId, genericOrder);
-        this.orderIdToOrder.put(clientOrderId, genericOrder);
+        final int slot = orderStore.find(clientOrderId);
+
+        if (slot != OrderStore.NONE) {
+            orderStore.acknowledgePlacement(
+                slot,
+                orderStore.getOrder(slot).getTickSize().toTicks(orderPlaced.getPrice()),
+                orderPlaced.getQuantity(),
+                orderPlaced.getInitialQuantity()
+            );
+        } else {
+            final TickSize tickSize = instrumentManager.getTickSize(orderPlaced.getInstrumentId());
+            orderStore.add(
+                clientOrderId,
+                orderPlaced.getInstrumentId(),
+                orderPlaced.getSide(),
+                tickSize,
+                tickSize.toTicks(orderPlaced.getPrice()),
+                orderPlaced.getQuantity(),
+                orderPlaced.getInitialQuantity(),
+                false
+            );
+        }
 
         maxOrderId = Math.max(maxOrderId, orderPlaced.getClientOrderId());
+        publishPendingCommands();
+    }
+
+    @Override
+    public void onOrderPlaceFailed(final OrderPlaceFailed orderPlaceFailed) {
+        final int slot = orderStore.find(orderPlaceFailed.getClientOrderId());
+        if (slot != OrderStore.NONE && orderStore.isPlacementPending(slot)) {
+            orderStore.remove(slot);
+            publishPendingCommands();
+        }
     }
 
     @Override
@@ -87,15 +174,16 @@ public class OrderManager implements OrderListener {
     @Override
     public void onOrderFilled(final OrderFilled orderFilled) {
         final long clientOrderId = orderFilled.getClientOrderId();
-        final GenericOrder genericOrder = orderIdToOrder.get(clientOrderId);
-        checkState(genericOrder != null, "Filled order id=%s not found", clientOrderId);
-        genericOrder.fill(orderFilled.getFilledQuantity());
+        final int slot = orderStore.find(clientOrderId);
+        checkState(slot != OrderStore.NONE, "Filled order id=%s not found", clientOrderId);
 
-        if (genericOrder.isFullyFilled()) {
-            removeOrder(clientOrderId);
-        }
+        final boolean fullyFilled = orderStore.fill(slot, orderFilled.getFilledQuantity());
+        LOGGER.debug("fill={}, orderAfterFill={}", orderFilled, orderStore.getOrder(slot));
 
-        LOGGER.debug("fill={}, orderAfterFill={}", orderFilled, genericOrder);
+        if (fullyFilled) {
+            orderStore.remove(slot);
+            publishPendingCommands();
+        }
     }
 
     @Override
@@ -114,27 +202,26 @@ public class OrderManager implements OrderListener {
     }
 
     private void removeOrder(final long clientOrderId) {
-        final GenericOrder genericOrder = orderIdToOrder.remove(clientOrderId);
-        checkState(genericOrder != null, "Removed order id=%s not found", clientOrderId);
-        final Map<Long, GenericOrder> orderIdToOrder = instrumentIdToOrderIdToOrder.get(genericOrder.getInstrumentId());
-        orderIdToOrder.remove(clientOrderId);
-    }
-
-    @Override
-    public void onOrderPlaceFailed(final OrderPlaceFailed orderPlaceFailed) {
-        // no-op
+        final int slot = orderStore.find(clientOrderId);
+        checkState(slot != OrderStore.NONE, "Removed order id=%s not found", clientOrderId);
+        orderStore.remove(slot);
+        publishPendingCommands();
     }
 
     @Override
     public void onOrderCancelFailed(final OrderCancelFailed orderCancelFailed) {
-        // no-op
+        final int slot = orderStore.find(orderCancelFailed.getClientOrderId());
+        if (slot != OrderStore.NONE) {
+            orderStore.setCancelPending(slot, false);
+            publishPendingCommands();
+        }
     }
 
     @Override
     public void onAllOrdersCancelled() {
         LOGGER.debug("AllOrdersCancelled");
-        orderIdToOrder.clear();
-        instrumentIdToOrderIdToOrder.clear();
+        orderStore.clear();
+        publishPendingCommands();
     }
 
     @Override
@@ -144,11 +231,25 @@ public class OrderManager implements OrderListener {
 
     @Override
     public void onOrderModified(final OrderModified orderModified) {
-        // no-op
+        LOGGER.debug("{}", orderModified);
+
+        final int slot = orderStore.find(orderModified.getClientOrderId());
+        if (slot != OrderStore.NONE) {
+            orderStore.acknowledgeModification(slot);
+            publishPendingCommands();
+        }
     }
 
     @Override
     public void onOrderModificationFailed(final OrderModificationFailed orderModificationFailed) {
-        // no-op
+        final int slot = orderStore.find(orderModificationFailed.getClientOrderId());
+        if (slot != OrderStore.NONE) {
+            orderStore.clearModification(slot);
+            publishPendingCommands();
+        }
+    }
+
+    private void publishPendingCommands() {
+        pendingCommands.lazySet(orderStore.getPendingCommands());
     }
 }
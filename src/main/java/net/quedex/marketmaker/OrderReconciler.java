@@ -0,0 +1,340 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderSide;
+import net.quedex.api.user.OrderSpec;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Computes the commands moving the orders of an instrument tracked by {@link OrderManager} to the desired ones, so that
+ * orders already resting at a desired price keep their queue priority:
+ * <ul>
+ * <li>an order with the desired price and quantity is kept,</li>
+ * <li>an order with the desired price but a different quantity is modified,</li>
+ * <li>remaining orders are modified to the remaining desired prices, most aggressive first,</li>
+ * <li>the surplus is cancelled or placed.</li>
+ * </ul>
+ * Orders with a modification or placement awaiting acknowledgement are compared in their expected state, but are
+ * cancelled rather than modified again. Every emitted command is registered in the {@link OrderManager}.
+ * <p>
+ * As orders are moved rather than cancelled and placed anew, a command must not be sent while one of our orders on the
+ * other side of the book would cross its new price - e.g. a bid raised above our ask before the ask is raised when the
+ * fair price moves up by more than the spread. A command crossing an opposite order that is moved (or cancelled) too is
+ * sent after the command moving it, and an opposite order that is kept is cancelled instead.
+ * <p>
+ * Commands of all reconciled instruments are buffered and drained in the order they should be sent in: cancels first,
+ * then placements and modifications level by level, so that the most aggressive orders of all instruments are sent
+ * before the further levels of any (each in the order the instruments were reconciled in) - except for commands that
+ * have to wait for an opposite order to be moved, which are drained after it.
+ */
+@NotThreadSafe
+public class OrderReconciler {
+    private static final long NO_PRICE = -1;
+
+    private final OrderManager orderManager;
+    private final OrderStore orderStore;
+
+    // slots of live orders of the reconciled side, most aggressive first, and whether they were matched
+    private int[] liveSlots = new int[16];
+    private boolean[] liveMatched = new boolean[16];
+    private int liveCount;
+
+    private final List<GenericOrder> wanted = new ArrayList<>();
+
+    // slots of orders of the reconciled instrument kept as they are, NONE once cancelled after all
+    private int[] keptSlots = new int[16];
+    private int keptCount;
+
+    // commands of the reconciled instrument, ordered before being buffered
+    private final List<OrderSpec> staged = new ArrayList<>();
+    private OrderSide[] stagedSides = new OrderSide[16];
+    private int[] stagedLevels = new int[16]; // 0 for cancels
+    private long[] stagedPrices = new long[16]; // NO_PRICE for cancels
+    private long[] stagedOldPrices = new long[16]; // expected price of the order before the command, NO_PRICE if new
+    private boolean[] stagedAfterOpposite = new boolean[16];
+    private int[] stagedBuckets = new int[16]; // level of the command, or of a later opposite one it waits for
+
+    // buffered commands, cancels at 0, then by level of the order from 1
+    private final List<List<OrderSpec>> commands = new ArrayList<>();
+
+    private int kept;
+    private int modified;
+    private int placed;
+    private int cancelled;
+
+    public OrderReconciler(final OrderManager orderManager) {
+        this.orderManager = checkNotNull(orderManager, "null orderManager");
+        this.orderStore = orderManager.getOrderStore();
+    }
+
+    /**
+     * Buffers the commands, to be {@link #drainTo(List) drained}.
+     *
+     * @param desired desired orders of the instrument, on each side ordered from the most aggressive
+     */
+    public void reconcile(final int instrumentId, final Collection<GenericOrder> desired) {
+        keptCount = 0;
+        staged.clear();
+        reconcileSide(instrumentId, OrderSide.BUY, desired);
+        reconcileSide(instrumentId, OrderSide.SELL, desired);
+        buffer();
+    }
+
+    /**
+     * Appends the buffered commands, cancels first and then by level, and clears them.
+     */
+    public void drainTo(final List<OrderSpec> orderSpecs) {
+        for (final List<OrderSpec> levelCommands : commands) {
+            orderSpecs.addAll(levelCommands);
+            levelCommands.clear();
+        }
+    }
+
+    public int getKept() {
+        return kept;
+    }
+
+    public int getModified() {
+        return modified;
+    }
+
+    public int getPlaced() {
+        return placed;
+    }
+
+    public int getCancelled() {
+        return cancelled;
+    }
+
+    public void resetCounters() {
+        kept = 0;
+        modified = 0;
+        placed = 0;
+        cancelled = 0;
+    }
+
+    private void reconcileSide(final int instrumentId, final OrderSide side, final Collection<GenericOrder> desired) {
+        collectLive(instrumentId, side);
+
+        wanted.clear();
+        for (final GenericOrder order : desired) {
+            if (order.getSide() == side) {
+                wanted.add(order);
+            }
+        }
+
+        // orders already at a desired price
+        for (int i = 0; i < wanted.size(); i++) {
+            final GenericOrder order = wanted.get(i);
+            for (int j = 0; j < liveCount; j++) {
+                final int slot = liveSlots[j];
+                final GenericOrder live = orderStore.getExpectedOrder(slot);
+                if (!liveMatched[j] && live.getPriceTicks() == order.getPriceTicks()) {
+                    if (live.getQuantity() == order.getQuantity()) {
+                        keep(slot);
+                    } else if (!orderStore.isPending(slot)) {
+                        modify(slot, order, i + 1);
+                    } else {
+                        continue;
+                    }
+                    liveMatched[j] = true;
+                    wanted.set(i, null);
+                    break;
+                }
+            }
+        }
+
+        int next = 0;
+        for (int i = 0; i < wanted.size(); i++) {
+            final GenericOrder order = wanted.get(i);
+            if (order == null) {
+                continue;
+            }
+            while (next < liveCount && liveMatched[next]) {
+                next++;
+            }
+
+            if (next < liveCount) {
+                final int slot = liveSlots[next++];
+                if (orderStore.isPending(slot)) {
+                    cancel(slot);
+                    place(order, i + 1);
+                } else {
+                    modify(slot, order, i + 1);
+                }
+            } else {
+                place(order, i + 1);
+            }
+        }
+
+        for (int j = next; j < liveCount; j++) {
+            if (!liveMatched[j]) {
+                cancel(liveSlots[j]);
+            }
+        }
+    }
+
+    /**
+     * Collects slots of orders of the side not being cancelled, sorted from the most aggressive (insertion sort, as
+     * there are only a few orders per instrument).
+     */
+    private void collectLive(final int instrumentId, final OrderSide side) {
+        liveCount = 0;
+
+        for (int slot = orderStore.first(instrumentId); slot != OrderStore.NONE; slot = orderStore.next(slot)) {
+            if (orderStore.getOrder(slot).getSide() != side || orderStore.isCancelPending(slot)) {
+                continue;
+            }
+            if (liveCount == liveSlots.length) {
+                liveSlots = Arrays.copyOf(liveSlots, liveCount << 1);
+                liveMatched = Arrays.copyOf(liveMatched, liveCount << 1);
+            }
+
+            final long price = getExpectedPriceTicks(slot);
+            int i = liveCount++;
+            while (i > 0 && isMoreAggressive(side, price, getExpectedPriceTicks(liveSlots[i - 1]))) {
+                liveSlots[i] = liveSlots[i - 1];
+                i--;
+            }
+            liveSlots[i] = slot;
+        }
+
+        Arrays.fill(liveMatched, 0, liveCount, false);
+    }
+
+    private long getExpectedPriceTicks(final int slot) {
+        return orderStore.getExpectedOrder(slot).getPriceTicks();
+    }
+
+    private static boolean isMoreAggressive(final OrderSide side, final long price, final long other) {
+        return side == OrderSide.BUY ? price > other : price < other;
+    }
+
+    /**
+     * Buffers the staged commands of the instrument, those crossing an opposite order moved by another command after
+     * all commands not doing so - at the level of the latter if it is further, so that they are drained (and sent)
+     * after it whatever their levels - and cancels kept opposite orders they would cross. Desired orders of the two
+     * sides do not cross each other, so a command moving an order away never has to wait itself.
+     */
+    private void buffer() {
+        final int stagedCount = staged.size();
+        for (int c = 0; c < stagedCount; c++) {
+            if (stagedPrices[c] == NO_PRICE) {
+                continue;
+            }
+            for (int d = 0; d < stagedCount; d++) {
+                if (stagedSides[d] != stagedSides[c] && stagedOldPrices[d] != NO_PRICE
+                    && isCrossing(stagedSides[c], stagedPrices[c], stagedOldPrices[d])) {
+                    stagedAfterOpposite[c] = true;
+                    stagedBuckets[c] = Math.max(stagedBuckets[c], stagedLevels[d]);
+                }
+            }
+            for (int k = 0; k < keptCount; k++) {
+                final int slot = keptSlots[k];
+                if (slot != OrderStore.NONE && orderStore.getOrder(slot).getSide() != stagedSides[c]
+                    && isCrossing(stagedSides[c], stagedPrices[c], getExpectedPriceTicks(slot))) {
+                    keptSlots[k] = OrderStore.NONE;
+                    kept--;
+                    cancel(slot);
+                }
+            }
+        }
+
+        for (int c = 0; c < staged.size(); c++) { // including cancels of kept orders
+            if (!stagedAfterOpposite[c]) {
+                commands(stagedBuckets[c]).add(staged.get(c));
+            }
+        }
+        for (int c = 0; c < stagedCount; c++) {
+            if (stagedAfterOpposite[c]) {
+                commands(stagedBuckets[c]).add(staged.get(c));
+            }
+        }
+    }
+
+    /**
+     * @return whether an order of the side at the price would trade with an opposite order at the other price
+     */
+    private static boolean isCrossing(final OrderSide side, final long price, final long oppositePrice) {
+        return side == OrderSide.BUY ? price >= oppositePrice : price <= oppositePrice;
+    }
+
+    private void keep(final int slot) {
+        if (keptCount == keptSlots.length) {
+            keptSlots = Arrays.copyOf(keptSlots, keptCount << 1);
+        }
+        keptSlots[keptCount++] = slot;
+        kept++;
+    }
+
+    private void place(final GenericOrder order, final int level) {
+        final long clientOrderId = orderManager.getNextOrderId();
+        stage(order.toLimitOrderSpec(clientOrderId), order.getSide(), level, order.getPriceTicks(), NO_PRICE);
+        orderManager.onPlacementSent(clientOrderId, order);
+        placed++;
+    }
+
+    private void modify(final int slot, final GenericOrder order, final int level) {
+        final long clientOrderId = orderStore.getClientOrderId(slot);
+        stage(
+            order.toOrderModificationSpec(clientOrderId),
+            order.getSide(),
+            level,
+            order.getPriceTicks(),
+            getExpectedPriceTicks(slot)
+        );
+        orderManager.onModificationSent(clientOrderId, order);
+        modified++;
+    }
+
+    private void cancel(final int slot) {
+        final long clientOrderId = orderStore.getClientOrderId(slot);
+        stage(
+            new OrderCancelSpec(clientOrderId),
+            orderStore.getOrder(slot).getSide(),
+            0,
+            NO_PRICE,
+            getExpectedPriceTicks(slot)
+        );
+        orderManager.onCancelSent(clientOrderId);
+        cancelled++;
+    }
+
+    private void stage(final OrderSpec orderSpec,
+                       final OrderSide side,
+                       final int level,
+                       final long price,
+                       final long oldPrice) {
+        final int c = staged.size();
+        if (c == stagedLevels.length) {
+            stagedSides = Arrays.copyOf(stagedSides, c << 1);
+            stagedLevels = Arrays.copyOf(stagedLevels, c << 1);
+            stagedPrices = Arrays.copyOf(stagedPrices, c << 1);
+            stagedOldPrices = Arrays.copyOf(stagedOldPrices, c << 1);
+            stagedAfterOpposite = Arrays.copyOf(stagedAfterOpposite, c << 1);
+            stagedBuckets = Arrays.copyOf(stagedBuckets, c << 1);
+        }
+        staged.add(orderSpec);
+        stagedSides[c] = side;
+        stagedLevels[c] = level;
+        stagedPrices[c] = price;
+        stagedOldPrices[c] = oldPrice;
+        stagedAfterOpposite[c] = false;
+        stagedBuckets[c] = level;
+    }
+
+    private List<OrderSpec> commands(final int level) {
+        while (commands.size() <= level) {
+            commands.add(new ArrayList<>());
+        }
+        return commands.get(level);
+    }
+}
@@ -0,0 +1,169 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.CancelAllOrdersSpec;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sends commands in batches of at most {@code maxBatchSize}, in the order given - cancels and then the orders level by
+ * level, as drained by {@link OrderReconciler} - pipelined: a batch is sent without waiting for the earlier ones to be
+ * acknowledged as long as less than {@code maxBatchesInFlight} batches' worth of commands await acknowledgement, as
+ * counted by {@link OrderManager#getPendingCommands()}, and a token bucket of {@code maxCommandsPerSecond} commands
+ * (holding up to a second's worth) allows.
+ * <p>
+ * Batches are sent, and executed by the exchange, in order, so that holding a batch back never lets a later command
+ * overtake one it was ordered after, e.g. an order raised only once our opposite order was moved out of its way.
+ * <p>
+ * Batches of cancels only are never held back by the window, so that risk is reduced as soon as possible, but are
+ * subject to the budget, which the exchange enforces for all commands. Should acknowledgements stop coming, a batch
+ * waits for the window at most {@link #MAX_WINDOW_WAIT_NANOS}.
+ */
+@NotThreadSafe
+public class OrderSender {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderSender.class);
+
+    private static final long MAX_WINDOW_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Consumer<List<OrderSpec>> batchConsumer;
+    private final IntSupplier pendingCommands;
+    private final MarketMakerMetrics metrics;
+    private final int maxBatchSize;
+    private final int maxCommandsInFlight; // 0 if unbounded
+    private final double commandsPerNano; // 0 if unlimited
+    private final double maxBudget;
+
+    private double budget; // commands that may be sent at budgetNanos
+    private long budgetNanos;
+
+    /**
+     * @param batchConsumer        sends a batch to the exchange
+     * @param pendingCommands      number of commands awaiting acknowledgement, including the ones not sent yet
+     * @param maxBatchesInFlight   0 for no limit
+     * @param maxCommandsPerSecond 0 for no limit, otherwise at least {@code maxBatchSize}
+     */
+    public OrderSender(final Consumer<List<OrderSpec>> batchConsumer,
+                       final IntSupplier pendingCommands,
+                       final MarketMakerMetrics metrics,
+                       final int maxBatchSize,
+                       final int maxBatchesInFlight,
+                       final int maxCommandsPerSecond) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize=%s <= 0", maxBatchSize);
+        checkArgument(maxBatchesInFlight >= 0, "maxBatchesInFlight=%s < 0", maxBatchesInFlight);
+        checkArgument(
+            maxCommandsPerSecond == 0 || maxCommandsPerSecond >= maxBatchSize,
+            "maxCommandsPerSecond=%s < maxBatchSize=%s", maxCommandsPerSecond, maxBatchSize
+        );
+        this.batchConsumer = checkNotNull(batchConsumer, "null batchConsumer");
+        this.pendingCommands = checkNotNull(pendingCommands, "null pendingCommands");
+        this.metrics = checkNotNull(metrics, "null metrics");
+        this.maxBatchSize = maxBatchSize;
+        this.maxCommandsInFlight = maxBatchesInFlight * maxBatchSize;
+        this.commandsPerNano = maxCommandsPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+        this.maxBudget = maxCommandsPerSecond;
+        this.budget = maxBudget;
+        this.budgetNanos = System.nanoTime();
+    }
+
+    /**
+     * Sends the commands, blocking while the window or the budget does not allow the next batch.
+     *
+     * @param orderSpecs commands in the order they should be sent in, registered in {@link OrderManager} (except for
+     *                   cancelling all orders)
+     */
+    public void send(final List<OrderSpec> orderSpecs) throws InterruptedException {
+        for (int sent = 0; sent < orderSpecs.size(); ) {
+            final List<OrderSpec> batch = orderSpecs.subList(sent, Math.min(sent + maxBatchSize, orderSpecs.size()));
+            final long waitStartNanos = System.nanoTime();
+            final int commandsInFlight = awaitWindow(orderSpecs.size() - sent, batch);
+            awaitBudget(batch.size());
+
+            final long startNanos = System.nanoTime();
+            metrics.onBatchSending(batch, startNanos);
+            batchConsumer.accept(batch);
+            metrics.onBatchSent(
+                batch.size(),
+                maxBatchSize,
+                commandsInFlight,
+                startNanos - waitStartNanos,
+                System.nanoTime() - startNanos
+            );
+            sent += batch.size();
+        }
+    }
+
+    /**
+     * @param unsent commands of the current send not sent yet, counted as pending already
+     * @return commands in flight when the batch may be sent
+     */
+    private int awaitWindow(final int unsent, final List<OrderSpec> batch) throws InterruptedException {
+        int inFlight = getCommandsInFlight(unsent);
+        if (maxCommandsInFlight == 0 || isCancels(batch)) {
+            return inFlight;
+        }
+        final long startNanos = System.nanoTime();
+        while (inFlight > 0 && inFlight + batch.size() > maxCommandsInFlight) {
+            if (System.nanoTime() - startNanos > MAX_WINDOW_WAIT_NANOS) {
+                LOGGER.warn("Sending with commandsInFlight={} not acknowledged", inFlight);
+                break;
+            }
+            pause(POLL_NANOS);
+            inFlight = getCommandsInFlight(unsent);
+        }
+        return inFlight;
+    }
+
+    private int getCommandsInFlight(final int unsent) {
+        return Math.max(pendingCommands.getAsInt() - unsent, 0);
+    }
+
+    private void awaitBudget(final int commands) throws InterruptedException {
+        if (commandsPerNano == 0) {
+            return;
+        }
+        final long nowNanos = System.nanoTime();
+        budget = Math.min(budget + (nowNanos - budgetNanos) * commandsPerNano, maxBudget);
+        budgetNanos = nowNanos;
+        if (budget < commands) {
+            final long waitNanos = (long) Math.ceil((commands - budget) / commandsPerNano);
+            pause(waitNanos);
+            budgetNanos += waitNanos;
+            budget = commands;
+        }
+        budget -= commands;
+    }
+
+    private static void pause(final long nanos) throws InterruptedException {
+        final long deadlineNanos = System.nanoTime() + nanos;
+        long remainingNanos = nanos;
+        while (remainingNanos > 0) {
+            LockSupport.parkNanos(remainingNanos);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remainingNanos = deadlineNanos - System.nanoTime();
+        }
+    }
+
+    private static boolean isCancels(final List<OrderSpec> batch) {
+        for (final OrderSpec orderSpec : batch) {
+            if (!(orderSpec instanceof OrderCancelSpec) && !(orderSpec instanceof CancelAllOrdersSpec)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
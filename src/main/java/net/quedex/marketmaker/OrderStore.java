@@ -0,0 +1,323 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.OrderSide;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Orders tracked by {@link OrderManager}, kept in pooled slots addressed by {@code int} handles. Orders of every
+ * instrument are linked in a list and their remaining quantities are summed per instrument and side.
+ * <p>
+ * Lookups, updates, removals and aggregate queries are allocation-free; the store allocates only when it grows.
+ * Modified only through {@link OrderManager}.
+ */
+@NotThreadSafe
+public final class OrderStore {
+    public static final int NONE = -1;
+
+    private static final byte USED = 1;
+    private static final byte PENDING_PLACEMENT = 2;
+    private static final byte PENDING_MODIFICATION = 4;
+    private static final byte PENDING_CANCEL = 8;
+    private static final byte PENDING = PENDING_PLACEMENT | PENDING_MODIFICATION | PENDING_CANCEL;
+
+    private final LongIntHashMap orderIdToSlot;
+    private final LongIntHashMap instrumentIdToIndex;
+
+    // per slot
+    private long[] clientOrderIds;
+    private GenericOrder[] orders;
+    private GenericOrder[] modifications;
+    private byte[] flags;
+    private int[] instrumentIndices;
+    private int[] nextSlots;
+    private int[] previousSlots;
+    private int[] freeSlots;
+    private int freeCount;
+    private int pendingCommands;
+
+    // per instrument
+    private int[] firstSlots;
+    private int[] buyQuantities;
+    private int[] sellQuantities;
+    private int instruments;
+
+    public OrderStore(final int initialOrderCapacity, final int initialInstrumentCapacity) {
+        checkArgument(initialOrderCapacity > 0, "initialOrderCapacity=%s <= 0", initialOrderCapacity);
+        checkArgument(initialInstrumentCapacity > 0, "initialInstrumentCapacity=%s <= 0", initialInstrumentCapacity);
+
+        orderIdToSlot = new LongIntHashMap(initialOrderCapacity);
+        instrumentIdToIndex = new LongIntHashMap(initialInstrumentCapacity);
+
+        clientOrderIds = new long[0];
+        orders = new GenericOrder[0];
+        modifications = new GenericOrder[0];
+        flags = new byte[0];
+        instrumentIndices = new int[0];
+        nextSlots = new int[0];
+        previousSlots = new int[0];
+        freeSlots = new int[0];
+        growSlots(initialOrderCapacity);
+
+        firstSlots = new int[initialInstrumentCapacity];
+        buyQuantities = new int[initialInstrumentCapacity];
+        sellQuantities = new int[initialInstrumentCapacity];
+    }
+
+    /**
+     * @return slot of the order or {@link #NONE}
+     */
+    public int find(final long clientOrderId) {
+        final int slot = orderIdToSlot.get(clientOrderId);
+        return slot == LongIntHashMap.MISSING ? NONE : slot;
+    }
+
+    /**
+     * @return slot of the first order of the instrument or {@link #NONE}
+     */
+    public int first(final int instrumentId) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        return index == LongIntHashMap.MISSING ? NONE : firstSlots[index];
+    }
+
+    /**
+     * @return slot of the next order of the same instrument or {@link #NONE}
+     */
+    public int next(final int slot) {
+        return nextSlots[slot];
+    }
+
+    public int size() {
+        return orderIdToSlot.size();
+    }
+
+    /**
+     * @return number of placements, modifications and cancels of tracked orders awaiting acknowledgement
+     */
+    public int getPendingCommands() {
+        return pendingCommands;
+    }
+
+    /**
+     * @return upper bound (exclusive) of slots, to be iterated together with {@link #isUsed(int)}
+     */
+    public int capacity() {
+        return flags.length;
+    }
+
+    public boolean isUsed(final int slot) {
+        return (flags[slot] & USED) != 0;
+    }
+
+    public long getClientOrderId(final int slot) {
+        return clientOrderIds[slot];
+    }
+
+    /**
+     * @return order in the slot, valid until the slot is removed
+     */
+    public GenericOrder getOrder(final int slot) {
+        return orders[slot];
+    }
+
+    /**
+     * @return the order as it will be once its pending modification (if any) is acknowledged
+     */
+    public GenericOrder getExpectedOrder(final int slot) {
+        return (flags[slot] & PENDING_MODIFICATION) != 0 ? modifications[slot] : orders[slot];
+    }
+
+    /**
+     * @return whether placement or modification of the order awaits acknowledgement
+     */
+    public boolean isPending(final int slot) {
+        return (flags[slot] & (PENDING_PLACEMENT | PENDING_MODIFICATION)) != 0;
+    }
+
+    public boolean isPlacementPending(final int slot) {
+        return (flags[slot] & PENDING_PLACEMENT) != 0;
+    }
+
+    public boolean isModificationPending(final int slot) {
+        return (flags[slot] & PENDING_MODIFICATION) != 0;
+    }
+
+    public boolean isCancelPending(final int slot) {
+        return (flags[slot] & PENDING_CANCEL) != 0;
+    }
+
+    /**
+     * @return sum of remaining quantities of orders of the instrument on the side
+     */
+    public int getQuantity(final int instrumentId, final OrderSide side) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        if (index == LongIntHashMap.MISSING) {
+            return 0;
+        }
+        return side == OrderSide.BUY ? buyQuantities[index] : sellQuantities[index];
+    }
+
+    int add(final long clientOrderId,
+            final int instrumentId,
+            final OrderSide side,
+            final TickSize tickSize,
+            final long priceTicks,
+            final int quantity,
+            final int initialQuantity,
+            final boolean pendingPlacement) {
+        checkState(find(clientOrderId) == NONE, "Order id=%s already tracked", clientOrderId);
+
+        if (freeCount == 0) {
+            growSlots(flags.length << 1);
+        }
+        final int slot = freeSlots[--freeCount];
+        final int index = instrumentIndex(instrumentId);
+
+        clientOrderIds[slot] = clientOrderId;
+        orders[slot].set(instrumentId, side, tickSize, priceTicks, quantity, initialQuantity);
+        setFlags(slot, pendingPlacement ? USED | PENDING_PLACEMENT : USED);
+        instrumentIndices[slot] = index;
+
+        final int first = firstSlots[index];
+        nextSlots[slot] = first;
+        previousSlots[slot] = NONE;
+        if (first != NONE) {
+            previousSlots[first] = slot;
+        }
+        firstSlots[index] = slot;
+
+        addQuantity(index, side, quantity);
+        orderIdToSlot.put(clientOrderId, slot);
+        return slot;
+    }
+
+    /**
+     * Replaces the order in the slot with its acknowledged state.
+     */
+    void acknowledgePlacement(final int slot, final long priceTicks, final int quantity, final int initialQuantity) {
+        final GenericOrder order = orders[slot];
+        addQuantity(instrumentIndices[slot], order.getSide(), quantity - order.getQuantity());
+        order.set(order.getInstrumentId(), order.getSide(), order.getTickSize(), priceTicks, quantity, initialQuantity);
+        setFlags(slot, flags[slot] & ~PENDING_PLACEMENT);
+    }
+
+    /**
+     * @return whether the order has been fully filled
+     */
+    boolean fill(final int slot, final int filledQuantity) {
+        final GenericOrder order = orders[slot];
+        order.fill(filledQuantity);
+        addQuantity(instrumentIndices[slot], order.getSide(), -filledQuantity);
+        return order.isFullyFilled();
+    }
+
+    void setModification(final int slot, final long priceTicks, final int quantity) {
+        final GenericOrder order = orders[slot];
+        modifications[slot].set(
+            order.getInstrumentId(), order.getSide(), order.getTickSize(), priceTicks, quantity, quantity
+        );
+        setFlags(slot, flags[slot] | PENDING_MODIFICATION);
+    }
+
+    void acknowledgeModification(final int slot) {
+        if ((flags[slot] & PENDING_MODIFICATION) == 0) {
+            return;
+        }
+        final GenericOrder order = orders[slot];
+        final GenericOrder modification = modifications[slot];
+        addQuantity(instrumentIndices[slot], order.getSide(), modification.getQuantity() - order.getQuantity());
+        order.modify(modification.getPriceTicks(), modification.getQuantity());
+        setFlags(slot, flags[slot] & ~PENDING_MODIFICATION);
+    }
+
+    void clearModification(final int slot) {
+        setFlags(slot, flags[slot] & ~PENDING_MODIFICATION);
+    }
+
+    void setCancelPending(final int slot, final boolean cancelPending) {
+        setFlags(slot, cancelPending ? flags[slot] | PENDING_CANCEL : flags[slot] & ~PENDING_CANCEL);
+    }
+
+    void remove(final int slot) {
+        checkState(isUsed(slot), "Slot=%s not used", slot);
+
+        final int index = instrumentIndices[slot];
+        final int next = nextSlots[slot];
+        final int previous = previousSlots[slot];
+        if (previous != NONE) {
+            nextSlots[previous] = next;
+        } else {
+            firstSlots[index] = next;
+        }
+        if (next != NONE) {
+            previousSlots[next] = previous;
+        }
+
+        final GenericOrder order = orders[slot];
+        addQuantity(index, order.getSide(), -order.getQuantity());
+        orderIdToSlot.remove(clientOrderIds[slot]);
+        setFlags(slot, 0); // commands still pending are not acknowledged once the order is gone
+        freeSlots[freeCount++] = slot;
+    }
+
+    void clear() {
+        for (int slot = 0; slot < flags.length; slot++) {
+            if (isUsed(slot)) {
+                remove(slot);
+            }
+        }
+    }
+
+    private void setFlags(final int slot, final int newFlags) {
+        pendingCommands += Integer.bitCount(newFlags & PENDING) - Integer.bitCount(flags[slot] & PENDING);
+        flags[slot] = (byte) newFlags;
+    }
+
+    private void addQuantity(final int index, final OrderSide side, final int quantity) {
+        if (side == OrderSide.BUY) {
+            buyQuantities[index] += quantity;
+        } else {
+            sellQuantities[index] += quantity;
+        }
+    }
+
+    private int instrumentIndex(final int instrumentId) {
+        int index = instrumentIdToIndex.get(instrumentId);
+        if (index == LongIntHashMap.MISSING) {
+            index = instruments++;
+            if (index == firstSlots.length) {
+                firstSlots = Arrays.copyOf(firstSlots, index << 1);
+                buyQuantities = Arrays.copyOf(buyQuantities, index << 1);
+                sellQuantities = Arrays.copyOf(sellQuantities, index << 1);
+            }
+            firstSlots[index] = NONE;
+            instrumentIdToIndex.put(instrumentId, index);
+        }
+        return index;
+    }
+
+    private void growSlots(final int capacity) {
+        final int oldCapacity = flags.length;
+
+        clientOrderIds = Arrays.copyOf(clientOrderIds, capacity);
+        orders = Arrays.copyOf(orders, capacity);
+        modifications = Arrays.copyOf(modifications, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        instrumentIndices = Arrays.copyOf(instrumentIndices, capacity);
+        nextSlots = Arrays.copyOf(nextSlots, capacity);
+        previousSlots = Arrays.copyOf(previousSlots, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+
+        // lowest slot ends up on top of the stack and is used first
+        for (int slot = capacity - 1; slot >= oldCapacity; slot--) {
+            orders[slot] = new GenericOrder();
+            modifications[slot] = new GenericOrder();
+            freeSlots[freeCount++] = slot;
+        }
+    }
+}
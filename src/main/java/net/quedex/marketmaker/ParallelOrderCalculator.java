@@ -0,0 +1,270 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Calculates orders of options in parallel on a {@link ForkJoinPool}, one task per option chain (expiration).
+ * <p>
+ * The calling thread snapshots the inputs - futures price of each chain, volatility of each option to calculate, total
+ * delta and vega, scenario states and the time - and blocks in {@link #calculate()} until all tasks are done, so tasks
+ * read only the snapshot, immutable instruments and their own batch and {@link Pricing}. Orders are then taken per
+ * chain and option, to be reconciled (and assigned order ids) on the calling thread in the same order as a serial
+ * recalculation would, with the same result.
+ */
+@NotThreadSafe
+public class ParallelOrderCalculator {
+    private final UniformOptionOrderPlacingStrategy strategy;
+    private final Pricing pricing;
+    private final ForkJoinPool pool;
+
+    private ChainTask[] tasks = new ChainTask[0];
+    private int chains;
+
+    // snapshot common to all chains, read by tasks
+    private double totalDelta;
+    private double totalVega;
+    private int scenarioDeltaState;
+    private int scenarioVegaState;
+    private long currentTime;
+
+    /**
+     * @param pricing pricing whose cache configuration is used by the tasks, each with its own cache
+     */
+    public ParallelOrderCalculator(final UniformOptionOrderPlacingStrategy strategy,
+                                   final Pricing pricing,
+                                   final int parallelism) {
+        checkArgument(parallelism > 0, "parallelism=%s <= 0", parallelism);
+        this.strategy = checkNotNull(strategy, "null strategy");
+        this.pricing = checkNotNull(pricing, "null pricing");
+        this.pool = new ForkJoinPool(
+            parallelism,
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("recalculation-" + thread.getPoolIndex());
+                return thread;
+            },
+            null,
+            false
+        );
+    }
+
+    /**
+     * Starts a new snapshot.
+     */
+    public void clear(final double totalDelta,
+                      final double totalVega,
+                      final int scenarioDeltaState,
+                      final int scenarioVegaState,
+                      final long currentTime) {
+        this.totalDelta = totalDelta;
+        this.totalVega = totalVega;
+        this.scenarioDeltaState = scenarioDeltaState;
+        this.scenarioVegaState = scenarioVegaState;
+        this.currentTime = currentTime;
+        for (int i = 0; i < chains; i++) {
+            tasks[i].clear();
+        }
+        chains = 0;
+    }
+
+    /**
+     * @return index of the chain in the snapshot
+     */
+    public int addChain(final OptionChain chain, final double futuresPrice) {
+        if (chains == tasks.length) {
+            tasks = Arrays.copyOf(tasks, Math.max(chains << 1, 4));
+        }
+        if (tasks[chains] == null) {
+            tasks[chains] = new ChainTask();
+        }
+        tasks[chains].set(chain, futuresPrice);
+        return chains++;
+    }
+
+    /**
+     * Adds an option of the chain to calculate orders of.
+     *
+     * @param option index of the option in the chain
+     */
+    public void addOption(final int chain, final int option, final double volatility) {
+        checkArgument(chain < chains, "chain=%s >= %s", chain, chains);
+        tasks[chain].add(option, volatility);
+    }
+
+    /**
+     * Calculates orders of the added options, blocking until done.
+     */
+    public void calculate() {
+        int pending = 0;
+        for (int i = 0; i < chains; i++) {
+            if (tasks[i].selectedCount > 0) {
+                pending++;
+            }
+        }
+        if (pending == 0) {
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ChainTask own = null;
+                for (int i = 0; i < chains; i++) {
+                    final ChainTask task = tasks[i];
+                    if (task.selectedCount > 0) {
+                        task.reinitialize();
+                        if (own == null) {
+                            own = task;
+                        } else {
+                            task.fork();
+                        }
+                    }
+                }
+                own.invoke();
+                for (int i = 0; i < chains; i++) {
+                    if (tasks[i] != own && tasks[i].selectedCount > 0) {
+                        tasks[i].join();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return calculated orders of the option, null if it was not added
+     */
+    public Collection<GenericOrder> getOrders(final int chain, final int option) {
+        checkArgument(chain < chains, "chain=%s >= %s", chain, chains);
+        return tasks[chain].orders[option];
+    }
+
+    public double getFuturesPrice(final int chain) {
+        checkArgument(chain < chains, "chain=%s >= %s", chain, chains);
+        return tasks[chain].futuresPrice;
+    }
+
+    /**
+     * @return volatility the orders of the option were calculated at
+     */
+    public double getVolatility(final int chain, final int option) {
+        checkArgument(chain < chains, "chain=%s >= %s", chain, chains);
+        return tasks[chain].volatilities[option];
+    }
+
+    /**
+     * @return number of option valuations done by the tasks so far
+     */
+    public long getCalculations() {
+        long calculations = 0;
+        for (final ChainTask task : tasks) {
+            if (task != null) {
+                calculations += task.pricing.getCalculations();
+            }
+        }
+        return calculations;
+    }
+
+    public long getCacheHits() {
+        long hits = 0;
+        for (final ChainTask task : tasks) {
+            if (task != null) {
+                hits += task.pricing.getCacheHits();
+            }
+        }
+        return hits;
+    }
+
+    public long getCacheMisses() {
+        long misses = 0;
+        for (final ChainTask task : tasks) {
+            if (task != null) {
+                misses += task.pricing.getCacheMisses();
+            }
+        }
+        return misses;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class ChainTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final OptionChainBatch batch = new OptionChainBatch(1, strategy.getBatchLevels());
+        private final Pricing pricing = ParallelOrderCalculator.this.pricing.withTimeProvider(() -> currentTime);
+
+        private OptionChain chain;
+        private double futuresPrice;
+        private boolean[] selected = new boolean[0];
+        private double[] volatilities = new double[0];
+        private Collection<GenericOrder>[] orders = newOrders(0);
+        private int selectedCount;
+
+        private void set(final OptionChain chain, final double futuresPrice) {
+            this.chain = chain;
+            this.futuresPrice = futuresPrice;
+            if (selected.length < chain.size()) {
+                selected = new boolean[chain.size()];
+                volatilities = new double[chain.size()];
+                orders = newOrders(chain.size());
+            }
+        }
+
+        private void add(final int option, final double volatility) {
+            checkState(!selected[option], "Option=%s already added", option);
+            selected[option] = true;
+            volatilities[option] = volatility;
+            selectedCount++;
+        }
+
+        private void clear() {
+            Arrays.fill(selected, false);
+            Arrays.fill(orders, null);
+            selectedCount = 0;
+            chain = null;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < chain.size(); i++) {
+                if (selected[i]) {
+                    final Instrument option = chain.getOption(i);
+                    orders[i] = strategy.getOrders(
+                        option,
+                        volatilities[i],
+                        futuresPrice,
+                        totalDelta,
+                        totalVega,
+                        scenarioDeltaState,
+                        scenarioVegaState,
+                        batch,
+                        pricing
+                    );
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<GenericOrder>[] newOrders(final int size) {
+        return (Collection<GenericOrder>[]) new Collection<?>[size];
+    }
+}
@@ -0,0 +1,69 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Open positions with the fair futures price and volatility they are valued at, at a point in time, to be valued off
+ * the thread they are taken on (see {@link ScenarioEngine}).
+ */
+@Immutable
+public final class PositionSnapshot {
+    private final long time;
+    private final Instrument[] instruments;
+    private final int[] quantities;
+    private final double[] futuresPrices;
+    private final double[] volatilities;
+
+    /**
+     * Takes ownership of the arrays, which must not be modified afterwards.
+     */
+    PositionSnapshot(final long time,
+                     final Instrument[] instruments,
+                     final int[] quantities,
+                     final double[] futuresPrices,
+                     final double[] volatilities) {
+        this.time = time;
+        this.instruments = checkNotNull(instruments, "null instruments");
+        this.quantities = checkNotNull(quantities, "null quantities");
+        this.futuresPrices = checkNotNull(futuresPrices, "null futuresPrices");
+        this.volatilities = checkNotNull(volatilities, "null volatilities");
+        checkArgument(
+            quantities.length == instruments.length
+                && futuresPrices.length == instruments.length
+                && volatilities.length == instruments.length,
+            "Arrays of different lengths"
+        );
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int size() {
+        return instruments.length;
+    }
+
+    public Instrument getInstrument(final int position) {
+        return instruments[position];
+    }
+
+    /**
+     * @return signed quantity, negative for short positions
+     */
+    public int getQuantity(final int position) {
+        return quantities[position];
+    }
+
+    public double getFuturesPrice(final int position) {
+        return futuresPrices[position];
+    }
+
+    public double getVolatility(final int position) {
+        return volatilities[position];
+    }
+}
@@ -2,87 +2,599 @@ package net.quedex.marketmaker;
 
 import com.google.common.base.MoreObjects;
 import net.quedex.api.market.Instrument;
-import org.apache.commons.math3.distribution.NormalDistribution;
 
 import java.math.BigDecimal;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+/**
+ * Black 76' pricing of options in inverse notation.
+ * <p>
+ * The {@link MutableMetrics} overload is allocation-free and intended for hot paths. For the same time to maturity,
+ * results agree with the former commons-math {@code NormalDistribution} based implementation (see PricingTest):
+ * prices, vegas and thetas to within 1e-14 of the inverted futures price, deltas to within 1e-15 and gammaPs to
+ * within 1e-15 relative (absolute below 1). Time to maturity is no longer a {@link BigDecimal} rounded up to 1e-10
+ * years (about 3 ms), which accounts for any larger difference.
+ * <p>
+ * Options are priced at the start of the current period of a clock of a configurable granularity, with times to
+ * maturity kept per instrument by {@link TimeToMaturity} and refreshed once per period, so that greeks calculated
+ * within a period are consistent.
+ * <p>
+ * {@link #calculateMetrics} may go through a 2-way set associative cache of metrics keyed by instrument, volatility
+ * and futures price, so that repeated valuations at the same inputs (risk reprices after a fill or a change of risk
+ * limits) cost a probe rather than a Black 76 evaluation. Entries are tagged with the period of the clock and ignored
+ * once it passed, which invalidates the whole cache in O(1); a cached valuation is equal to a fresh one. Batches
+ * bypass the cache, valuing each level once straight into the batch.
+ */
 public class Pricing {
-    private static final long YEAR_MILLIS = 1000L * 60 * 60 * 24 * 365;
+    private static final double SQRT_2PI = Math.sqrt(2 * Math.PI);
 
-    private static final NormalDistribution STD_NORMAL = new NormalDistribution();
+    private static final double MIN_VOLATILITY = 1e-4;
+    private static final double MAX_VOLATILITY = 20;
+    private static final int MAX_VOLATILITY_ITERATIONS = 12;
+    private static final double VOLATILITY_TOLERANCE = 1e-10;
 
-    private final TimeProvider timeProvider;
+    // expansion in volatility, see calculateLadder
+    private static final double MAX_EXPANSION_STEP = 0.1; // of the volatility
+    private static final double EXPANSION_ERROR_SAFETY = 2;
+    private static final double EXPANSION_ROUNDING_ULPS = 64; // of the futures price and strike, for rounding errors
 
+    private static final int CACHE_KEY_STRIDE = 4;
+    private static final int CACHE_METRICS_STRIDE = 5;
+
+    private final TimeToMaturity timeToMaturity;
+    private long calculations = 0;
+
+    // cache, entries interleaved so that a probe touches a line of keys of a set and one of metrics; empty when not
+    // caching. A new entry goes to the first way of its set, moving the entry there to the second one.
+    private final boolean caching;
+    private final int cacheMask;
+    private final long[] cacheKeys; // period, instrument id, volatility bits, futures price bits
+    private final double[] cacheMetrics; // price, delta, gammaP, vega, theta
+    private long cacheHits = 0;
+    private long cacheMisses = 0;
+    private long expansions = 0;
+    private final MutableMetrics level = new MutableMetrics();
+
+    /**
+     * Prices at the current millisecond, without caching.
+     */
     public Pricing(final TimeProvider timeProvider) {
-        this.timeProvider = checkNotNull(timeProvider, "timeProvider");
+        this(timeProvider, 0, 1);
+    }
+
+    /**
+     * @param cacheSize   number of entries of the cache, a power of two of at least 2, 0 not to cache
+     * @param clockMillis granularity of the clock options are priced at - period within which times to maturity and
+     *                    cached metrics are valid
+     */
+    public Pricing(final TimeProvider timeProvider, final int cacheSize, final long clockMillis) {
+        checkArgument(
+            cacheSize == 0 || cacheSize >= 2 && Integer.bitCount(cacheSize) == 1,
+            "cacheSize=%s not 0 nor a power of 2 >= 2", cacheSize
+        );
+        checkNotNull(timeProvider, "null timeProvider");
+        timeToMaturity = new TimeToMaturity(timeProvider, clockMillis);
+        caching = cacheSize > 0;
+        cacheMask = cacheSize - 2; // of the first way of a set
+        cacheKeys = new long[cacheSize * CACHE_KEY_STRIDE];
+        for (int i = 0; i < cacheKeys.length; i += CACHE_KEY_STRIDE) {
+            cacheKeys[i] = Long.MIN_VALUE; // no period
+        }
+        cacheMetrics = new double[cacheSize * CACHE_METRICS_STRIDE];
+    }
+
+    /**
+     * @return pricing with the same configuration and its own cache and times to maturity, e.g. for another thread
+     */
+    public Pricing withTimeProvider(final TimeProvider timeProvider) {
+        return new Pricing(
+            timeProvider,
+            cacheMetrics.length / CACHE_METRICS_STRIDE,
+            this.timeToMaturity.getClockMillis()
+        );
     }
 
     public Metrics calculateMetrics(final Instrument instrument, final double volatility, final double futuresPrice) {
+        return calculateMetrics(instrument, volatility, futuresPrice, new MutableMetrics()).toMetrics();
+    }
+
+    /**
+     * Allocation-free variant of {@link #calculateMetrics(Instrument, double, double)}.
+     *
+     * @param result holder the metrics are written to
+     * @return {@code result}
+     */
+    public MutableMetrics calculateMetrics(final Instrument instrument,
+                                           final double volatility,
+                                           final double futuresPrice,
+                                           final MutableMetrics result) {
         if (instrument.getType() == Instrument.Type.INVERSE_FUTURES) {
-            return new Metrics(futuresPrice, 1, 0, 0, 0);
-        } else {
-            final double timeToMaturity = yearsToMaturity(instrument.getExpirationDate());
-            final double strike = instrument.getStrike().doubleValue();
-            // option inverse notation is taken into account when pricing (https://quedex.net/edu/option_valuation)
-            return black76(
-                // invert option type
-                instrument.getOptionType() == Instrument.OptionType.CALL_EUROPEAN
-                    ? Instrument.OptionType.PUT_EUROPEAN
-                    : Instrument.OptionType.CALL_EUROPEAN,
+            result.set(futuresPrice, 1, 0, 0, 0);
+            return result;
+        }
+
+        final long period = timeToMaturity.refresh();
+        final int instrumentId = instrument.getInstrumentId();
+        if (caching && fromCache(instrumentId, volatility, futuresPrice, period, result)) {
+            return result;
+        }
+        final int maturity = timeToMaturity.index(instrumentId, instrument.getExpirationDate());
+
+        // option inverse notation is taken into account when pricing (https://quedex.net/edu/option_valuation)
+        final double f = 1 / futuresPrice; // invert futures price
+        final double x = 1 / instrument.getStrike().doubleValue(); // invert strike
+        evaluate(
+            instrument.getOptionType() != Instrument.OptionType.CALL_EUROPEAN, // invert option type
+            f,
+            x,
+            timeToMaturity.getYears(maturity),
+            timeToMaturity.getSqrtYears(maturity),
+            Math.log(f / x),
+            volatility,
+            result
+        );
+        if (caching) {
+            cache(
+                cacheSet(instrumentId, volatility, futuresPrice),
+                period,
+                instrumentId,
                 volatility,
-                // invert futures price
-                1 / futuresPrice,
-                timeToMaturity,
-                // invert strike
-                1 / strike
+                futuresPrice,
+                result.price,
+                result.delta,
+                result.gammaP,
+                result.vega,
+                result.theta
             );
         }
+        return result;
+    }
+
+    /**
+     * Prices every option of the batch at each of its volatility levels, writing prices and greeks to the output
+     * arrays of the batch. Results are equal to those of {@link #calculateMetrics(Instrument, double, double,
+     * MutableMetrics)}; terms depending only on the option are computed once per option rather than once per level.
+     */
+    public void calculateChain(final OptionChainBatch batch) {
+        timeToMaturity.refresh();
+        final int levels = batch.getLevels();
+
+        for (int i = 0; i < batch.size(); i++) {
+            final int maturity = timeToMaturity.index(batch.instrumentIds[i], batch.expirationDates[i]);
+            final double t = timeToMaturity.getYears(maturity);
+            batch.yearsToMaturity[i] = t;
+
+            // inverse notation, as in calculateMetrics
+            final boolean call = !batch.calls[i];
+            final double f = 1 / batch.futuresPrices[i];
+            final double x = 1 / batch.strikes[i];
+
+            final double sqrtT = timeToMaturity.getSqrtYears(maturity);
+            final double logFx = Math.log(f / x);
+            final int from = i * levels;
+            final int to = from + levels;
+
+            for (int k = from; k < to; k++) {
+                valueLevel(batch, k, call, f, x, t, sqrtT, logFx);
+            }
+        }
+    }
+
+    /**
+     * Prices an option of the batch at each of its volatility levels like {@link #calculateChain(OptionChainBatch)},
+     * but values it only once, at {@code centerVolatility}, deriving prices at the levels from its expansion in
+     * volatility to the second order (vega and volga).
+     * <p>
+     * The error of the expansion is estimated by the terms of the third and fourth order, doubled, which bounds it
+     * (with a margin) for levels within 10% of the center volatility, plus a margin for floating point rounding. A
+     * level is valued fully if further away, if the estimate exceeds {@code maxError} or if it exceeds the distance of
+     * the expanded price from the nearest multiple of {@code tickSize} - so that prices rounded to ticks are those of
+     * full valuation. Greeks of expanded levels are NaN.
+     */
+    public void calculateLadder(final OptionChainBatch batch,
+                                final int option,
+                                final double centerVolatility,
+                                final double tickSize,
+                                final double maxError) {
+        checkArgument(option < batch.size(), "option=%s >= %s", option, batch.size());
+        checkArgument(tickSize > 0, "tickSize=%s <= 0", tickSize);
+
+        timeToMaturity.refresh();
+        final int maturity = timeToMaturity.index(batch.instrumentIds[option], batch.expirationDates[option]);
+        final double t = timeToMaturity.getYears(maturity);
+        batch.yearsToMaturity[option] = t;
+
+        // inverse notation, as in calculateMetrics
+        final boolean call = !batch.calls[option];
+        final double f = 1 / batch.futuresPrices[option];
+        final double x = 1 / batch.strikes[option];
+        final double sqrtT = timeToMaturity.getSqrtYears(maturity);
+        final double logFx = Math.log(f / x);
+
+        final double s = centerVolatility;
+        evaluate(call, f, x, t, sqrtT, logFx, s, level);
+        final double centerPrice = level.price;
+
+        // derivatives of the price by volatility, d1' = -d2 / s and d2' = -d1 / s
+        final double sSqrtT = s * sqrtT;
+        final double d1 = (logFx + (s * s / 2) * t) / sSqrtT;
+        final double d2 = d1 - sSqrtT;
+        final double d1d2 = d1 * d2;
+        final double d1d1d2d2 = d1 * d1 + d2 * d2;
+        final double vega = level.vega * 100;
+        final double volga = vega * d1d2 / s;
+        final double n = d1d2 * d1d2 - d1d2 - d1d1d2d2;
+        final double ultima = vega * n / (s * s);
+        final double fourth = vega * (d1d2 * n - 2 * d1d2 * d1d1d2d2 + d1d1d2d2 + 4 * d1d2 - 2 * n) / (s * s * s);
+        final double roundingError = EXPANSION_ROUNDING_ULPS * Math.ulp(f + x);
+
+        final int from = option * batch.getLevels();
+        final int to = from + batch.getLevels();
+        for (int k = from; k < to; k++) {
+            final double step = batch.volatilities[k] - s;
+            final double step3 = Math.abs(step * step * step);
+            final double errorBound = EXPANSION_ERROR_SAFETY
+                * (Math.abs(ultima) * step3 / 6 + Math.abs(fourth) * step3 * Math.abs(step) / 24) + roundingError;
+
+            if (Math.abs(step) <= MAX_EXPANSION_STEP * s && errorBound <= maxError) {
+                final double price = centerPrice + step * (vega + step * volga / 2);
+                final double ticks = price / tickSize;
+                if (price >= 0 && Math.abs(ticks - Math.rint(ticks)) * tickSize > errorBound) {
+                    expansions++;
+                    batch.prices[k] = price;
+                    batch.deltas[k] = Double.NaN;
+                    batch.gammaPs[k] = Double.NaN;
+                    batch.vegas[k] = Double.NaN;
+                    batch.thetas[k] = Double.NaN;
+                    continue;
+                }
+            }
+            valueLevel(batch, k, call, f, x, t, sqrtT, logFx);
+        }
     }
 
     /**
-     * Based on http://www.riskencyclopedia.com/articles/black_1976/
+     * Values an option at the volatility. Based on http://www.riskencyclopedia.com/articles/black_1976/
+     *
+     * @param call whether the (already inverted) option is a call
+     * @param f    futures price
+     * @param x    strike
+     * @param t    time to maturity in years
+     * @param s    volatility
      */
-    private Metrics black76(final Instrument.OptionType type,
-                            final double s,
+    private void evaluate(final boolean call,
+                          final double f,
+                          final double x,
+                          final double t,
+                          final double sqrtT,
+                          final double logFx,
+                          final double s,
+                          final MutableMetrics result) {
+        calculations++;
+
+        final double sSqrtT = s * sqrtT;
+        final double d1 = (logFx + (s * s / 2) * t) / sSqrtT;
+        final double d2 = d1 - sSqrtT;
+
+        final double cdfD1 = StandardNormal.cdf(d1);
+        final double densityD1 = StandardNormal.pdf(d1);
+
+        final double price;
+        final double delta;
+        if (call) {
+            price = f * cdfD1 - x * StandardNormal.cdf(d2);
+            delta = cdfD1;
+        } else {
+            price = x * StandardNormal.cdf(-d2) - f * (1 - cdfD1);
+            delta = cdfD1 - 1; // PUT-CALL parity
+        }
+
+        result.set(
+            price < 0 ? 0 : price, // may happen with very OTM options
+            -delta,
+            densityD1 / (f * sSqrtT) * f / 100,
+            f * densityD1 * sqrtT / 100,
+            (-(f * densityD1 * s) / (2 * sqrtT)) / 365.0
+        );
+    }
+
+    /**
+     * Values a level of the batch like {@link #evaluate}, writing to the output arrays of the batch. Bypasses the
+     * cache - levels of a batch are valued once per recalculation and hardly ever at inputs valued before.
+     */
+    private void valueLevel(final OptionChainBatch batch,
+                            final int k,
+                            final boolean call,
                             final double f,
+                            final double x,
                             final double t,
-                            final double x) {
-        final double sqrtT = Math.sqrt(t);
-        final double d1 = (Math.log(f / x) + (s * s / 2) * t) / (s * sqrtT);
-        final double d2 = d1 - s * sqrtT;
-
-        final double cdfD1 = STD_NORMAL.cumulativeProbability(d1);
-        final double densityD1 = STD_NORMAL.density(d1);
-        double delta = cdfD1;
-        final double gamma = densityD1 / (f * s * sqrtT);
-        final double gammaP = gamma * f / 100;
-        final double vega = f * densityD1 * sqrtT / 100;
-        final double theta = (-(f * densityD1 * s) / (2 * sqrtT)) / 365.0;
-
-        double price;
-        if (type == Instrument.OptionType.CALL_EUROPEAN) {
-            price = f * cdfD1 - x * STD_NORMAL.cumulativeProbability(d2);
+                            final double sqrtT,
+                            final double logFx) {
+        calculations++;
+
+        final double s = batch.volatilities[k];
+        final double sSqrtT = s * sqrtT;
+        final double d1 = (logFx + (s * s / 2) * t) / sSqrtT;
+        final double d2 = d1 - sSqrtT;
+
+        final double cdfD1 = StandardNormal.cdf(d1);
+        final double densityD1 = StandardNormal.pdf(d1);
+
+        final double price;
+        final double delta;
+        if (call) {
+            price = f * cdfD1 - x * StandardNormal.cdf(d2);
+            delta = cdfD1;
         } else {
-            price = x * STD_NORMAL.cumulativeProbability(-d2) - f * (1 - cdfD1);
-            delta = delta - 1; // PUT-CALL parity
+            price = x * StandardNormal.cdf(-d2) - f * (1 - cdfD1);
+            delta = cdfD1 - 1; // PUT-CALL parity
+        }
+
+        batch.prices[k] = price < 0 ? 0 : price; // may happen with very OTM options
+        batch.deltas[k] = -delta;
+        batch.gammaPs[k] = densityD1 / (f * sSqrtT) * f / 100;
+        batch.vegas[k] = f * densityD1 * sqrtT / 100;
+        batch.thetas[k] = (-(f * densityD1 * s) / (2 * sqrtT)) / 365.0;
+    }
+
+    /**
+     * Inverts {@link #calculateMetrics(Instrument, double, double)} for an option, finding the volatility at which it
+     * is priced at {@code price}.
+     *
+     * @param initialGuess volatility to start from, e.g. the previous implied volatility, or a non-positive number to
+     *                     start from an approximation
+     * @return implied volatility or NaN if the price is outside the no-arbitrage bounds or no volatility was found
+     */
+    public double calculateImpliedVolatility(final Instrument option,
+                                             final double price,
+                                             final double futuresPrice,
+                                             final double initialGuess) {
+        checkArgument(!option.isFutures(), "Expected option");
+        timeToMaturity.refresh();
+        // inverse notation, as in calculateMetrics
+        return impliedVolatility(
+            option.getOptionType() != Instrument.OptionType.CALL_EUROPEAN,
+            price,
+            1 / futuresPrice,
+            timeToMaturity.getYears(timeToMaturity.index(option.getInstrumentId(), option.getExpirationDate())),
+            1 / option.getStrike().doubleValue(),
+            initialGuess
+        );
+    }
+
+    /**
+     * Implied volatility of Black 76 (of an already inverted option): starts from the
+     * initial guess or the Corrado-Miller approximation, then takes Halley steps (Householder's method of order 2,
+     * using vega and volga), falling back to Newton steps where the second order correction is unstable.
+     *
+     * @return implied volatility or NaN
+     */
+    static double impliedVolatility(final boolean call,
+                                    final double price,
+                                    final double f,
+                                    final double t,
+                                    final double x,
+                                    final double initialGuess) {
+        final double callPrice = call ? price : price + f - x; // PUT-CALL parity
+        if (!(t > 0) || !(callPrice > Math.max(f - x, 0)) || !(callPrice < f)) {
+            return Double.NaN;
+        }
+
+        final double sqrtT = Math.sqrt(t);
+        final double logFx = Math.log(f / x);
+        double s = initialGuess > 0 ? initialGuess : approximateVolatility(callPrice, f, x, sqrtT);
+
+        for (int i = 0; i < MAX_VOLATILITY_ITERATIONS; i++) {
+            final double sSqrtT = s * sqrtT;
+            final double d1 = logFx / sSqrtT + sSqrtT / 2;
+            final double d2 = d1 - sSqrtT;
+            final double vega = f * StandardNormal.pdf(d1) * sqrtT;
+            if (!(vega > 0)) {
+                return Double.NaN;
+            }
+            final double difference = f * StandardNormal.cdf(d1) - x * StandardNormal.cdf(d2) - callPrice;
+            final double volga = vega * d1 * d2 / s;
+
+            final double newtonStep = difference / vega;
+            final double halleyDenominator = 1 - newtonStep * volga / (2 * vega);
+            double next = s - (halleyDenominator > 0.5 ? newtonStep / halleyDenominator : newtonStep);
+            if (next < MIN_VOLATILITY) {
+                next = (s + MIN_VOLATILITY) / 2;
+            } else if (next > MAX_VOLATILITY) {
+                next = (s + MAX_VOLATILITY) / 2;
+            }
+
+            if (Math.abs(next - s) < VOLATILITY_TOLERANCE) {
+                return next;
+            }
+            s = next;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Corrado-Miller approximation of implied volatility of an (undiscounted) call.
+     */
+    private static double approximateVolatility(final double callPrice,
+                                                final double f,
+                                                final double x,
+                                                final double sqrtT) {
+        final double halfIntrinsic = (f - x) / 2;
+        final double excess = callPrice - halfIntrinsic;
+        final double root = Math.sqrt(Math.max(excess * excess - 4 * halfIntrinsic * halfIntrinsic / Math.PI, 0));
+        final double volatility = SQRT_2PI / (f + x) * (excess + root) / sqrtT;
+        return Math.min(Math.max(volatility, 0.1), MAX_VOLATILITY);
+    }
+
+    /**
+     * @return number of option valuations (one per option and volatility) done so far, not synchronised
+     */
+    public long getCalculations() {
+        return calculations;
+    }
+
+    /**
+     * @return levels priced by {@link #calculateLadder} from the expansion rather than valued
+     */
+    public long getExpansions() {
+        return expansions;
+    }
+
+    /**
+     * @return option valuations served from the cache
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return option valuations not found in the cache, 0 if not caching
+     */
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /**
+     * Writes metrics cached in the period to {@code result}, counting a hit or a miss.
+     *
+     * @return whether cached
+     */
+    private boolean fromCache(final int instrumentId,
+                              final double volatility,
+                              final double futuresPrice,
+                              final long period,
+                              final MutableMetrics result) {
+        final int slot = findCached(cacheSet(instrumentId, volatility, futuresPrice), period, instrumentId, volatility,
+            futuresPrice);
+        if (slot < 0) {
+            cacheMisses++;
+            return false;
         }
+        cacheHits++;
+        final int m = slot * CACHE_METRICS_STRIDE;
+        result.set(cacheMetrics[m], cacheMetrics[m + 1], cacheMetrics[m + 2], cacheMetrics[m + 3], cacheMetrics[m + 4]);
+        return true;
+    }
+
+    /**
+     * @return first slot of the set of the key
+     */
+    private int cacheSet(final int instrumentId, final double volatility, final double futuresPrice) {
+        long hash = instrumentId;
+        hash = hash * 31 + Double.doubleToRawLongBits(volatility);
+        hash = hash * 31 + Double.doubleToRawLongBits(futuresPrice);
+        // finalizer of MurmurHash3
+        hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+        hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return (int) hash & cacheMask;
+    }
 
-        if (price < 0) // may happen with very OTM options
-        {
-            price = 0;
+    /**
+     * @return slot of the key valid in the period, -1 if not cached
+     */
+    private int findCached(final int set,
+                           final long period,
+                           final int instrumentId,
+                           final double volatility,
+                           final double futuresPrice) {
+        final long volatilityBits = Double.doubleToRawLongBits(volatility);
+        final long futuresPriceBits = Double.doubleToRawLongBits(futuresPrice);
+        for (int slot = set; slot < set + 2; slot++) {
+            final int k = slot * CACHE_KEY_STRIDE;
+            if (cacheKeys[k] == period
+                && cacheKeys[k + 1] == instrumentId
+                && cacheKeys[k + 2] == volatilityBits
+                && cacheKeys[k + 3] == futuresPriceBits) {
+                return slot;
+            }
         }
+        return -1;
+    }
 
-        return new Metrics(price, -delta, gammaP, vega, theta);
+    private void cache(final int set,
+                       final long period,
+                       final int instrumentId,
+                       final double volatility,
+                       final double futuresPrice,
+                       final double price,
+                       final double delta,
+                       final double gammaP,
+                       final double vega,
+                       final double theta) {
+        final int k = set * CACHE_KEY_STRIDE;
+        final int m = set * CACHE_METRICS_STRIDE;
+        System.arraycopy(cacheKeys, k, cacheKeys, k + CACHE_KEY_STRIDE, CACHE_KEY_STRIDE);
+        System.arraycopy(cacheMetrics, m, cacheMetrics, m + CACHE_METRICS_STRIDE, CACHE_METRICS_STRIDE);
+        cacheKeys[k] = period;
+        cacheKeys[k + 1] = instrumentId;
+        cacheKeys[k + 2] = Double.doubleToRawLongBits(volatility);
+        cacheKeys[k + 3] = Double.doubleToRawLongBits(futuresPrice);
+        cacheMetrics[m] = price;
+        cacheMetrics[m + 1] = delta;
+        cacheMetrics[m + 2] = gammaP;
+        cacheMetrics[m + 3] = vega;
+        cacheMetrics[m + 4] = theta;
     }
 
-    private double yearsToMaturity(final long expirationDate) {
-        final long now = timeProvider.getCurrentTime();
-        return BigDecimal.valueOf(expirationDate - now)
-            .divide(BigDecimal.valueOf(YEAR_MILLIS), 10, BigDecimal.ROUND_UP)
-            .doubleValue();
+    /**
+     * Reusable holder of {@link Metrics} for allocation-free pricing. Not validated on write.
+     */
+    public static final class MutableMetrics {
+        private double price;
+        private double delta;
+        private double gammaP;
+        private double vega;
+        private double theta;
+
+        void set(final double price,
+                 final double delta,
+                 final double gammaP,
+                 final double vega,
+                 final double theta) {
+            this.price = price;
+            this.delta = delta;
+            this.gammaP = gammaP;
+            this.vega = vega;
+            this.theta = theta;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public double getDelta() {
+            return delta;
+        }
+
+        public double getGammaP() {
+            return gammaP;
+        }
+
+        public double getVega() {
+            return vega;
+        }
+
+        public double getTheta() {
+            return theta;
+        }
+
+        public Metrics toMetrics() {
+            return new Metrics(price, delta, gammaP, vega, theta);
+        }
+
+        @Override
+        public String toString() {
+            return MoreObjects.toStringHelper(this)
+                .add("price", price)
+                .add("delta", delta)
+                .add("gammaP", gammaP)
+                .add("vega", vega)
+                .add("theta", theta)
+                .toString();
+        }
     }
 
     public static final class Metrics {
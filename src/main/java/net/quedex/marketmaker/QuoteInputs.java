@@ -0,0 +1,115 @@
+package net.quedex.marketmaker;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Inputs the orders of each instrument were last calculated from, so that only instruments whose inputs changed are
+ * recalculated - orders of the others are left as they are.
+ * <p>
+ * The inputs are the fair price of the futures (of the option), the fair volatility and the state of the risk limits
+ * gating sides of the book. A futures price may be compared within a tolerance, as options are insensitive to small
+ * moves. Order events which make the orders of an instrument differ from the calculated ones (fills, failures, forceful
+ * cancels) invalidate the instrument. As option prices also depend on time, orders are recalculated when older than a
+ * given age even if nothing else changed.
+ */
+@NotThreadSafe
+public final class QuoteInputs {
+    private final long maxAgeMillis;
+    private final LongIntHashMap instrumentIdToIndex = new LongIntHashMap(64);
+
+    // per instrument
+    private double[] futuresPrices = new double[0];
+    private double[] volatilities = new double[0];
+    private int[] limits = new int[0];
+    private long[] calculationTimes = new long[0];
+    private boolean[] valid = new boolean[0];
+    private int instruments;
+
+    private int recalculated;
+    private int unchanged;
+
+    public QuoteInputs(final long maxAgeMillis) {
+        checkArgument(maxAgeMillis > 0, "maxAgeMillis=%s <= 0", maxAgeMillis);
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Compares the inputs with those orders of the instrument were last calculated from. If they differ, the orders
+     * have to be recalculated and the inputs are recorded as those of the recalculation.
+     *
+     * @param futuresPriceFraction fraction of the recorded futures price by which the futures price has to move to
+     *                             change
+     * @param limits               state of the risk limits affecting the instrument, any value comparable by equality
+     * @return whether the orders have to be recalculated
+     */
+    public boolean update(final int instrumentId,
+                          final double futuresPrice,
+                          final double futuresPriceFraction,
+                          final double volatility,
+                          final int limits,
+                          final long currentTime) {
+        int index = instrumentIdToIndex.get(instrumentId);
+        if (index == LongIntHashMap.MISSING) {
+            index = addInstrument(instrumentId);
+        } else if (valid[index]
+            && Math.abs(futuresPrice - futuresPrices[index]) <= futuresPriceFraction * futuresPrices[index]
+            && volatilities[index] == volatility
+            && this.limits[index] == limits
+            && currentTime - calculationTimes[index] < maxAgeMillis) {
+            unchanged++;
+            return false;
+        }
+
+        futuresPrices[index] = futuresPrice;
+        volatilities[index] = volatility;
+        this.limits[index] = limits;
+        calculationTimes[index] = currentTime;
+        valid[index] = true;
+        recalculated++;
+        return true;
+    }
+
+    /**
+     * Makes orders of the instrument be recalculated next time.
+     */
+    public void invalidate(final int instrumentId) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        if (index != LongIntHashMap.MISSING) {
+            valid[index] = false;
+        }
+    }
+
+    public void invalidateAll() {
+        Arrays.fill(valid, 0, instruments, false);
+    }
+
+    public int getRecalculated() {
+        return recalculated;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public void resetCounters() {
+        recalculated = 0;
+        unchanged = 0;
+    }
+
+    private int addInstrument(final int instrumentId) {
+        if (instruments == valid.length) {
+            final int capacity = Math.max(instruments << 1, 16);
+            futuresPrices = Arrays.copyOf(futuresPrices, capacity);
+            volatilities = Arrays.copyOf(volatilities, capacity);
+            limits = Arrays.copyOf(limits, capacity);
+            calculationTimes = Arrays.copyOf(calculationTimes, capacity);
+            valid = Arrays.copyOf(valid, capacity);
+        }
+        instrumentIdToIndex.put(instrumentId, instruments);
+        return instruments++;
+    }
+}
@@ -0,0 +1,121 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Keeps only the newest pending {@link Quotes} of every instrument, so that a burst of updates is handled as a single
+ * pass over the instruments that changed, each with its latest quotes.
+ * <p>
+ * Instruments with pending quotes are queued at most once each, so the queue is bounded by the number of instruments.
+ * A drain is requested (through the drain scheduler passed in) only when none is requested already.
+ */
+@ThreadSafe
+public class QuotesConflator {
+    private final LongIntHashMap instrumentIdToIndex; // read-only after construction
+    private final AtomicReferenceArray<Quotes> pending;
+
+    // queue of indices (+ 1, 0 being empty) of instruments with pending quotes
+    private final AtomicIntegerArray queue;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0; // drain only
+
+    private final AtomicBoolean drainRequested = new AtomicBoolean();
+    private final Runnable drainScheduler;
+
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong drains = new AtomicLong();
+
+    public QuotesConflator(final Collection<Integer> instrumentIds, final Runnable drainScheduler) {
+        checkNotNull(instrumentIds, "null instrumentIds");
+        this.drainScheduler = checkNotNull(drainScheduler, "null drainScheduler");
+
+        instrumentIdToIndex = new LongIntHashMap(instrumentIds.size());
+        for (final int instrumentId : instrumentIds) {
+            instrumentIdToIndex.put(instrumentId, instrumentIdToIndex.size());
+        }
+        pending = new AtomicReferenceArray<>(instrumentIds.size());
+
+        final int capacity = Integer.highestOneBit(Math.max(instrumentIds.size(), 1) * 2 - 1);
+        queue = new AtomicIntegerArray(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Replaces pending quotes of the instrument, requesting a drain if needed.
+     *
+     * @return false if the instrument is unknown, in which case the quotes are not taken
+     */
+    public boolean offer(final Quotes quotes) {
+        final int index = instrumentIdToIndex.get(quotes.getInstrumentId());
+        if (index == LongIntHashMap.MISSING) {
+            return false;
+        }
+        received.incrementAndGet();
+
+        if (pending.getAndSet(index, quotes) != null) {
+            conflated.incrementAndGet(); // already queued
+            return true;
+        }
+
+        queue.set((int) tail.getAndIncrement() & mask, index + 1);
+        if (drainRequested.compareAndSet(false, true)) {
+            drainScheduler.run();
+        }
+        return true;
+    }
+
+    /**
+     * Passes the newest pending quotes of every queued instrument to the listener. To be called from a single thread
+     * at a time.
+     */
+    public void drain(final QuotesListener quotesListener) {
+        drainRequested.set(false); // before polling, so that quotes offered from now on request another drain
+        drains.incrementAndGet();
+
+        while (true) {
+            final int slot = (int) head & mask;
+            final int indexPlusOne = queue.get(slot);
+            if (indexPlusOne == 0) {
+                break; // empty, or being written by an offer which will request another drain
+            }
+            queue.lazySet(slot, 0);
+            head++;
+
+            final Quotes quotes = pending.getAndSet(indexPlusOne - 1, null);
+            if (quotes != null) {
+                quotesListener.onQuotes(quotes);
+            }
+        }
+    }
+
+    /**
+     * @return number of quotes offered for known instruments
+     */
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * @return number of quotes replaced by newer ones before being drained
+     */
+    public long getConflated() {
+        return conflated.get();
+    }
+
+    public long getDrains() {
+        return drains.get();
+    }
+}
@@ -0,0 +1,110 @@
+package net.quedex.marketmaker;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides when orders should be recalculated. A requote is due:
+ * <ul>
+ * <li>{@code debounceMillis} after the first trigger since the last requote, so that a burst of triggers results in
+ * a single requote,</li>
+ * <li>but not sooner than {@code minIntervalMillis} after the last requote,</li>
+ * <li>and at the latest {@code maxIntervalMillis} after the last requote, even when not triggered.</li>
+ * </ul>
+ * Time is measured by a clock of nanoseconds, {@link System#nanoTime()} unless a simulated one is passed in.
+ */
+@ThreadSafe
+public class RequoteScheduler {
+    private final LongSupplier nanoClock;
+    private final long debounceNanos;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+
+    private boolean requoted = false;
+    private long lastRequoteNanos;
+    private boolean triggered = false;
+    private long firstTriggerNanos;
+
+    public RequoteScheduler(final long debounceMillis, final long minIntervalMillis, final long maxIntervalMillis) {
+        this(System::nanoTime, debounceMillis, minIntervalMillis, maxIntervalMillis);
+    }
+
+    public RequoteScheduler(final LongSupplier nanoClock,
+                            final long debounceMillis,
+                            final long minIntervalMillis,
+                            final long maxIntervalMillis) {
+        this.nanoClock = checkNotNull(nanoClock, "null nanoClock");
+        checkArgument(debounceMillis >= 0, "debounceMillis=%s < 0", debounceMillis);
+        checkArgument(minIntervalMillis >= 0, "minIntervalMillis=%s < 0", minIntervalMillis);
+        checkArgument(
+            maxIntervalMillis >= minIntervalMillis,
+            "maxIntervalMillis=%s < minIntervalMillis=%s", maxIntervalMillis, minIntervalMillis
+        );
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minIntervalMillis);
+        this.maxIntervalNanos = TimeUnit.MILLISECONDS.toNanos(maxIntervalMillis);
+    }
+
+    /**
+     * Requests a requote.
+     */
+    public synchronized void trigger() {
+        if (!triggered) {
+            triggered = true;
+            firstTriggerNanos = nanoClock.getAsLong();
+            notifyAll();
+        }
+    }
+
+    /**
+     * Blocks until a requote is due. The first call returns immediately.
+     */
+    public synchronized void awaitRequote() throws InterruptedException {
+        while (requoted) {
+            final long remaining = getDueNanos() - nanoClock.getAsLong();
+            if (remaining <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        onRequote();
+    }
+
+    /**
+     * Non-blocking version of {@link #awaitRequote()}, for when the clock is not the real one.
+     *
+     * @return whether a requote is due, in which case it is considered done
+     */
+    public synchronized boolean tryRequote() {
+        if (requoted && nanoClock.getAsLong() < getDueNanos()) {
+            return false;
+        }
+        onRequote();
+        return true;
+    }
+
+    /**
+     * @return time of the clock when the next requote is due, {@link Long#MIN_VALUE} before the first one
+     */
+    public synchronized long getDueNanos() {
+        if (!requoted) {
+            return Long.MIN_VALUE;
+        }
+        long due = lastRequoteNanos + maxIntervalNanos;
+        if (triggered) {
+            due = Math.min(due, Math.max(firstTriggerNanos + debounceNanos, lastRequoteNanos + minIntervalNanos));
+        }
+        return due;
+    }
+
+    private void onRequote() {
+        requoted = true;
+        lastRequoteNanos = nanoClock.getAsLong();
+        triggered = false;
+    }
+}
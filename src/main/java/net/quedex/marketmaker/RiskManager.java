@@ -1,88 +1,137 @@
 package net.quedex.marketmaker;
 
 import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
 import net.quedex.api.user.OpenPosition;
 import net.quedex.api.user.OpenPositionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-public class RiskManager implements OpenPositionListener {
+/**
+ * Keeps greeks of every open position and their totals. A position update reprices only that position. Positions are
+ * repriced on market data only when the fair price of their futures or their volatility moved beyond the configured
+ * thresholds since they were last priced.
+ * <p>
+ * Positions may also be valued over stress scenarios off the event thread (see {@link ScenarioEngine}), from a
+ * {@link #getSnapshot(long) snapshot}; the worst scenario of the latest {@link ScenarioGrid} then gates quoting like
+ * the delta and vega limits do, when its loss exceeds the configured maximum.
+ */
+public class RiskManager implements OpenPositionListener, QuotesListener {
     private static final Logger LOGGER = LoggerFactory.getLogger(RiskManager.class);
 
     private final InstrumentManager instrumentManager;
     private final FairPriceProvider fairVolatilityProvider;
     private final FairPriceProvider futuresFairPriceProvider;
     private final Pricing pricing;
-    private final Map<Integer, OpenPosition> openPositions = new HashMap<>();
+    private final double repriceFuturesPriceFraction;
+    private final double repriceVolatilityChange;
+    private final double scenarioMaxLoss;
+
+    private final Map<Integer, PositionGreeks> positions = new HashMap<>();
+    private final Map<Integer, List<PositionGreeks>> futuresIdToPositions = new HashMap<>();
+    private final Pricing.MutableMetrics metrics = new Pricing.MutableMetrics();
 
     private double totalDelta = 0;
     private double totalVega = 0;
     private double totalGammaP = 0;
     private double totalTheta = 0;
+    private int scenarioDeltaState = 0;
+    private int scenarioVegaState = 0;
 
     public RiskManager(
         final InstrumentManager instrumentManager,
         final FairPriceProvider fairVolatilityProvider,
         final FairPriceProvider futuresFairPriceProvider,
-        final Pricing pricing) {
+        final Pricing pricing,
+        final double repriceFuturesPriceFraction,
+        final double repriceVolatilityChange,
+        final double scenarioMaxLoss) {
+        checkArgument(
+            repriceFuturesPriceFraction >= 0, "repriceFuturesPriceFraction=%s < 0", repriceFuturesPriceFraction
+        );
+        checkArgument(repriceVolatilityChange >= 0, "repriceVolatilityChange=%s < 0", repriceVolatilityChange);
+        checkArgument(scenarioMaxLoss >= 0, "scenarioMaxLoss=%s < 0", scenarioMaxLoss);
         this.instrumentManager = checkNotNull(instrumentManager, "null instrumentManager");
         this.fairVolatilityProvider = checkNotNull(fairVolatilityProvider, "null fairVolatilityProvider");
         this.futuresFairPriceProvider = checkNotNull(futuresFairPriceProvider, "null futuresFairPriceProvider");
         this.pricing = checkNotNull(pricing, "null pricing");
+        this.repriceFuturesPriceFraction = repriceFuturesPriceFraction;
+        this.repriceVolatilityChange = repriceVolatilityChange;
+        this.scenarioMaxLoss = scenarioMaxLoss;
     }
 
     @Override
     public void onOpenPosition(final OpenPosition openPosition) {
         LOGGER.trace("onOpenPosition({})", openPosition);
-        openPositions.put(openPosition.getInstrumentId(), openPosition);
-        updateGreeks();
+
+        final int instrumentId = openPosition.getInstrumentId();
+        PositionGreeks position = positions.get(instrumentId);
+
+        if (position == null) {
+            final Instrument instrument = instrumentManager.getInstrument(instrumentId);
+            final int futuresId = instrumentManager.getFuturesAtExpiration(instrument.getExpirationDate())
+                .getInstrumentId();
+            position = new PositionGreeks(instrument, futuresId);
+            positions.put(instrumentId, position);
+            futuresIdToPositions.computeIfAbsent(futuresId, id -> new ArrayList<>()).add(position);
+        }
+
+        position.quantity = openPosition.getQuantitySigned();
+        reprice(
+            position,
+            futuresFairPriceProvider.getFairPrice(position.futuresId).doubleValue(),
+            fairVolatilityProvider.getFairPrice(instrumentId).doubleValue()
+        );
+
+        if (position.quantity == 0) {
+            positions.remove(instrumentId);
+            futuresIdToPositions.get(position.futuresId).remove(position);
+        }
+
+        logTotals();
     }
 
-    private void updateGreeks() {
-        totalDelta = 0;
-        totalVega = 0;
-        totalGammaP = 0;
-        totalTheta = 0;
+    @Override
+    public void onQuotes(final Quotes quotes) {
+        final int instrumentId = quotes.getInstrumentId();
+        final List<PositionGreeks> expiryPositions = futuresIdToPositions.get(instrumentId);
+
+        if (expiryPositions != null && !expiryPositions.isEmpty()) {
+            final double futuresPrice = futuresFairPriceProvider.getFairPrice(instrumentId).doubleValue();
+            boolean repriced = false;
 
-        for (final Map.Entry<Integer, OpenPosition> openPosition : openPositions.entrySet()) {
-            final int openPositionSigned = openPosition.getValue().getQuantitySigned();
-            final Instrument positionInstrument = instrumentManager.getInstrument(openPosition.getKey());
-
-            final double futuresPrice = futuresFairPriceProvider.getFairPrice(
-                instrumentManager.getFuturesAtExpiration(positionInstrument.getExpirationDate()).getInstrumentId()
-            ).doubleValue();
-
-            final Pricing.Metrics metrics = pricing.calculateMetrics(
-                positionInstrument,
-                fairVolatilityProvider.getFairPrice(positionInstrument.getInstrumentId()).doubleValue(),
-                futuresPrice
-            );
-
-            final double positionDelta = openPositionSigned * metrics.getDelta(); // per contract
-            final double positionGammaP = openPositionSigned * metrics.getGammaP(); // per contract
-            final double positionTheta = openPositionSigned
-                * metrics.getTheta()
-                * positionInstrument.getNotionalAmount(); // per notional
-            final double positionVega = openPositionSigned
-                * metrics.getVega()
-                * positionInstrument.getNotionalAmount(); // per notional
-
-            LOGGER.debug(
-                "Position {}: {}, delta={}, vega={}, gammaP={}, theta={}",
-                openPosition.getKey(), openPositionSigned, positionDelta, positionVega, positionGammaP, positionTheta
-            );
-
-            totalDelta += positionDelta;
-            totalVega += positionVega;
-            totalGammaP += positionGammaP;
-            totalTheta += positionTheta;
+            for (final PositionGreeks position : expiryPositions) {
+                final double volatility = fairVolatilityProvider.getFairPrice(position.getInstrumentId()).doubleValue();
+                if (isMoved(position, futuresPrice, volatility)) {
+                    reprice(position, futuresPrice, volatility);
+                    repriced = true;
+                }
+            }
+
+            if (repriced) {
+                sumTotals();
+                logRepricedTotals();
+            }
+        } else {
+            final PositionGreeks position = positions.get(instrumentId);
+
+            if (position != null) {
+                final double volatility = fairVolatilityProvider.getFairPrice(instrumentId).doubleValue();
+                if (Math.abs(volatility - position.volatility) > repriceVolatilityChange) {
+                    reprice(position, position.futuresPrice, volatility);
+                    logRepricedTotals();
+                }
+            }
         }
-        LOGGER.info("Total: delta={}, vega={}, gammaP={}, theta={}", totalDelta, totalVega, totalGammaP, totalTheta);
     }
 
     /**
@@ -98,4 +147,140 @@ public class RiskManager implements OpenPositionListener {
     public double getTotalVega() {
         return totalVega;
     }
+
+    /**
+     * Updates the scenario gates from the grid.
+     */
+    public void onScenarioGrid(final ScenarioGrid grid) {
+        scenarioDeltaState = grid.getFuturesPriceState(scenarioMaxLoss);
+        scenarioVegaState = grid.getVolatilityState(scenarioMaxLoss);
+    }
+
+    /**
+     * @return 1 if the worst scenario loss exceeds the maximum with futures prices falling, so that delta should not be
+     *         increased, -1 if with them rising, 0 otherwise
+     */
+    public int getScenarioDeltaState() {
+        return scenarioDeltaState;
+    }
+
+    /**
+     * @return 1 if the worst scenario loss exceeds the maximum with volatilities falling, so that vega should not be
+     *         increased, -1 if with them rising, 0 otherwise
+     */
+    public int getScenarioVegaState() {
+        return scenarioVegaState;
+    }
+
+    /**
+     * @return open positions at the futures prices and volatilities they were last priced at, without pricing
+     */
+    public PositionSnapshot getSnapshot(final long time) {
+        final Instrument[] instruments = new Instrument[positions.size()];
+        final int[] quantities = new int[positions.size()];
+        final double[] futuresPrices = new double[positions.size()];
+        final double[] volatilities = new double[positions.size()];
+        int i = 0;
+        for (final PositionGreeks position : positions.values()) {
+            instruments[i] = position.instrument;
+            quantities[i] = position.quantity;
+            futuresPrices[i] = position.futuresPrice;
+            volatilities[i] = position.volatility;
+            i++;
+        }
+        return new PositionSnapshot(time, instruments, quantities, futuresPrices, volatilities);
+    }
+
+    /**
+     * @return state of a risk limit as applied by order placing strategies: 1 at or above the limit, -1 at or below the
+     *         negated limit, the scenario state in between
+     */
+    static int limitState(final double value, final double limit, final int scenarioState) {
+        return value >= limit ? 1 : value <= -limit ? -1 : scenarioState;
+    }
+
+    private boolean isMoved(final PositionGreeks position, final double futuresPrice, final double volatility) {
+        return Math.abs(futuresPrice - position.futuresPrice) > repriceFuturesPriceFraction * position.futuresPrice
+            || Math.abs(volatility - position.volatility) > repriceVolatilityChange;
+    }
+
+    /**
+     * Replaces the contribution of the position to the totals with one priced at given inputs.
+     */
+    private void reprice(final PositionGreeks position, final double futuresPrice, final double volatility) {
+        totalDelta -= position.delta;
+        totalVega -= position.vega;
+        totalGammaP -= position.gammaP;
+        totalTheta -= position.theta;
+
+        pricing.calculateMetrics(position.instrument, volatility, futuresPrice, metrics);
+
+        final int quantity = position.quantity;
+        final int notional = position.instrument.getNotionalAmount();
+        position.delta = quantity * metrics.getDelta(); // per contract
+        position.gammaP = quantity * metrics.getGammaP(); // per contract
+        position.theta = quantity * metrics.getTheta() * notional; // per notional
+        position.vega = quantity * metrics.getVega() * notional; // per notional
+        position.futuresPrice = futuresPrice;
+        position.volatility = volatility;
+
+        LOGGER.debug(
+            "Position {}: {}, delta={}, vega={}, gammaP={}, theta={}",
+            position.getInstrumentId(), quantity, position.delta, position.vega, position.gammaP, position.theta
+        );
+
+        totalDelta += position.delta;
+        totalVega += position.vega;
+        totalGammaP += position.gammaP;
+        totalTheta += position.theta;
+    }
+
+    /**
+     * Recomputes the totals from contributions of positions, discarding rounding errors accumulated by incremental
+     * updates.
+     */
+    private void sumTotals() {
+        totalDelta = 0;
+        totalVega = 0;
+        totalGammaP = 0;
+        totalTheta = 0;
+
+        for (final PositionGreeks position : positions.values()) {
+            totalDelta += position.delta;
+            totalVega += position.vega;
+            totalGammaP += position.gammaP;
+            totalTheta += position.theta;
+        }
+    }
+
+    private void logTotals() {
+        LOGGER.info("Total: delta={}, vega={}, gammaP={}, theta={}", totalDelta, totalVega, totalGammaP, totalTheta);
+    }
+
+    private void logRepricedTotals() {
+        LOGGER.debug("Total: delta={}, vega={}, gammaP={}, theta={}", totalDelta, totalVega, totalGammaP, totalTheta);
+    }
+
+    private static final class PositionGreeks {
+        private final Instrument instrument;
+        private final int futuresId;
+
+        private int quantity;
+        private double futuresPrice;
+        private double volatility;
+
+        private double delta;
+        private double vega;
+        private double gammaP;
+        private double theta;
+
+        private PositionGreeks(final Instrument instrument, final int futuresId) {
+            this.instrument = instrument;
+            this.futuresId = futuresId;
+        }
+
+        private int getInstrumentId() {
+            return instrument.getInstrumentId();
+        }
+    }
 }
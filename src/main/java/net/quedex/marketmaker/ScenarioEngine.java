@@ -0,0 +1,257 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Values {@link PositionSnapshot}s over a grid of scenarios - relative shocks of futures prices by relative shocks of
+ * volatilities, each spaced evenly and symmetric around no shock - on a {@link ForkJoinPool}, one task per futures
+ * price shock, and publishes the latest {@link ScenarioGrid}.
+ * <p>
+ * Snapshots are submitted from the event thread, which does no pricing. A snapshot submitted while a grid is calculated
+ * replaces any other waiting one, so that only the latest is calculated next. In replay, the submitting thread instead
+ * waits for the grid of every snapshot to be calculated on the pool, so that grids are deterministic.
+ */
+@ThreadSafe
+public class ScenarioEngine {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScenarioEngine.class);
+
+    private final double[] futuresPriceShocks;
+    private final double[] volatilityShocks;
+    private final ForkJoinPool pool;
+    private final boolean replay;
+
+    private final AtomicReference<PositionSnapshot> pending = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ScenarioGrid grid = ScenarioGrid.EMPTY;
+
+    // state of the calculation, confined to one grid at a time
+    private final RowTask[] rows;
+    private final Pricing pricing;
+    private final Pricing.MutableMetrics metrics = new Pricing.MutableMetrics();
+    private PositionSnapshot snapshot;
+    private double[] baseValues = new double[0];
+    private double[] pnl;
+
+    /**
+     * @param maxFuturesPriceShock  largest relative change of futures prices
+     * @param futuresPriceShocks    number of futures price shocks, odd
+     * @param maxVolatilityShock    largest relative change of volatilities, less than 1
+     * @param volatilityShocks      number of volatility shocks, odd
+     * @param replay                whether to wait for the grid of every submitted snapshot
+     */
+    public ScenarioEngine(final double maxFuturesPriceShock,
+                          final int futuresPriceShocks,
+                          final double maxVolatilityShock,
+                          final int volatilityShocks,
+                          final int parallelism,
+                          final boolean replay) {
+        checkArgument(
+            maxFuturesPriceShock >= 0 && maxFuturesPriceShock < 1,
+            "maxFuturesPriceShock=%s not in [0, 1)", maxFuturesPriceShock
+        );
+        checkArgument(
+            maxVolatilityShock >= 0 && maxVolatilityShock < 1,
+            "maxVolatilityShock=%s not in [0, 1)", maxVolatilityShock
+        );
+        checkArgument(parallelism > 0, "parallelism=%s <= 0", parallelism);
+        this.futuresPriceShocks = shocks(maxFuturesPriceShock, futuresPriceShocks);
+        this.volatilityShocks = shocks(maxVolatilityShock, volatilityShocks);
+        this.replay = replay;
+        this.pool = new ForkJoinPool(
+            parallelism,
+            pool -> {
+                final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("scenarios-" + thread.getPoolIndex());
+                return thread;
+            },
+            null,
+            false
+        );
+
+        // priced at the time of the snapshot, which is fixed, so at the millisecond and without caching
+        pricing = new Pricing(() -> snapshot.getTime());
+        rows = new RowTask[futuresPriceShocks];
+        for (int i = 0; i < futuresPriceShocks; i++) {
+            rows[i] = new RowTask(i);
+        }
+    }
+
+    /**
+     * Calculates the grid of the snapshot, in the background unless in replay.
+     */
+    public void submit(final PositionSnapshot snapshot) {
+        checkNotNull(snapshot, "null snapshot");
+        if (replay) {
+            pool.invoke(ForkJoinTask.adapt(() -> calculate(snapshot)));
+            return;
+        }
+        pending.set(snapshot);
+        if (running.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    /**
+     * @return the latest calculated grid, of no positions until one is
+     */
+    public ScenarioGrid getGrid() {
+        return grid;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        try {
+            PositionSnapshot next;
+            while ((next = pending.getAndSet(null)) != null) {
+                calculate(next);
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.error("Scenario grid calculation failed", e);
+        } finally {
+            running.set(false);
+        }
+        // submitted after the last poll, but before running was cleared
+        if (pending.get() != null && running.compareAndSet(false, true)) {
+            pool.execute(this::drain);
+        }
+    }
+
+    /**
+     * Runs in a worker of the pool.
+     */
+    private void calculate(final PositionSnapshot snapshot) {
+        this.snapshot = snapshot;
+        if (baseValues.length < snapshot.size()) {
+            baseValues = new double[snapshot.size()];
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            baseValues[i] = value(snapshot, i, 1, 1, pricing, metrics);
+        }
+
+        pnl = new double[futuresPriceShocks.length * volatilityShocks.length];
+        for (final RowTask row : rows) {
+            row.reinitialize();
+        }
+        ForkJoinTask.invokeAll(rows);
+
+        final ScenarioGrid calculated = new ScenarioGrid(snapshot.getTime(), futuresPriceShocks, volatilityShocks, pnl);
+        grid = calculated;
+        LOGGER.debug("Scenarios of {} positions: {}", snapshot.size(), calculated);
+    }
+
+    /**
+     * @return value of the position, in the settlement currency, at shocked futures price and volatility
+     */
+    private static double value(final PositionSnapshot snapshot,
+                                final int position,
+                                final double futuresPriceFactor,
+                                final double volatilityFactor,
+                                final Pricing pricing,
+                                final Pricing.MutableMetrics metrics) {
+        final Instrument instrument = snapshot.getInstrument(position);
+        final double notional = notional(snapshot, position);
+        final double futuresPrice = snapshot.getFuturesPrice(position) * futuresPriceFactor;
+        if (instrument.isFutures()) {
+            return -notional / futuresPrice; // inverse
+        }
+        pricing.calculateMetrics(
+            instrument,
+            snapshot.getVolatility(position) * volatilityFactor,
+            futuresPrice,
+            metrics
+        );
+        return notional * metrics.getPrice();
+    }
+
+    private static double notional(final PositionSnapshot snapshot, final int position) {
+        return (double) snapshot.getQuantity(position) * snapshot.getInstrument(position).getNotionalAmount();
+    }
+
+    private static double[] shocks(final double maxShock, final int count) {
+        checkArgument(count > 0 && count % 2 == 1, "count=%s not odd", count);
+        final double[] shocks = new double[count];
+        final int half = count / 2;
+        for (int i = 0; i < count; i++) {
+            shocks[i] = half == 0 ? 0 : maxShock * (i - half) / half;
+        }
+        return shocks;
+    }
+
+    /**
+     * Scenarios of a futures price shock, written to their part of the grid. Options are priced at all volatility
+     * shocks as a batch, each with its own pricing and batch.
+     */
+    private final class RowTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int futuresPriceShock;
+        private final Pricing pricing = new Pricing(() -> snapshot.getTime());
+        private OptionChainBatch batch = new OptionChainBatch(16, volatilityShocks.length);
+
+        private RowTask(final int futuresPriceShock) {
+            this.futuresPriceShock = futuresPriceShock;
+        }
+
+        @Override
+        protected void compute() {
+            if (batch.getMaxOptions() < snapshot.size()) {
+                batch = new OptionChainBatch(
+                    Math.max(snapshot.size(), batch.getMaxOptions() << 1),
+                    volatilityShocks.length
+                );
+            }
+            batch.clear();
+
+            final double futuresPriceFactor = 1 + futuresPriceShocks[futuresPriceShock];
+            double futuresPnl = 0;
+            for (int i = 0; i < snapshot.size(); i++) {
+                final Instrument instrument = snapshot.getInstrument(i);
+                final double futuresPrice = snapshot.getFuturesPrice(i) * futuresPriceFactor;
+                if (instrument.isFutures()) {
+                    futuresPnl += -notional(snapshot, i) / futuresPrice - baseValues[i];
+                } else {
+                    final int option = batch.add(instrument, futuresPrice);
+                    for (int j = 0; j < volatilityShocks.length; j++) {
+                        batch.setVolatility(option, j, snapshot.getVolatility(i) * (1 + volatilityShocks[j]));
+                    }
+                }
+            }
+            pricing.calculateChain(batch);
+
+            final int offset = futuresPriceShock * volatilityShocks.length;
+            for (int j = 0; j < volatilityShocks.length; j++) {
+                double sum = futuresPnl;
+                int option = 0;
+                for (int i = 0; i < snapshot.size(); i++) {
+                    if (!snapshot.getInstrument(i).isFutures()) {
+                        sum += notional(snapshot, i) * batch.getPrice(option++, j) - baseValues[i];
+                    }
+                }
+                pnl[offset + j] = sum;
+            }
+        }
+    }
+}
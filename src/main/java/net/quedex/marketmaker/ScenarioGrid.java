@@ -0,0 +1,121 @@
+package net.quedex.marketmaker;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Profit and loss of open positions, in the settlement currency, over a grid of scenarios - relative shocks of all
+ * futures prices by the volatilities of all options - with the worst of them.
+ */
+@Immutable
+public final class ScenarioGrid {
+    static final ScenarioGrid EMPTY = new ScenarioGrid(0, new double[] {0}, new double[] {0}, new double[1]);
+
+    private final long time;
+    private final double[] futuresPriceShocks;
+    private final double[] volatilityShocks;
+    private final double[] pnl; // by futures price shock, then volatility shock
+    private final int worstScenario;
+
+    /**
+     * Takes ownership of the arrays, which must not be modified afterwards.
+     */
+    ScenarioGrid(final long time,
+                 final double[] futuresPriceShocks,
+                 final double[] volatilityShocks,
+                 final double[] pnl) {
+        checkArgument(
+            pnl.length == futuresPriceShocks.length * volatilityShocks.length,
+            "pnl length=%s != %s * %s", pnl.length, futuresPriceShocks.length, volatilityShocks.length
+        );
+        this.time = time;
+        this.futuresPriceShocks = futuresPriceShocks;
+        this.volatilityShocks = volatilityShocks;
+        this.pnl = pnl;
+
+        int worst = 0;
+        for (int i = 1; i < pnl.length; i++) {
+            if (pnl[i] < pnl[worst]) {
+                worst = i;
+            }
+        }
+        this.worstScenario = worst;
+    }
+
+    /**
+     * @return time of the positions the grid is of
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getFuturesPriceShocks() {
+        return futuresPriceShocks.length;
+    }
+
+    public int getVolatilityShocks() {
+        return volatilityShocks.length;
+    }
+
+    /**
+     * @return relative change of futures prices in the scenarios of the index
+     */
+    public double getFuturesPriceShock(final int index) {
+        return futuresPriceShocks[index];
+    }
+
+    /**
+     * @return relative change of volatilities in the scenarios of the index
+     */
+    public double getVolatilityShock(final int index) {
+        return volatilityShocks[index];
+    }
+
+    public double getPnl(final int futuresPriceShock, final int volatilityShock) {
+        return pnl[futuresPriceShock * volatilityShocks.length + volatilityShock];
+    }
+
+    /**
+     * @return loss in the worst scenario, 0 if there is no loss in any
+     */
+    public double getWorstLoss() {
+        return Math.max(-pnl[worstScenario], 0);
+    }
+
+    public double getWorstFuturesPriceShock() {
+        return futuresPriceShocks[worstScenario / volatilityShocks.length];
+    }
+
+    public double getWorstVolatilityShock() {
+        return volatilityShocks[worstScenario % volatilityShocks.length];
+    }
+
+    /**
+     * @return 1 if the worst loss exceeds {@code maxLoss} with futures prices falling (positions are long), -1 if with
+     *         them rising, 0 otherwise
+     */
+    public int getFuturesPriceState(final double maxLoss) {
+        return getWorstLoss() > maxLoss ? -(int) Math.signum(getWorstFuturesPriceShock()) : 0;
+    }
+
+    /**
+     * @return 1 if the worst loss exceeds {@code maxLoss} with volatilities falling (positions are long vega), -1 if
+     *         with them rising, 0 otherwise
+     */
+    public int getVolatilityState(final double maxLoss) {
+        return getWorstLoss() > maxLoss ? -(int) Math.signum(getWorstVolatilityShock()) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("time", time)
+            .add("worstLoss", getWorstLoss())
+            .add("worstFuturesPriceShock", getWorstFuturesPriceShock())
+            .add("worstVolatilityShock", getWorstVolatilityShock())
+            .toString();
+    }
+}
@@ -0,0 +1,673 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.common.StreamFailureListener;
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.InstrumentsListener;
+import net.quedex.api.market.MarketStream;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+import net.quedex.api.user.AccountStateListener;
+import net.quedex.api.user.CancelAllOrdersFailed;
+import net.quedex.api.user.CancelAllOrdersSpec;
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.LiquidationOrderCancelled;
+import net.quedex.api.user.LiquidationOrderFilled;
+import net.quedex.api.user.LiquidationOrderPlaced;
+import net.quedex.api.user.OpenPosition;
+import net.quedex.api.user.OpenPositionListener;
+import net.quedex.api.user.OrderCancelFailed;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderCancelled;
+import net.quedex.api.user.OrderFilled;
+import net.quedex.api.user.OrderForcefullyCancelled;
+import net.quedex.api.user.OrderListener;
+import net.quedex.api.user.OrderModificationFailed;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderModified;
+import net.quedex.api.user.OrderPlaceFailed;
+import net.quedex.api.user.OrderPlaced;
+import net.quedex.api.user.OrderSpec;
+import net.quedex.api.user.UserStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * An exchange simulated in-process, for load testing {@link MarketMakerRunner} without network: provides a
+ * {@link MarketStream} and a {@link UserStream} backed by a synthetic market.
+ * <p>
+ * The market consists of a futures per expiration (weekly) with options at strikes around its price. Quotes are
+ * generated at a given rate for random instruments - futures prices follow a random walk, options are quoted around
+ * their Black 76 price at a randomly moving volatility. Commands are executed by a {@link MatchingSimulator} against
+ * the generated quotes. Both quotes and commands are delivered with a given latency (approximate, as waiting relies
+ * on parking the threads), in order.
+ * <p>
+ * Generation and matching run on one thread, delivery to the listeners on another. Tick-to-order latency is measured
+ * at the exchange, from the first futures price change not followed by a command yet until the next command batch is
+ * received, both network ways included.
+ */
+@ThreadSafe
+public class SimulatedExchange {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SimulatedExchange.class);
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final BigDecimal FUTURES_TICK_SIZE = new BigDecimal("0.5");
+    private static final BigDecimal OPTION_TICK_SIZE = new BigDecimal("0.00000001");
+    private static final double INITIAL_FUTURES_PRICE = 4000;
+    private static final double STRIKE_STEP = 0.05; // of log-moneyness
+    private static final double INITIAL_VOLATILITY = 0.8;
+    private static final double OPTION_SPREAD_FRACTION = 0.02;
+    private static final int MAX_QUOTED_QUANTITY = 100;
+    private static final double FUTURES_QUOTES_FRACTION = 0.2;
+    private static final int MAX_QUOTES_BURST = 1000;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_LATENCY_SAMPLES = 1 << 20;
+
+    private final long quoteIntervalNanos; // 0 if no quotes generated
+    private final long latencyNanos;
+
+    private final Map<Integer, Instrument> instruments;
+    private final Instrument[] futures;
+    private final Instrument[] options;
+    private final int[] optionFuturesIndices;
+    private final TickSize futuresTickSize = new TickSize(FUTURES_TICK_SIZE);
+    private final TickSize optionTickSize = new TickSize(OPTION_TICK_SIZE);
+    private final AtomicIntegerArray subscribed;
+
+    // exchange thread only
+    private final Random random;
+    private final Pricing pricing = new Pricing(new RealTimeProvider());
+    private final Pricing.MutableMetrics metrics = new Pricing.MutableMetrics();
+    private final long[] futuresPriceTicks;
+    private double volatility = INITIAL_VOLATILITY;
+    private final MatchingSimulator matchingSimulator;
+    private long firstUnansweredMoveNanos = 0;
+    private final long[] tickToOrderNanos = new long[MAX_LATENCY_SAMPLES];
+    private int tickToOrderCount = 0;
+    private long quotes = 0;
+    private long batches = 0;
+
+    private final Queue<Message> inbound = new ConcurrentLinkedQueue<>();
+    private final Queue<Message> outbound = new ConcurrentLinkedQueue<>();
+    private final Thread exchangeThread;
+    private final Thread deliveryThread;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean running = true;
+
+    private final SimulatedMarketStream marketStream = new SimulatedMarketStream();
+    private final SimulatedUserStream userStream = new SimulatedUserStream();
+
+    private volatile StreamFailureListener streamFailureListener;
+    private volatile InstrumentsListener instrumentsListener;
+    private volatile QuotesListener quotesListener;
+    private volatile OrderListener orderListener;
+    private volatile OpenPositionListener openPositionListener;
+    private volatile AccountStateListener accountStateListener;
+
+    /**
+     * @param expirations          number of futures, each with options
+     * @param strikesPerExpiration number of strikes of options of every expiration, each with a call and a put
+     * @param quotesPerSecond      rate of generated quotes, 0 for none
+     * @param latencyMicros        delay of delivering quotes and events to the client as well as of executing its
+     *                             commands
+     * @param seed                 of the random generation of quotes
+     */
+    public SimulatedExchange(final int expirations,
+                             final int strikesPerExpiration,
+                             final int quotesPerSecond,
+                             final long latencyMicros,
+                             final long seed) {
+        checkArgument(expirations > 0, "expirations=%s <= 0", expirations);
+        checkArgument(strikesPerExpiration >= 0, "strikesPerExpiration=%s < 0", strikesPerExpiration);
+        checkArgument(quotesPerSecond >= 0, "quotesPerSecond=%s < 0", quotesPerSecond);
+        checkArgument(latencyMicros >= 0, "latencyMicros=%s < 0", latencyMicros);
+        this.quoteIntervalNanos = quotesPerSecond == 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / quotesPerSecond;
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        this.random = new Random(seed);
+
+        final Map<Integer, Instrument> instrumentsById = new HashMap<>();
+        futures = new Instrument[expirations];
+        options = new Instrument[expirations * strikesPerExpiration * 2];
+        optionFuturesIndices = new int[options.length];
+        futuresPriceTicks = new long[expirations];
+        final long startOfDay = System.currentTimeMillis() / DAY_MILLIS * DAY_MILLIS;
+        int instrumentId = 0;
+        int optionIndex = 0;
+
+        for (int i = 0; i < expirations; i++) {
+            final long expirationDate = startOfDay + (i + 1) * 7 * DAY_MILLIS;
+            futures[i] = new Instrument(
+                "FUT" + i,
+                ++instrumentId,
+                Instrument.Type.INVERSE_FUTURES,
+                null,
+                expirationDate,
+                null,
+                FUTURES_TICK_SIZE,
+                1,
+                expirationDate - DAY_MILLIS
+            );
+            instrumentsById.put(instrumentId, futures[i]);
+            futuresPriceTicks[i] = futuresTickSize.roundToTicks(INITIAL_FUTURES_PRICE, RoundingMode.DOWN);
+
+            for (int j = 0; j < strikesPerExpiration; j++) {
+                final long strike = Math.round(
+                    INITIAL_FUTURES_PRICE * Math.exp((j - strikesPerExpiration / 2) * STRIKE_STEP)
+                );
+                for (final Instrument.OptionType optionType : Instrument.OptionType.values()) {
+                    options[optionIndex] = new Instrument(
+                        "OPT" + i + "-" + strike + "-" + optionType.name().charAt(0),
+                        ++instrumentId,
+                        Instrument.Type.OPTION,
+                        optionType,
+                        expirationDate,
+                        BigDecimal.valueOf(strike),
+                        OPTION_TICK_SIZE,
+                        1,
+                        expirationDate
+                    );
+                    instrumentsById.put(instrumentId, options[optionIndex]);
+                    optionFuturesIndices[optionIndex] = i;
+                    optionIndex++;
+                }
+            }
+        }
+        this.instruments = Collections.unmodifiableMap(instrumentsById);
+        this.subscribed = new AtomicIntegerArray(instrumentId + 1);
+        this.matchingSimulator = new MatchingSimulator(new DelayedOrderListener(), this::deliverOpenPosition);
+
+        exchangeThread = new Thread(this::runExchange, "simulated-exchange");
+        deliveryThread = new Thread(this::runDelivery, "simulated-exchange-delivery");
+    }
+
+    public MarketStream getMarketStream() {
+        return marketStream;
+    }
+
+    public UserStream getUserStream() {
+        return userStream;
+    }
+
+    public Map<Integer, Instrument> getInstruments() {
+        return instruments;
+    }
+
+    /**
+     * Statistics below are to be read once the exchange has been stopped.
+     *
+     * @return number of quotes generated
+     */
+    public long getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * @return number of command batches executed
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    public long getCommands() {
+        return matchingSimulator.getCommands();
+    }
+
+    public long getFills() {
+        return matchingSimulator.getFills();
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return tick-to-order latency at the percentile (of the first {@value #MAX_LATENCY_SAMPLES} measurements), -1 if
+     *         not measured
+     */
+    public long getTickToOrderMicros(final double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "percentile=%s not in [0, 100]", percentile);
+        if (tickToOrderCount == 0) {
+            return -1;
+        }
+        final long[] sorted = Arrays.copyOf(tickToOrderNanos, tickToOrderCount);
+        Arrays.sort(sorted);
+        final int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return TimeUnit.NANOSECONDS.toMicros(sorted[Math.max(index, 0)]);
+    }
+
+    private void start() {
+        if (started.compareAndSet(false, true)) {
+            exchangeThread.start();
+            deliveryThread.start();
+            LOGGER.info(
+                "Started with futures={}, options={}, quoteIntervalNanos={}, latencyNanos={}",
+                futures.length, options.length, quoteIntervalNanos, latencyNanos
+            );
+        }
+    }
+
+    private void stop() {
+        if (running) {
+            running = false;
+            LockSupport.unpark(exchangeThread);
+            LockSupport.unpark(deliveryThread);
+            try {
+                exchangeThread.join();
+                deliveryThread.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LOGGER.info("Stopped");
+        }
+    }
+
+    private void runExchange() {
+        long nextQuoteNanos = System.nanoTime();
+
+        try {
+            while (running) {
+                final long now = System.nanoTime();
+
+                Message command;
+                while ((command = inbound.peek()) != null && command.dueNanos <= now) {
+                    inbound.poll();
+                    command.action.run();
+                }
+
+                if (quoteIntervalNanos > 0) {
+                    int burst = 0;
+                    while (nextQuoteNanos <= now && burst < MAX_QUOTES_BURST) {
+                        generateQuotes();
+                        nextQuoteNanos += quoteIntervalNanos;
+                        burst++;
+                    }
+                    if (burst == MAX_QUOTES_BURST) {
+                        continue; // behind the rate
+                    }
+                }
+
+                long parkNanos = quoteIntervalNanos > 0 ? nextQuoteNanos - now : IDLE_PARK_NANOS;
+                if (command != null) {
+                    parkNanos = Math.min(parkNanos, command.dueNanos - now);
+                }
+                if (parkNanos > 0) {
+                    LockSupport.parkNanos(parkNanos);
+                }
+            }
+        } catch (final RuntimeException e) {
+            onFailure(e);
+        }
+    }
+
+    private void runDelivery() {
+        try {
+            while (running) {
+                final Message message = outbound.peek();
+                if (message == null) {
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                    continue;
+                }
+                final long remaining = message.dueNanos - System.nanoTime();
+                if (remaining > 0) {
+                    LockSupport.parkNanos(remaining);
+                    continue;
+                }
+                outbound.poll();
+                message.action.run();
+            }
+        } catch (final RuntimeException e) {
+            onFailure(e);
+        }
+    }
+
+    private void onFailure(final Exception e) {
+        LOGGER.error("Simulated exchange failure", e);
+        final StreamFailureListener listener = streamFailureListener;
+        if (listener != null) {
+            listener.onStreamFailure(e);
+        }
+    }
+
+    private void generateQuotes() {
+        final Quotes generated;
+        if (options.length == 0 || random.nextDouble() < FUTURES_QUOTES_FRACTION) {
+            final int index = random.nextInt(futures.length);
+            futuresPriceTicks[index] = Math.max(futuresPriceTicks[index] + random.nextInt(3) - 1, 2);
+            if (firstUnansweredMoveNanos == 0) {
+                firstUnansweredMoveNanos = System.nanoTime();
+            }
+            generated = quote(futures[index], futuresTickSize, futuresPriceTicks[index], 1);
+        } else {
+            volatility = Math.min(Math.max(volatility + (random.nextDouble() - 0.5) * 0.002, 0.4), 1.6);
+            final int optionIndex = random.nextInt(options.length);
+            final Instrument option = options[optionIndex];
+            pricing.calculateMetrics(
+                option,
+                volatility,
+                futuresTickSize.toDouble(futuresPriceTicks[optionFuturesIndices[optionIndex]]),
+                metrics
+            );
+            final long priceTicks = Math.max(optionTickSize.roundToTicks(metrics.getPrice(), RoundingMode.DOWN), 1);
+            generated = quote(
+                option,
+                optionTickSize,
+                priceTicks,
+                Math.max((long) (priceTicks * OPTION_SPREAD_FRACTION / 2), 1)
+            );
+        }
+
+        quotes++;
+        matchingSimulator.onQuotes(generated);
+        if (subscribed.get(generated.getInstrumentId()) != 0) {
+            deliver(() -> {
+                final QuotesListener listener = quotesListener;
+                if (listener != null) {
+                    listener.onQuotes(generated);
+                }
+            });
+        }
+    }
+
+    private Quotes quote(final Instrument instrument,
+                         final TickSize tickSize,
+                         final long priceTicks,
+                         final long halfSpreadTicks) {
+        final long bidTicks = Math.max(priceTicks - halfSpreadTicks, 1);
+        return new Quotes(
+            instrument.getInstrumentId(),
+            tickSize.toPrice(priceTicks),
+            1 + random.nextInt(MAX_QUOTED_QUANTITY),
+            tickSize.toPrice(bidTicks),
+            1 + random.nextInt(MAX_QUOTED_QUANTITY),
+            tickSize.toPrice(bidTicks + 2 * halfSpreadTicks),
+            1 + random.nextInt(MAX_QUOTED_QUANTITY),
+            quotes,
+            0
+        );
+    }
+
+    /**
+     * Executes a batch on the exchange thread after the latency.
+     */
+    private void receive(final List<? extends OrderSpec> batch) {
+        final List<OrderSpec> copy = new ArrayList<>(batch);
+        inbound.add(new Message(System.nanoTime() + latencyNanos, () -> {
+            batches++;
+            if (firstUnansweredMoveNanos != 0) {
+                if (tickToOrderCount < MAX_LATENCY_SAMPLES) {
+                    tickToOrderNanos[tickToOrderCount++] = System.nanoTime() - firstUnansweredMoveNanos;
+                }
+                firstUnansweredMoveNanos = 0;
+            }
+            matchingSimulator.batch(copy);
+        }));
+        LockSupport.unpark(exchangeThread);
+    }
+
+    /**
+     * Runs the action on the delivery thread after the latency.
+     */
+    private void deliver(final Runnable action) {
+        outbound.add(new Message(System.nanoTime() + latencyNanos, action));
+        LockSupport.unpark(deliveryThread);
+    }
+
+    private void deliverOpenPosition(final OpenPosition openPosition) {
+        deliver(() -> {
+            final OpenPositionListener listener = openPositionListener;
+            if (listener != null) {
+                listener.onOpenPosition(openPosition);
+            }
+        });
+    }
+
+    private void deliverOrderEvent(final Consumer<OrderListener> event) {
+        deliver(() -> {
+            final OrderListener listener = orderListener;
+            if (listener != null) {
+                event.accept(listener);
+            }
+        });
+    }
+
+    private static final class Message {
+        private final long dueNanos;
+        private final Runnable action;
+
+        private Message(final long dueNanos, final Runnable action) {
+            this.dueNanos = dueNanos;
+            this.action = action;
+        }
+    }
+
+    /**
+     * Passes events of the {@link MatchingSimulator} on to the client's listener with the latency.
+     */
+    private final class DelayedOrderListener implements OrderListener {
+        @Override
+        public void onOrderPlaced(final OrderPlaced orderPlaced) {
+            deliverOrderEvent(listener -> listener.onOrderPlaced(orderPlaced));
+        }
+
+        @Override
+        public void onOrderPlaceFailed(final OrderPlaceFailed orderPlaceFailed) {
+            deliverOrderEvent(listener -> listener.onOrderPlaceFailed(orderPlaceFailed));
+        }
+
+        @Override
+        public void onOrderCancelled(final OrderCancelled orderCancelled) {
+            deliverOrderEvent(listener -> listener.onOrderCancelled(orderCancelled));
+        }
+
+        @Override
+        public void onOrderForcefullyCancelled(final OrderForcefullyCancelled orderForcefullyCancelled) {
+            deliverOrderEvent(listener -> listener.onOrderForcefullyCancelled(orderForcefullyCancelled));
+        }
+
+        @Override
+        public void onOrderCancelFailed(final OrderCancelFailed orderCancelFailed) {
+            deliverOrderEvent(listener -> listener.onOrderCancelFailed(orderCancelFailed));
+        }
+
+        @Override
+        public void onAllOrdersCancelled() {
+            deliverOrderEvent(OrderListener::onAllOrdersCancelled);
+        }
+
+        @Override
+        public void onCancelAllOrdersFailed(final CancelAllOrdersFailed cancelAllOrdersFailed) {
+            deliverOrderEvent(listener -> listener.onCancelAllOrdersFailed(cancelAllOrdersFailed));
+        }
+
+        @Override
+        public void onOrderModified(final OrderModified orderModified) {
+            deliverOrderEvent(listener -> listener.onOrderModified(orderModified));
+        }
+
+        @Override
+        public void onOrderModificationFailed(final OrderModificationFailed orderModificationFailed) {
+            deliverOrderEvent(listener -> listener.onOrderModificationFailed(orderModificationFailed));
+        }
+
+        @Override
+        public void onOrderFilled(final OrderFilled orderFilled) {
+            deliverOrderEvent(listener -> listener.onOrderFilled(orderFilled));
+        }
+
+        @Override
+        public void onLiquidationOrderPlaced(final LiquidationOrderPlaced liquidationOrderPlaced) {
+            // no liquidations simulated
+        }
+
+        @Override
+        public void onLiquidationOrderCancelled(final LiquidationOrderCancelled liquidationOrderCancelled) {
+            // no liquidations simulated
+        }
+
+        @Override
+        public void onLiquidationOrderFilled(final LiquidationOrderFilled liquidationOrderFilled) {
+            // no liquidations simulated
+        }
+    }
+
+    private final class SimulatedMarketStream implements MarketStream {
+        @Override
+        public void registerStreamFailureListener(final StreamFailureListener streamFailureListener) {
+            SimulatedExchange.this.streamFailureListener = streamFailureListener;
+        }
+
+        @Override
+        public void start() {
+            SimulatedExchange.this.start();
+        }
+
+        @Override
+        public void stop() {
+            SimulatedExchange.this.stop();
+        }
+
+        /**
+         * The instruments are passed to the listener right away, with the latency.
+         */
+        @Override
+        public void registerInstrumentsListener(final InstrumentsListener instrumentsListener) {
+            SimulatedExchange.this.instrumentsListener = instrumentsListener;
+            deliver(() -> {
+                final InstrumentsListener listener = SimulatedExchange.this.instrumentsListener;
+                if (listener != null) {
+                    listener.onInstruments(instruments);
+                }
+            });
+        }
+
+        @Override
+        public Registration registerQuotesListener(final QuotesListener quotesListener) {
+            SimulatedExchange.this.quotesListener = quotesListener;
+            return new SimulatedRegistration();
+        }
+    }
+
+    private final class SimulatedRegistration implements MarketStream.Registration {
+        @Override
+        public MarketStream.Registration subscribe(final int instrumentId) {
+            if (instruments.containsKey(instrumentId)) {
+                subscribed.set(instrumentId, 1);
+            }
+            return this;
+        }
+
+        @Override
+        public MarketStream.Registration subscribe(final Collection<Integer> instrumentIds) {
+            instrumentIds.forEach(this::subscribe);
+            return this;
+        }
+
+        @Override
+        public MarketStream.Registration unsubscribe(final int instrumentId) {
+            if (instruments.containsKey(instrumentId)) {
+                subscribed.set(instrumentId, 0);
+            }
+            return this;
+        }
+
+        @Override
+        public MarketStream.Registration unsubscribe(final Collection<Integer> instrumentIds) {
+            instrumentIds.forEach(this::unsubscribe);
+            return this;
+        }
+
+        @Override
+        public MarketStream.Registration unsubscribeAll() {
+            instruments.keySet().forEach(this::unsubscribe);
+            return this;
+        }
+    }
+
+    private final class SimulatedUserStream implements UserStream {
+        @Override
+        public void registerStreamFailureListener(final StreamFailureListener streamFailureListener) {
+            SimulatedExchange.this.streamFailureListener = streamFailureListener;
+        }
+
+        @Override
+        public void start() {
+            SimulatedExchange.this.start();
+        }
+
+        @Override
+        public void stop() {
+            SimulatedExchange.this.stop();
+        }
+
+        @Override
+        public void registerOrderListener(final OrderListener orderListener) {
+            SimulatedExchange.this.orderListener = orderListener;
+        }
+
+        @Override
+        public void registerOpenPositionListener(final OpenPositionListener openPositionListener) {
+            SimulatedExchange.this.openPositionListener = openPositionListener;
+        }
+
+        @Override
+        public void registerAccountStateListener(final AccountStateListener accountStateListener) {
+            SimulatedExchange.this.accountStateListener = accountStateListener;
+        }
+
+        /**
+         * Account is not simulated - the account state listener receives null, as the initial state.
+         */
+        @Override
+        public void subscribeListeners() {
+            deliver(() -> {
+                final AccountStateListener listener = accountStateListener;
+                if (listener != null) {
+                    listener.onAccountState(null);
+                }
+            });
+        }
+
+        @Override
+        public void placeOrder(final LimitOrderSpec limitOrderSpec) {
+            receive(Collections.singletonList(limitOrderSpec));
+        }
+
+        @Override
+        public void cancelOrder(final OrderCancelSpec orderCancelSpec) {
+            receive(Collections.singletonList(orderCancelSpec));
+        }
+
+        @Override
+        public void cancelAllOrders() {
+            receive(Collections.singletonList(CancelAllOrdersSpec.INSTANCE));
+        }
+
+        @Override
+        public void modifyOrder(final OrderModificationSpec orderModificationSpec) {
+            receive(Collections.singletonList(orderModificationSpec));
+        }
+
+        @Override
+        public void batch(final List<? extends OrderSpec> batch) {
+            receive(batch);
+        }
+    }
+}
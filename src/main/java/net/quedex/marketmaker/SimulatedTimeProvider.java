@@ -0,0 +1,30 @@
+package net.quedex.marketmaker;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Time set explicitly by its owner, e.g. to timestamps of replayed events.
+ */
+@NotThreadSafe
+public final class SimulatedTimeProvider implements TimeProvider {
+    private long currentTime;
+
+    public SimulatedTimeProvider(final long startTime) {
+        this.currentTime = startTime;
+    }
+
+    @Override
+    public long getCurrentTime() {
+        return currentTime;
+    }
+
+    public void setCurrentTime(final long currentTime) {
+        checkArgument(
+            currentTime >= this.currentTime,
+            "currentTime=%s < previous=%s", currentTime, this.currentTime
+        );
+        this.currentTime = currentTime;
+    }
+}
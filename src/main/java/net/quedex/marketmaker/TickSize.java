@@ -0,0 +1,182 @@
+package net.quedex.marketmaker;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.concurrent.Immutable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Tick size of an instrument, converting its prices to and from a whole number of ticks, in which they are kept
+ * through quoting and order tracking. Prices are converted to {@link BigDecimal}s (with the scale of the tick size)
+ * only when sent to the exchange.
+ * <p>
+ * Rounding is exact, i.e. gives the same number of ticks as rounding the decimal price would, including rounding of
+ * a {@code double} price, which is treated as the decimal given by {@link BigDecimal#valueOf(double)}.
+ */
+@Immutable
+public final class TickSize {
+    private static final long[] POW10 = {
+        1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L, 1_000_000_000L,
+        10_000_000_000L, 100_000_000_000L, 1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+        1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L, 1_000_000_000_000_000_000L
+    };
+    private static final double[] DOUBLE_POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19,
+        1e20, 1e21, 1e22
+    };
+    /**
+     * Decimals with up to 15 significant digits round-trip through {@code double}.
+     */
+    private static final long MAX_EXACT_DOUBLE_UNSCALED = 1_000_000_000_000_000L;
+
+    private final BigDecimal tickSize;
+    private final long unscaled;
+    private final int scale;
+    private final double value;
+
+    public TickSize(final BigDecimal tickSize) {
+        checkNotNull(tickSize, "null tickSize");
+        checkArgument(tickSize.compareTo(BigDecimal.ZERO) > 0, "tickSize=%s <= 0", tickSize);
+
+        final BigDecimal stripped = tickSize.stripTrailingZeros();
+        this.tickSize = stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+        this.unscaled = this.tickSize.unscaledValue().longValueExact();
+        this.scale = this.tickSize.scale();
+        this.value = this.tickSize.doubleValue();
+    }
+
+    public BigDecimal getTickSize() {
+        return tickSize;
+    }
+
+    public BigDecimal toPrice(final long ticks) {
+        return BigDecimal.valueOf(Math.multiplyExact(ticks, unscaled), scale);
+    }
+
+    public double toDouble(final long ticks) {
+        if (scale < DOUBLE_POW10.length && Math.abs(ticks) < MAX_EXACT_DOUBLE_UNSCALED / unscaled) {
+            return (ticks * unscaled) / DOUBLE_POW10[scale]; // correctly rounded, as both operands are exact
+        }
+        return toPrice(ticks).doubleValue();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the price is not a multiple of the tick size
+     */
+    public long toTicks(final BigDecimal price) {
+        final BigDecimal[] ticks = price.divideAndRemainder(tickSize);
+        checkArgument(ticks[1].signum() == 0, "price=%s not a multiple of tickSize=%s", price, tickSize);
+        return ticks[0].longValueExact();
+    }
+
+    /**
+     * @param roundingMode only {@link RoundingMode#UP} and {@link RoundingMode#DOWN} are supported
+     * @return non-negative price rounded to ticks
+     */
+    public long roundToTicks(final BigDecimal price, final RoundingMode roundingMode) {
+        checkRoundingMode(roundingMode);
+        checkArgument(price.signum() >= 0, "price=%s < 0", price);
+        return price.divide(tickSize, 0, roundingMode).longValueExact();
+    }
+
+    /**
+     * Rounds a price given as {@code unscaledPrice * 10^-priceScale}, without allocating unless the arithmetic
+     * overflows.
+     *
+     * @param roundingMode only {@link RoundingMode#UP} and {@link RoundingMode#DOWN} are supported
+     * @return non-negative price rounded to ticks
+     */
+    public long roundToTicks(final long unscaledPrice, final int priceScale, final RoundingMode roundingMode) {
+        checkRoundingMode(roundingMode);
+        checkArgument(unscaledPrice >= 0, "price=%s < 0", unscaledPrice);
+        checkArgument(priceScale >= 0, "priceScale=%s < 0", priceScale);
+
+        final int scaleDifference = priceScale - scale;
+        if (Math.abs(scaleDifference) < POW10.length) {
+            try {
+                final long dividend;
+                final long divisor;
+                if (scaleDifference >= 0) {
+                    dividend = unscaledPrice;
+                    divisor = Math.multiplyExact(unscaled, POW10[scaleDifference]);
+                } else {
+                    dividend = Math.multiplyExact(unscaledPrice, POW10[-scaleDifference]);
+                    divisor = unscaled;
+                }
+                final long ticks = dividend / divisor;
+                return roundingMode == RoundingMode.UP && ticks * divisor != dividend ? ticks + 1 : ticks;
+            } catch (final ArithmeticException e) {
+                // overflow - fall back to BigDecimal
+            }
+        }
+        return roundToTicks(BigDecimal.valueOf(unscaledPrice, priceScale), roundingMode);
+    }
+
+    /**
+     * Rounds {@code BigDecimal.valueOf(price)} to ticks, without allocating unless the price is beyond precision of
+     * {@code double}.
+     * <p>
+     * The nearest multiple {@code k} of the tick size is a candidate. The price is exactly {@code k} ticks when it is
+     * the {@code double} closest to {@code k} ticks, i.e. when it equals {@link #toDouble}{@code (k)} (which is exact
+     * when {@code k} ticks have at most 15 significant digits). Otherwise the decimal price is on the same side of
+     * {@code k} ticks as the {@code double} price is of {@link #toDouble}{@code (k)}.
+     *
+     * @param roundingMode only {@link RoundingMode#UP} and {@link RoundingMode#DOWN} are supported
+     * @return non-negative price rounded to ticks
+     */
+    public long roundToTicks(final double price, final RoundingMode roundingMode) {
+        checkRoundingMode(roundingMode);
+        checkArgument(price >= 0, "price=%s < 0", price);
+
+        final double ticks = Math.rint(price / value);
+        if (scale >= DOUBLE_POW10.length || ticks >= MAX_EXACT_DOUBLE_UNSCALED / unscaled) {
+            return roundToTicks(BigDecimal.valueOf(price), roundingMode);
+        }
+
+        final long candidate = (long) ticks;
+        final double candidatePrice = (candidate * unscaled) / DOUBLE_POW10[scale];
+        if (price == candidatePrice) {
+            return candidate;
+        } else if (price > candidatePrice) {
+            return roundingMode == RoundingMode.UP ? candidate + 1 : candidate;
+        } else {
+            return roundingMode == RoundingMode.UP ? candidate : candidate - 1;
+        }
+    }
+
+    private static void checkRoundingMode(final RoundingMode roundingMode) {
+        checkArgument(
+            roundingMode == RoundingMode.UP || roundingMode == RoundingMode.DOWN,
+            "Only rounding UP or DOWN supported"
+        );
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final TickSize that = (TickSize) o;
+        return unscaled == that.unscaled && scale == that.scale;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(unscaled) + scale;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("tickSize", tickSize)
+            .toString();
+    }
+}
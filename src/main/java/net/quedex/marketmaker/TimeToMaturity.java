@@ -0,0 +1,112 @@
+package net.quedex.marketmaker;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Times to maturity of instruments, in years, and their square roots, kept in primitive arrays indexed by instrument
+ * and refreshed once per period of a clock of the given granularity.
+ * <p>
+ * Instruments are priced at the time of the start of the current period, so that all greeks calculated within a
+ * period are consistent with each other. Times are recalculated lazily, when an instrument is first indexed in a
+ * period, so that a refresh is O(1) and instruments no longer priced (e.g. expired ones) cost nothing however fine the
+ * clock.
+ */
+@NotThreadSafe
+public final class TimeToMaturity {
+    private static final double YEAR_MILLIS = 1000L * 60 * 60 * 24 * 365;
+
+    private final TimeProvider timeProvider;
+    private final long clockMillis;
+    private final LongIntHashMap instrumentIdToIndex = new LongIntHashMap(64);
+
+    // per instrument
+    private long[] expirationDates = new long[0];
+    private double[] years = new double[0];
+    private double[] sqrtYears = new double[0];
+    private long[] periods = new long[0]; // the times are calculated in
+    private int instruments;
+
+    private long period = Long.MIN_VALUE;
+    private long time;
+
+    /**
+     * @param clockMillis granularity of the clock, 1 to price at the current millisecond
+     */
+    public TimeToMaturity(final TimeProvider timeProvider, final long clockMillis) {
+        checkArgument(clockMillis > 0, "clockMillis=%s <= 0", clockMillis);
+        this.timeProvider = checkNotNull(timeProvider, "null timeProvider");
+        this.clockMillis = clockMillis;
+    }
+
+    /**
+     * Moves to the current period of the clock.
+     *
+     * @return the current period
+     */
+    public long refresh() {
+        final long currentPeriod = Math.floorDiv(timeProvider.getCurrentTime(), clockMillis);
+        if (currentPeriod != period) {
+            period = currentPeriod;
+            time = currentPeriod * clockMillis;
+        }
+        return period;
+    }
+
+    /**
+     * @return index of the instrument, to get its time to maturity in the current period with until the next refresh
+     */
+    public int index(final int instrumentId, final long expirationDate) {
+        final int index = instrumentIdToIndex.get(instrumentId);
+        if (index == LongIntHashMap.MISSING) {
+            return add(instrumentId, expirationDate);
+        }
+        if (periods[index] != period) {
+            calculate(index);
+        }
+        return index;
+    }
+
+    public double getYears(final int index) {
+        return years[index];
+    }
+
+    public double getSqrtYears(final int index) {
+        return sqrtYears[index];
+    }
+
+    /**
+     * @return time the current period starts at - the time instruments are priced at
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public long getClockMillis() {
+        return clockMillis;
+    }
+
+    private int add(final int instrumentId, final long expirationDate) {
+        if (instruments == years.length) {
+            final int capacity = Math.max(instruments << 1, 16);
+            expirationDates = Arrays.copyOf(expirationDates, capacity);
+            years = Arrays.copyOf(years, capacity);
+            sqrtYears = Arrays.copyOf(sqrtYears, capacity);
+            periods = Arrays.copyOf(periods, capacity);
+        }
+        expirationDates[instruments] = expirationDate;
+        calculate(instruments);
+        instrumentIdToIndex.put(instrumentId, instruments);
+        return instruments++;
+    }
+
+    private void calculate(final int index) {
+        years[index] = (expirationDates[index] - time) / YEAR_MILLIS;
+        sqrtYears[index] = Math.sqrt(years[index]);
+        periods[index] = period;
+    }
+}
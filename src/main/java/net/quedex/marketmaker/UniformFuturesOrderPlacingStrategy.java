@@ -19,14 +19,20 @@ public class UniformFuturesOrderPlacingStrategy implements OrderPlacingStrategy
 
     private final FairPriceProvider fairPriceProvider;
     private final RiskManager riskManager;
+    private final InstrumentManager instrumentManager;
 
     private final int levels;
     private final int qtyOnLevel;
     private final double deltaLimit;
     private final BigDecimal spreadFraction;
+    // spreadFraction = spreadFractionUnscaled / spreadFractionDenominator
+    private final long spreadFractionUnscaled;
+    private final long spreadFractionDenominator;
+    private final int spreadFractionScale;
 
     public UniformFuturesOrderPlacingStrategy(final FairPriceProvider fairPriceProvider,
                                               final RiskManager riskManager,
+                                              final InstrumentManager instrumentManager,
                                               final int levels,
                                               final int qtyOnLevel,
                                               final double deltaLimit,
@@ -37,60 +43,77 @@ public class UniformFuturesOrderPlacingStrategy implements OrderPlacingStrategy
         checkArgument(spreadFraction.compareTo(BigDecimal.ZERO) > 0, "spreadFraction=%s <= 0", spreadFraction);
         this.fairPriceProvider = checkNotNull(fairPriceProvider, "null fairPriceProvider");
         this.riskManager = checkNotNull(riskManager, "null riskManager");
+        this.instrumentManager = checkNotNull(instrumentManager, "null instrumentManager");
         this.levels = levels;
         this.qtyOnLevel = qtyOnLevel;
         this.deltaLimit = deltaLimit;
         this.spreadFraction = spreadFraction;
+
+        final BigDecimal stripped = spreadFraction.stripTrailingZeros();
+        final BigDecimal normalised = stripped.scale() < 0 ? stripped.setScale(0) : stripped;
+        this.spreadFractionUnscaled = normalised.unscaledValue().longValueExact();
+        this.spreadFractionDenominator = BigDecimal.ONE.movePointRight(normalised.scale()).longValueExact();
+        this.spreadFractionScale = normalised.scale();
     }
 
     @Override
     public Collection<GenericOrder> getOrders(final Instrument futures) {
         checkArgument(futures.isFutures(), "Expected futures");
 
+        final TickSize tickSize = instrumentManager.getTickSize(futures.getInstrumentId());
         final BigDecimal fairPrice = fairPriceProvider.getFairPrice(futures.getInstrumentId());
-        final BigDecimal spread = fairPrice.multiply(spreadFraction);
 
         final List<GenericOrder> orders = new ArrayList<>(levels * 2);
-        final double totalDelta = riskManager.getTotalDelta();
+        final int deltaState = RiskManager.limitState(
+            riskManager.getTotalDelta(), deltaLimit, riskManager.getScenarioDeltaState()
+        );
 
-        BigDecimal bid = null;
-        BigDecimal ask = null;
+        GenericOrder bid = null;
+        GenericOrder ask = null;
 
-        if (totalDelta < deltaLimit) {
-            final List<GenericOrder> buys = getOrders(futures, OrderSide.BUY, fairPrice, spread.negate());
-            bid = buys.get(0).getPrice();
+        if (deltaState <= 0) {
+            final List<GenericOrder> buys = getOrders(futures, tickSize, OrderSide.BUY, fairPrice);
+            bid = buys.get(0);
             orders.addAll(buys);
         } // otherwise above limit - don't want to increase delta
 
-        if (totalDelta > -deltaLimit) {
-            final List<GenericOrder> sells = getOrders(futures, OrderSide.SELL, fairPrice, spread);
-            ask = sells.get(0).getPrice();
+        if (deltaState >= 0) {
+            final List<GenericOrder> sells = getOrders(futures, tickSize, OrderSide.SELL, fairPrice);
+            ask = sells.get(0);
             orders.addAll(sells);
         } // otherwise below limit - don't want to decrease delta
 
-        LOGGER.info("Generated orders {}: Bid = {}, Ask = {}", futures.getSymbol(), bid, ask);
+        LOGGER.info(
+            "Generated orders {}: Bid = {}, Ask = {}",
+            futures.getSymbol(),
+            bid != null ? bid.getPrice() : null,
+            ask != null ? ask.getPrice() : null
+        );
 
         return orders;
     }
 
     private List<GenericOrder> getOrders(
         final Instrument futures,
+        final TickSize tickSize,
         final OrderSide side,
-        final BigDecimal fairPrice,
-        final BigDecimal spread) {
+        final BigDecimal fairPrice) {
         final List<GenericOrder> orders = new ArrayList<>(levels);
 
+        final BigDecimal fair = fairPrice.scale() < 0 ? fairPrice.setScale(0) : fairPrice;
+        final boolean fitsLong = fair.precision() <= 18;
+        final long fairUnscaled = fitsLong ? fair.unscaledValue().longValue() : 0;
+
         for (int i = 1; i <= levels; i++) {
-            final BigDecimal priceRounded = roundPriceToTickSize(
-                fairPrice.add(spread.multiply(BigDecimal.valueOf(i))),
-                side == OrderSide.BUY ? RoundingMode.DOWN : RoundingMode.UP,
-                futures.getTickSize()
-            );
+            final long priceTicks = fitsLong
+                ? getLevelPriceTicks(tickSize, fairUnscaled, fair.scale(), side, i)
+                : getLevelPriceTicks(tickSize, fair, side, i);
 
             orders.add(new GenericOrder(
                 futures.getInstrumentId(),
                 side,
-                priceRounded,
+                tickSize,
+                priceTicks,
                 qtyOnLevel
             ));
         }
@@ -99,31 +122,35 @@ public class UniformFuturesOrderPlacingStrategy implements OrderPlacingStrategy
     }
 
     /**
-     * @param price        price to be rounded, has to be positive
-     * @param roundingMode rounding mode that should be used (only {@link RoundingMode#UP} and {@link RoundingMode#DOWN}
-     *                     are supported)
-     * @return price rounded to tick size
-     *
-     * @throws IllegalArgumentException if {@code roundingMode} is neither {@link RoundingMode#UP} nor
-     *                                  {@link RoundingMode#DOWN} or {@code price} is not positive
+     * @return {@code fair * (1 +/- level * spreadFraction)} rounded away from the fair price, computed exactly in
+     * {@code long} arithmetic unless it overflows
      */
-    static BigDecimal roundPriceToTickSize(final BigDecimal price, final RoundingMode roundingMode, final BigDecimal tickSize) {
-        checkArgument(
-            roundingMode == RoundingMode.UP || roundingMode == RoundingMode.DOWN,
-            "Only rounding UP or DOWN supported"
-        );
-        checkArgument(price.compareTo(BigDecimal.ZERO) >= 0, "price=%s < 0", price);
-
-        final BigDecimal remainder = price.remainder(tickSize);
-        if (remainder.compareTo(BigDecimal.ZERO) == 0) {
-            return price;
+    private long getLevelPriceTicks(final TickSize tickSize,
+                                    final long fairUnscaled,
+                                    final int fairScale,
+                                    final OrderSide side,
+                                    final int level) {
+        try {
+            final long spread = Math.multiplyExact(Math.multiplyExact(fairUnscaled, spreadFractionUnscaled), level);
+            final long fair = Math.multiplyExact(fairUnscaled, spreadFractionDenominator);
+            return tickSize.roundToTicks(
+                side == OrderSide.BUY ? Math.subtractExact(fair, spread) : Math.addExact(fair, spread),
+                fairScale + spreadFractionScale,
+                side == OrderSide.BUY ? RoundingMode.DOWN : RoundingMode.UP
+            );
+        } catch (final ArithmeticException e) {
+            return getLevelPriceTicks(tickSize, BigDecimal.valueOf(fairUnscaled, fairScale), side, level);
         }
+    }
 
-        final BigDecimal result = price.subtract(remainder);
-        if (roundingMode == RoundingMode.UP) {
-            return result.add(tickSize);
-        } else {
-            return result;
-        }
+    private long getLevelPriceTicks(final TickSize tickSize,
+                                    final BigDecimal fairPrice,
+                                    final OrderSide side,
+                                    final int level) {
+        final BigDecimal spread = fairPrice.multiply(spreadFraction).multiply(BigDecimal.valueOf(level));
+        return tickSize.roundToTicks(
+            side == OrderSide.BUY ? fairPrice.subtract(spread) : fairPrice.add(spread),
+            side == OrderSide.BUY ? RoundingMode.DOWN : RoundingMode.UP
+        );
     }
 }
@@ -5,7 +5,6 @@ import net.quedex.api.user.OrderSide;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -14,22 +13,24 @@ import java.util.List;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static net.quedex.marketmaker.UniformFuturesOrderPlacingStrategy.roundPriceToTickSize;
 
 public class UniformOptionOrderPlacingStrategy implements OrderPlacingStrategy {
     private static final Logger LOGGER = LoggerFactory.getLogger(UniformOptionOrderPlacingStrategy.class);
+    private static final long NO_PRICE = 0;
 
     private final FairPriceProvider fairVolatilityProvider;
     private final FairPriceProvider futuresFairPriceProvider;
     private final RiskManager riskManager;
     private final InstrumentManager instrumentManager;
     private final Pricing pricing;
+    private final OptionChainBatch batch;
 
     private final int levels;
     private final int qtyOnLevel;
     private final double deltaLimit;
     private final double vegaLimit;
     private final double volaSpreadFraction;
+    private final double ladderMaxErrorTicks;
 
     public UniformOptionOrderPlacingStrategy(final FairPriceProvider fairVolatilityProvider,
                                              final FairPriceProvider futuresFairPriceProvider,
@@ -40,12 +41,14 @@ public class UniformOptionOrderPlacingStrategy implements OrderPlacingStrategy {
                                              final int qtyOnLevel,
                                              final double deltaLimit,
                                              final double vegaLimit,
-                                             final double volaSpreadFraction) {
+                                             final double volaSpreadFraction,
+                                             final double ladderMaxErrorTicks) {
         checkArgument(levels >= 0, "numLevels=%s < 0", levels);
         checkArgument(qtyOnLevel > 0, "qtyOnLevel=%s <= 0", qtyOnLevel);
         checkArgument(deltaLimit >= 0, "deltaLimit=%s < 0", deltaLimit);
         checkArgument(vegaLimit >= 0, "vegaLimit=%s < 0", vegaLimit);
         checkArgument(volaSpreadFraction > 0, "volaSpreadFraction=%s <= 0", volaSpreadFraction);
+        checkArgument(ladderMaxErrorTicks >= 0, "ladderMaxErrorTicks=%s < 0", ladderMaxErrorTicks);
 
         this.fairVolatilityProvider = checkNotNull(fairVolatilityProvider, "null fairVolatilityProvider");
         this.futuresFairPriceProvider = checkNotNull(futuresFairPriceProvider, "null futuresFairPriceProvider");
@@ -57,97 +60,174 @@ public class UniformOptionOrderPlacingStrategy implements OrderPlacingStrategy {
         this.deltaLimit = deltaLimit;
         this.vegaLimit = vegaLimit;
         this.volaSpreadFraction = volaSpreadFraction;
+        this.ladderMaxErrorTicks = ladderMaxErrorTicks;
+        // bids on the first levels, asks on the following ones
+        this.batch = new OptionChainBatch(1, getBatchLevels());
     }
 
     @Override
     public Collection<GenericOrder> getOrders(final Instrument option) {
         checkArgument(!option.isFutures(), "Expected option");
 
-        final double fairVola = fairVolatilityProvider.getFairPrice(option.getInstrumentId()).doubleValue();
-        final double volaSpread = volaSpreadFraction * fairVola;
-        final double fairFuturesPrice = futuresFairPriceProvider.getFairPrice(
-            instrumentManager.getFuturesAtExpiration(option.getExpirationDate()).getInstrumentId()
-        ).doubleValue();
+        return getOrders(
+            option,
+            fairVolatilityProvider.getFairPrice(option.getInstrumentId()).doubleValue(),
+            futuresFairPriceProvider.getFairPrice(
+                instrumentManager.getFuturesAtExpiration(option.getExpirationDate()).getInstrumentId()
+            ).doubleValue(),
+            riskManager.getTotalDelta(),
+            riskManager.getTotalVega(),
+            riskManager.getScenarioDeltaState(),
+            riskManager.getScenarioVegaState(),
+            batch,
+            pricing
+        );
+    }
+
+    /**
+     * Calculates orders from the given inputs rather than current ones, for parallel recalculation: safe to call from
+     * any thread, provided that the batch and pricing are not shared with other threads and that instruments are not
+     * updated meanwhile.
+     *
+     * @param scenarioDeltaState see {@link RiskManager#getScenarioDeltaState()}, applies within the delta limit
+     * @param scenarioVegaState  see {@link RiskManager#getScenarioVegaState()}, applies within the vega limit
+     * @param batch batch for at least one option at {@link #getBatchLevels()} volatilities, the levels are priced in
+     */
+    public Collection<GenericOrder> getOrders(final Instrument option,
+                                              final double fairVola,
+                                              final double fairFuturesPrice,
+                                              final double totalDelta,
+                                              final double totalVega,
+                                              final int scenarioDeltaState,
+                                              final int scenarioVegaState,
+                                              final OptionChainBatch batch,
+                                              final Pricing pricing) {
+        checkArgument(!option.isFutures(), "Expected option");
+        checkArgument(
+            batch.getLevels() == getBatchLevels(), "batch levels=%s != %s", batch.getLevels(), getBatchLevels()
+        );
 
+        final double volaSpread = volaSpreadFraction * fairVola;
         final List<GenericOrder> orders = new ArrayList<>(levels * 2);
-        final double totalDelta = riskManager.getTotalDelta();
-        final double totalVega = riskManager.getTotalVega();
 
         boolean placeBuys = true;
         boolean placeSells = true;
 
+        final int deltaState = RiskManager.limitState(totalDelta, deltaLimit, scenarioDeltaState);
         if (option.getOptionType() == Instrument.OptionType.CALL_EUROPEAN) {
-            if (totalDelta >= deltaLimit) {
+            if (deltaState > 0) {
                 placeBuys = false;
-            } else if (totalDelta <= -deltaLimit) {
+            } else if (deltaState < 0) {
                 placeSells = false;
             }
 
         } else {
-            if (totalDelta >= deltaLimit) {
+            if (deltaState > 0) {
                 placeSells = false;
-            } else if (totalDelta <= -deltaLimit) {
+            } else if (deltaState < 0) {
                 placeBuys = false;
             }
         }
 
-        if (totalVega >= vegaLimit) {
+        final int vegaState = RiskManager.limitState(totalVega, vegaLimit, scenarioVegaState);
+        if (vegaState > 0) {
             placeBuys = false;
-        } else if (totalVega <= -vegaLimit) {
+        } else if (vegaState < 0) {
             placeSells = false;
         }
 
-        BigDecimal bid = null;
-        BigDecimal ask = null;
+        final TickSize tickSize = instrumentManager.getTickSize(option.getInstrumentId());
+        long bid = NO_PRICE;
+        long ask = NO_PRICE;
+
+        if (placeBuys || placeSells) {
+            priceLevels(option, fairVola, volaSpread, fairFuturesPrice, tickSize, batch, pricing);
+        }
 
         if (placeBuys) {
-            bid = addOrders(orders, option, OrderSide.BUY, fairVola, -volaSpread, fairFuturesPrice);
+            bid = addOrders(orders, option, tickSize, OrderSide.BUY, batch);
         }
 
         if (placeSells) {
-            ask = addOrders(orders, option, OrderSide.SELL, fairVola, volaSpread, fairFuturesPrice);
+            ask = addOrders(orders, option, tickSize, OrderSide.SELL, batch);
         }
 
-        LOGGER.info("Generated orders {}: Bid = {}, Ask = {}", option.getSymbol(), bid, ask);
+        LOGGER.info(
+            "Generated orders {}: Bid = {}, Ask = {}",
+            option.getSymbol(),
+            bid != NO_PRICE ? tickSize.toPrice(bid) : null,
+            ask != NO_PRICE ? tickSize.toPrice(ask) : null
+        );
 
-        if (bid != null && ask != null) {
-            checkState(bid.compareTo(ask) < 0, "bid=%s >= %s=ask", bid, ask);
+        if (bid != NO_PRICE && ask != NO_PRICE) {
+            checkState(bid < ask, "bid=%s >= %s=ask", bid, ask);
         }
 
         return orders;
     }
 
-    private BigDecimal addOrders(final List<GenericOrder> orders,
-                                 final Instrument option,
-                                 final OrderSide side,
-                                 final double fairVola,
-                                 final double spread,
-                                 final double futuresPrice) {
-        BigDecimal best = null;
+    /**
+     * @return number of volatilities an option is priced at
+     */
+    public int getBatchLevels() {
+        return Math.max(2 * levels, 1);
+    }
+
+    private void priceLevels(final Instrument option,
+                             final double fairVola,
+                             final double spread,
+                             final double futuresPrice,
+                             final TickSize tickSize,
+                             final OptionChainBatch batch,
+                             final Pricing pricing) {
+        batch.clear();
+        final int batchOption = batch.add(option, futuresPrice);
+        for (int i = 1; i <= levels; i++) {
+            batch.setVolatility(batchOption, i - 1, fairVola - i * spread);
+            batch.setVolatility(batchOption, levels + i - 1, fairVola + i * spread);
+        }
+        if (ladderMaxErrorTicks > 0) {
+            final double tick = tickSize.toDouble(1);
+            pricing.calculateLadder(batch, batchOption, fairVola, tick, ladderMaxErrorTicks * tick);
+        } else {
+            pricing.calculateChain(batch);
+        }
+    }
+
+    /**
+     * @return price of the best order in ticks or {@link #NO_PRICE}
+     */
+    private long addOrders(final List<GenericOrder> orders,
+                           final Instrument option,
+                           final TickSize tickSize,
+                           final OrderSide side,
+                           final OptionChainBatch batch) {
+        final int levelOffset = side == OrderSide.BUY ? -1 : levels - 1;
+        long best = NO_PRICE;
 
         for (int i = 1; i <= levels; i++) {
-            BigDecimal priceRounded = roundPriceToTickSize(
-                BigDecimal.valueOf(pricing.calculateMetrics(option, fairVola + i * spread, futuresPrice).getPrice()),
-                side == OrderSide.BUY ? RoundingMode.DOWN : RoundingMode.UP,
-                option.getTickSize()
+            long priceTicks = tickSize.roundToTicks(
+                batch.getPrice(0, levelOffset + i),
+                side == OrderSide.BUY ? RoundingMode.DOWN : RoundingMode.UP
             );
 
-            if (priceRounded.compareTo(BigDecimal.ZERO) == 0) {
+            if (priceTicks == 0) {
                 if (side == OrderSide.BUY) {
                     continue;
                 } else {
-                    priceRounded = option.getTickSize();
+                    priceTicks = 1;
                 }
             }
 
-            if (best == null) {
-                best = priceRounded;
+            if (best == NO_PRICE) {
+                best = priceTicks;
             }
 
             orders.add(new GenericOrder(
                 option.getInstrumentId(),
                 side,
-                priceRounded,
+                tickSize,
+                priceTicks,
                 qtyOnLevel
             ));
         }
@@ -0,0 +1,115 @@
+package net.quedex.marketmaker;
+
+import com.google.common.base.MoreObjects;
+
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Volatility smile of an expiration - a quadratic in log-moneyness ({@code ln(strike / futures price)}) fitted to
+ * implied volatilities by least squares.
+ * <p>
+ * The smile is flat outside the range of fitted log-moneyness, so that the parabola does not run away in the wings
+ * where there are no quotes, and kept above half of the lowest fitted volatility.
+ */
+@Immutable
+public final class VolatilitySmile {
+    private static final double SINGULARITY_TOLERANCE = 1e-9;
+
+    private final double a;
+    private final double b;
+    private final double c;
+    private final double minLogMoneyness;
+    private final double maxLogMoneyness;
+    private final double minVolatility;
+    private final int points;
+
+    private VolatilitySmile(final double a,
+                            final double b,
+                            final double c,
+                            final double minLogMoneyness,
+                            final double maxLogMoneyness,
+                            final double minVolatility,
+                            final int points) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.minLogMoneyness = minLogMoneyness;
+        this.maxLogMoneyness = maxLogMoneyness;
+        this.minVolatility = minVolatility;
+        this.points = points;
+    }
+
+    /**
+     * Fits the smile to the first {@code points} (log-moneyness, volatility) pairs. Fewer than three distinct
+     * log-moneyness values give a line or a flat smile. Takes time linear in the number of points.
+     */
+    public static VolatilitySmile fit(final double[] logMoneyness, final double[] volatilities, final int points) {
+        checkArgument(points > 0, "points=%s <= 0", points);
+        checkArgument(
+            points <= logMoneyness.length && points <= volatilities.length,
+            "points=%s > %s or %s", points, logMoneyness.length, volatilities.length
+        );
+
+        // normal equations of the least squares
+        double s1 = 0, s2 = 0, s3 = 0, s4 = 0;
+        double t0 = 0, t1 = 0, t2 = 0;
+        double minK = Double.POSITIVE_INFINITY, maxK = Double.NEGATIVE_INFINITY;
+        double minV = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < points; i++) {
+            final double k = logMoneyness[i];
+            final double k2 = k * k;
+            final double v = volatilities[i];
+            s1 += k;
+            s2 += k2;
+            s3 += k2 * k;
+            s4 += k2 * k2;
+            t0 += v;
+            t1 += v * k;
+            t2 += v * k2;
+            minK = Math.min(minK, k);
+            maxK = Math.max(maxK, k);
+            minV = Math.min(minV, v);
+        }
+        final double s0 = points;
+
+        final double det3 = s0 * (s2 * s4 - s3 * s3) - s1 * (s1 * s4 - s3 * s2) + s2 * (s1 * s3 - s2 * s2);
+        if (points >= 3 && det3 > SINGULARITY_TOLERANCE * s0 * s2 * s4) {
+            // Cramer's rule
+            final double a = (t0 * (s2 * s4 - s3 * s3) - s1 * (t1 * s4 - s3 * t2) + s2 * (t1 * s3 - s2 * t2)) / det3;
+            final double b = (s0 * (t1 * s4 - t2 * s3) - t0 * (s1 * s4 - s3 * s2) + s2 * (s1 * t2 - t1 * s2)) / det3;
+            final double c = (s0 * (s2 * t2 - s3 * t1) - s1 * (s1 * t2 - s2 * t1) + t0 * (s1 * s3 - s2 * s2)) / det3;
+            return new VolatilitySmile(a, b, c, minK, maxK, minV / 2, points);
+        }
+        final double det2 = s0 * s2 - s1 * s1;
+        if (points >= 2 && det2 > SINGULARITY_TOLERANCE * s0 * s2) {
+            final double a = (t0 * s2 - s1 * t1) / det2;
+            final double b = (s0 * t1 - s1 * t0) / det2;
+            return new VolatilitySmile(a, b, 0, minK, maxK, minV / 2, points);
+        }
+        return new VolatilitySmile(t0 / s0, 0, 0, minK, maxK, minV / 2, points);
+    }
+
+    public double getVolatility(final double logMoneyness) {
+        final double k = Math.min(Math.max(logMoneyness, minLogMoneyness), maxLogMoneyness);
+        final double volatility = a + (b + c * k) * k;
+        return Math.max(volatility, minVolatility);
+    }
+
+    public int getPoints() {
+        return points;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("a", a)
+            .add("b", b)
+            .add("c", c)
+            .add("minLogMoneyness", minLogMoneyness)
+            .add("maxLogMoneyness", maxLogMoneyness)
+            .add("points", points)
+            .toString();
+    }
+}
@@ -0,0 +1,184 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import net.quedex.api.market.Quotes;
+import net.quedex.api.market.QuotesListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Provides the fair volatility of an option from the {@link VolatilitySmile} of its expiration, fitted to implied
+ * volatilities of the options of the expiration.
+ * <p>
+ * A smile is refitted lazily, when a volatility of its expiration is asked for and mids of at least a given fraction of
+ * the options of the expiration moved since the last fit. Implied volatilities are then solved only for options whose
+ * mid or futures price changed, warm-started, and the fit is a single pass over the options, so a refit costs time
+ * linear in the size of the chain and is done on the calling thread. Volatilities of all options of the expiration are
+ * taken from the smile at the fair futures price of the fit and kept until the next one.
+ */
+@NotThreadSafe
+public class VolatilitySmileProvider implements FairPriceProvider, QuotesListener {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VolatilitySmileProvider.class);
+
+    private final InstrumentManager instrumentManager;
+    private final ImpliedVolatilityProvider impliedVolatilityProvider;
+    private final FairPriceProvider futuresFairPriceProvider;
+    private final double refitFraction;
+
+    // per expiration
+    private final LongIntHashMap expirationToIndex = new LongIntHashMap(16);
+    private VolatilitySmile[] smiles = new VolatilitySmile[0];
+    private int[] movedMids = new int[0]; // options whose mids moved since the last fit
+    private int[] fits = new int[0];
+    private int expirations;
+
+    // per option
+    private final LongIntHashMap optionIdToIndex = new LongIntHashMap(64);
+    private double[] volatilities = new double[0]; // taken from the smile of its expiration, NaN until fitted
+    private int[] movedAtFit = new int[0]; // fits of its expiration when its mid last moved, -1 if never
+    private int options;
+
+    // fit input
+    private double[] logMoneyness = new double[0];
+    private double[] impliedVolatilities = new double[0];
+
+    /**
+     * @param refitFraction fraction of options of an expiration whose mids have to move for its smile to be refitted
+     */
+    public VolatilitySmileProvider(final InstrumentManager instrumentManager,
+                                   final ImpliedVolatilityProvider impliedVolatilityProvider,
+                                   final FairPriceProvider futuresFairPriceProvider,
+                                   final double refitFraction) {
+        checkArgument(refitFraction > 0 && refitFraction <= 1, "refitFraction=%s not in (0, 1]", refitFraction);
+        this.instrumentManager = checkNotNull(instrumentManager, "null instrumentManager");
+        this.impliedVolatilityProvider = checkNotNull(impliedVolatilityProvider, "null impliedVolatilityProvider");
+        this.futuresFairPriceProvider = checkNotNull(futuresFairPriceProvider, "null futuresFairPriceProvider");
+        this.refitFraction = refitFraction;
+    }
+
+    /**
+     * Passes the quotes to the {@link ImpliedVolatilityProvider}, counting options whose mids moved since the last fit
+     * of their expiration.
+     */
+    @Override
+    public void onQuotes(final Quotes quotes) {
+        final int instrumentId = quotes.getInstrumentId();
+        final double previousMid = impliedVolatilityProvider.getMid(instrumentId);
+        impliedVolatilityProvider.onQuotes(quotes);
+
+        if (Double.compare(previousMid, impliedVolatilityProvider.getMid(instrumentId)) != 0) {
+            final Instrument instrument = instrumentManager.getInstrument(instrumentId);
+            if (!instrument.isFutures()) {
+                final int index = expirationIndex(instrument.getExpirationDate());
+                final int optionIndex = optionIndex(instrumentId);
+                if (movedAtFit[optionIndex] != fits[index]) {
+                    movedAtFit[optionIndex] = fits[index];
+                    movedMids[index]++;
+                }
+            }
+        }
+    }
+
+    @Override
+    public BigDecimal getFairPrice(final int instrumentId) {
+        return BigDecimal.valueOf(getVolatility(instrumentId));
+    }
+
+    /**
+     * @return volatility of the option from the smile of its expiration, implied or default volatility if there is no
+     * smile yet
+     */
+    public double getVolatility(final int instrumentId) {
+        final Instrument instrument = instrumentManager.getInstrument(instrumentId);
+        if (instrument.isFutures()) {
+            return impliedVolatilityProvider.getVolatility(instrumentId);
+        }
+
+        final int index = expirationIndex(instrument.getExpirationDate());
+        if (movedMids[index] > 0) {
+            final OptionChain chain = instrumentManager.getOptionChain(instrument.getExpirationDate());
+            if (smiles[index] == null || movedMids[index] >= refitFraction * chain.size()) {
+                refit(index, chain);
+            }
+        }
+
+        final int optionIndex = optionIdToIndex.get(instrumentId);
+        return optionIndex != LongIntHashMap.MISSING && !Double.isNaN(volatilities[optionIndex])
+            ? volatilities[optionIndex]
+            : impliedVolatilityProvider.getVolatility(instrumentId);
+    }
+
+    private void refit(final int index, final OptionChain chain) {
+        movedMids[index] = 0;
+        fits[index]++;
+        if (logMoneyness.length < chain.size()) {
+            logMoneyness = new double[chain.size()];
+            impliedVolatilities = new double[chain.size()];
+        }
+
+        final double futuresPrice = futuresFairPriceProvider.getFairPrice(
+            chain.getFutures().getInstrumentId()
+        ).doubleValue();
+        int points = 0;
+        for (int i = 0; i < chain.size(); i++) {
+            final double volatility = impliedVolatilityProvider.getImpliedVolatility(
+                chain.getOption(i).getInstrumentId()
+            );
+            if (!Double.isNaN(volatility)) {
+                logMoneyness[points] = Math.log(chain.getStrike(i) / futuresPrice);
+                impliedVolatilities[points] = volatility;
+                points++;
+            }
+        }
+        if (points == 0) {
+            return;
+        }
+
+        final VolatilitySmile smile = VolatilitySmile.fit(logMoneyness, impliedVolatilities, points);
+        smiles[index] = smile;
+        for (int i = 0; i < chain.size(); i++) {
+            final int optionIndex = optionIndex(chain.getOption(i).getInstrumentId());
+            volatilities[optionIndex] = smile.getVolatility(Math.log(chain.getStrike(i) / futuresPrice));
+        }
+        LOGGER.debug("Refitted expiration={} at futures price={}: {}", chain.getExpirationDate(), futuresPrice, smile);
+    }
+
+    private int expirationIndex(final long expirationDate) {
+        final int index = expirationToIndex.get(expirationDate);
+        if (index != LongIntHashMap.MISSING) {
+            return index;
+        }
+        if (expirations == smiles.length) {
+            final int capacity = Math.max(expirations << 1, 4);
+            smiles = Arrays.copyOf(smiles, capacity);
+            movedMids = Arrays.copyOf(movedMids, capacity);
+            fits = Arrays.copyOf(fits, capacity);
+        }
+        expirationToIndex.put(expirationDate, expirations);
+        return expirations++;
+    }
+
+    private int optionIndex(final int optionId) {
+        final int index = optionIdToIndex.get(optionId);
+        if (index != LongIntHashMap.MISSING) {
+            return index;
+        }
+        if (options == volatilities.length) {
+            final int capacity = Math.max(options << 1, 16);
+            volatilities = Arrays.copyOf(volatilities, capacity);
+            movedAtFit = Arrays.copyOf(movedAtFit, capacity);
+        }
+        volatilities[options] = Double.NaN;
+        movedAtFit[options] = -1;
+        optionIdToIndex.put(optionId, options);
+        return options++;
+    }
+}
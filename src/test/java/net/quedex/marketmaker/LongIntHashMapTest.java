@@ -0,0 +1,139 @@
+package net.quedex.marketmaker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void putsGetsAndRemoves() {
+        final LongIntHashMap map = new LongIntHashMap(4);
+
+        map.put(1, 10);
+        map.put(-2, 20);
+        map.put(Long.MAX_VALUE, 30);
+
+        assertEquals(3, map.size());
+        assertEquals(10, map.get(1));
+        assertEquals(20, map.get(-2));
+        assertEquals(30, map.get(Long.MAX_VALUE));
+        assertEquals(LongIntHashMap.MISSING, map.get(3));
+        assertTrue(map.containsKey(-2));
+        assertFalse(map.containsKey(3));
+
+        assertEquals(20, map.remove(-2));
+        assertEquals(LongIntHashMap.MISSING, map.remove(-2));
+        assertEquals(LongIntHashMap.MISSING, map.get(-2));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void replacesValueOfExistingKey() {
+        final LongIntHashMap map = new LongIntHashMap(4);
+
+        map.put(7, 1);
+        map.put(7, 2);
+
+        assertEquals(1, map.size());
+        assertEquals(2, map.get(7));
+    }
+
+    @Test
+    public void keepsCollidingKeysReachableAfterRemoval() {
+        final LongIntHashMap map = new LongIntHashMap(0); // 16 buckets
+        final List<Long> colliding = keysWithHome(3, 16, 4);
+        for (int i = 0; i < colliding.size(); i++) {
+            map.put(colliding.get(i), i);
+        }
+
+        // removing the head of the probe sequence shifts the others back
+        assertEquals(0, map.remove(colliding.get(0)));
+        for (int i = 1; i < colliding.size(); i++) {
+            assertEquals(i, map.get(colliding.get(i)));
+        }
+        assertEquals(2, map.remove(colliding.get(2)));
+        assertEquals(1, map.get(colliding.get(1)));
+        assertEquals(3, map.get(colliding.get(3)));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    public void growsKeepingAllEntries() {
+        final LongIntHashMap map = new LongIntHashMap(0);
+        for (int i = 0; i < 10_000; i++) {
+            map.put(i * 1024L, i);
+        }
+
+        assertEquals(10_000, map.size());
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i, map.get(i * 1024L));
+        }
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        final Random random = new Random(42);
+        final LongIntHashMap map = new LongIntHashMap(0);
+        final Map<Long, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            final long key = random.nextInt(2_000); // few keys, so that removals hit probe sequences
+            if (random.nextInt(3) == 0) {
+                final Integer removed = expected.remove(key);
+                assertEquals(removed == null ? LongIntHashMap.MISSING : removed, map.remove(key));
+            } else {
+                final int value = random.nextInt(Integer.MAX_VALUE);
+                expected.put(key, value);
+                map.put(key, value);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 2_000; key++) {
+            final Integer value = expected.get(key);
+            assertEquals(value == null ? LongIntHashMap.MISSING : value, map.get(key));
+        }
+    }
+
+    @Test
+    public void clears() {
+        final LongIntHashMap map = new LongIntHashMap(4);
+        map.put(1, 1);
+        map.put(2, 2);
+
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertEquals(LongIntHashMap.MISSING, map.get(1));
+        map.put(1, 3);
+        assertEquals(3, map.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingValue() {
+        new LongIntHashMap(4).put(1, LongIntHashMap.MISSING);
+    }
+
+    /**
+     * @return keys whose home bucket, as hashed by {@link LongIntHashMap}, is the given one
+     */
+    private static List<Long> keysWithHome(final int home, final int capacity, final int count) {
+        final List<Long> keys = new ArrayList<>();
+        for (long key = 0; keys.size() < count; key++) {
+            final long hash = key * 0x9E3779B97F4A7C15L;
+            if (((int) (hash ^ (hash >>> 32)) & (capacity - 1)) == home) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
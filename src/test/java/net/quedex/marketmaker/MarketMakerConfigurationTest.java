@@ -0,0 +1,89 @@
+package net.quedex.marketmaker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class MarketMakerConfigurationTest {
+    private static final String EXAMPLE = "src/main/resources/market-maker.properties.example";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void defaultsSettingsMissingFromFileToExample() throws Exception {
+        final File original = folder.newFile("original.properties");
+        Files.write(
+            original.toPath(),
+            Arrays.asList(
+                "net.quedex.marketmaker.timeSleepSeconds = 60",
+                "net.quedex.marketmaker.maxBatchSize = 100",
+                "net.quedex.marketmaker.futuresSpreadFraction = 0.0015",
+                "net.quedex.marketmaker.fairVolatility = 0.9",
+                "net.quedex.marketmaker.volatilitySpreadFraction = 0.01",
+                "net.quedex.marketmaker.numLevels = 5",
+                "net.quedex.marketmaker.quantityOnLevel = 50",
+                "net.quedex.marketmaker.deltaLimit = 100",
+                "net.quedex.marketmaker.vegaLimit = 50"
+            ),
+            StandardCharsets.UTF_8
+        );
+
+        assertSameSettings(
+            MarketMakerConfiguration.fromPropertiesFile(EXAMPLE),
+            MarketMakerConfiguration.fromPropertiesFile(original.getPath())
+        );
+    }
+
+    @Test
+    public void buildsWithDefaults() throws Exception {
+        final MarketMakerConfiguration configuration = new MarketMakerConfiguration.Builder()
+            .timeSleepSeconds(60)
+            .maxBatchSize(100)
+            .futuresSpreadFraction(new BigDecimal("0.0015"))
+            .fairVolatility(0.9)
+            .volatilitySpreadFraction(0.01)
+            .numLevels(5)
+            .qtyOnLevel(50)
+            .deltaLimit(100)
+            .vegaLimit(50)
+            .build();
+
+        assertSameSettings(MarketMakerConfiguration.fromPropertiesFile(EXAMPLE), configuration);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void requiresOriginalSettings() {
+        new MarketMakerConfiguration.Builder()
+            .timeSleepSeconds(60)
+            .maxBatchSize(100)
+            .futuresSpreadFraction(new BigDecimal("0.0015"))
+            .fairVolatility(0.9)
+            .volatilitySpreadFraction(0.01)
+            .numLevels(5)
+            .qtyOnLevel(50)
+            .deltaLimit(100)
+            .build();
+    }
+
+    private static void assertSameSettings(final MarketMakerConfiguration expected,
+                                           final MarketMakerConfiguration actual) throws Exception {
+        for (final Method getter : MarketMakerConfiguration.class.getDeclaredMethods()) {
+            if (Modifier.isPublic(getter.getModifiers())
+                && !Modifier.isStatic(getter.getModifiers())
+                && getter.getParameterCount() == 0) {
+                assertEquals(getter.getName(), getter.invoke(expected), getter.invoke(actual));
+            }
+        }
+    }
+}
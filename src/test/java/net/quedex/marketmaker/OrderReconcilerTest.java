@@ -0,0 +1,205 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.LimitOrderSpec;
+import net.quedex.api.user.OrderCancelSpec;
+import net.quedex.api.user.OrderModificationSpec;
+import net.quedex.api.user.OrderSide;
+import net.quedex.api.user.OrderSpec;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class OrderReconcilerTest {
+    private static final int INSTRUMENT = 1;
+    private static final int OTHER_INSTRUMENT = 2;
+    private static final TickSize TICK_SIZE = new TickSize(new BigDecimal("0.5"));
+
+    private final OrderManager orderManager = new OrderManager(
+        new InstrumentManager(() -> 0L, Collections.emptyMap())
+    );
+    private final OrderStore orderStore = orderManager.getOrderStore();
+    private final OrderReconciler orderReconciler = new OrderReconciler(orderManager);
+
+    @Test
+    public void placesOrdersLevelByLevel() {
+        assertEquals(
+            Arrays.asList("place BUY 100x5", "place SELL 102x5", "place BUY 99x5", "place SELL 103x5"),
+            reconcile(bid(100), bid(99), ask(102), ask(103))
+        );
+        assertEquals(4, orderReconciler.getPlaced());
+    }
+
+    @Test
+    public void drainsLevelsOfAllInstrumentsBeforeFurtherLevels() {
+        orderReconciler.reconcile(INSTRUMENT, Arrays.asList(bid(100), bid(99)));
+        orderReconciler.reconcile(
+            OTHER_INSTRUMENT,
+            Arrays.asList(
+                order(OTHER_INSTRUMENT, OrderSide.SELL, 50, 5),
+                order(OTHER_INSTRUMENT, OrderSide.SELL, 51, 5)
+            )
+        );
+
+        assertEquals(
+            Arrays.asList("place BUY 100x5", "place SELL 50x5", "place BUY 99x5", "place SELL 51x5"),
+            drain()
+        );
+    }
+
+    @Test
+    public void keepsOrdersAtDesiredPrices() {
+        rest(bid(100), bid(99), ask(102), ask(103));
+
+        assertEquals(Collections.emptyList(), reconcile(bid(100), bid(99), ask(102), ask(103)));
+        assertEquals(4, orderReconciler.getKept());
+    }
+
+    @Test
+    public void modifiesQuantitiesAndMovesOrders() {
+        rest(bid(100), bid(99)); // #1, #2
+
+        assertEquals(
+            Arrays.asList("modify #1 100x7", "modify #2 98x5"),
+            reconcile(bid(100, 7), bid(98))
+        );
+        assertEquals(2, orderReconciler.getModified());
+    }
+
+    @Test
+    public void keepsOrderAtDesiredPriceMovingOthers() {
+        rest(bid(100), bid(99)); // #1, #2
+
+        assertEquals(Collections.singletonList("modify #1 98x5"), reconcile(bid(99), bid(98)));
+    }
+
+    @Test
+    public void sendsCancelsFirst() {
+        rest(bid(100), bid(99)); // #1, #2
+
+        assertEquals(Arrays.asList("cancel #2", "modify #1 101x5"), reconcile(bid(101)));
+        assertEquals(1, orderReconciler.getCancelled());
+    }
+
+    @Test
+    public void replacesPendingOrdersRatherThanModifyingThem() {
+        reconcile(bid(100)); // #1, not acknowledged
+
+        assertEquals(Arrays.asList("cancel #1", "place BUY 101x5"), reconcile(bid(101)));
+    }
+
+    @Test
+    public void movesAsksAwayBeforeRaisingBidsOverThem() {
+        rest(bid(100), ask(102)); // #1, #2
+
+        assertEquals(Arrays.asList("modify #2 105x5", "modify #1 103x5"), reconcile(bid(103), ask(105)));
+    }
+
+    @Test
+    public void movesBidsAwayBeforeLoweringAsksUnderThem() {
+        rest(bid(100), ask(102)); // #1, #2
+
+        assertEquals(Arrays.asList("modify #1 97x5", "modify #2 99x5"), reconcile(bid(97), ask(99)));
+    }
+
+    @Test
+    public void raisesBidAfterEveryAskItWouldCrossWhateverTheirLevels() {
+        rest(bid(100), ask(101), ask(102)); // #1, #2, #3
+
+        assertEquals(
+            Arrays.asList("modify #2 104x5", "modify #3 105x5", "modify #1 103x5"),
+            reconcile(bid(103), ask(104), ask(105))
+        );
+    }
+
+    @Test
+    public void raisesBidAfterCancellingAskItWouldCross() {
+        rest(bid(100)); // #1
+        reconcile(bid(100), ask(102)); // #2, not acknowledged
+
+        assertEquals(
+            Arrays.asList("cancel #2", "place SELL 105x5", "modify #1 103x5"),
+            reconcile(bid(103), ask(105))
+        );
+    }
+
+    @Test
+    public void sendsCommandsNotCrossingAnythingInLevelOrder() {
+        rest(bid(100), bid(99), ask(110), ask(111)); // #1, #2, #3, #4
+
+        assertEquals(
+            Arrays.asList("modify #1 102x5", "modify #3 108x5", "modify #2 101x5", "modify #4 109x5"),
+            reconcile(bid(102), bid(101), ask(108), ask(109))
+        );
+    }
+
+    private List<String> reconcile(final GenericOrder... desired) {
+        orderReconciler.reconcile(INSTRUMENT, Arrays.asList(desired));
+        return drain();
+    }
+
+    /**
+     * Places the orders and acknowledges them.
+     */
+    private void rest(final GenericOrder... orders) {
+        reconcile(orders);
+        for (int slot = orderStore.first(INSTRUMENT); slot != OrderStore.NONE; slot = orderStore.next(slot)) {
+            final GenericOrder order = orderStore.getOrder(slot);
+            orderStore.acknowledgePlacement(slot, order.getPriceTicks(), order.getQuantity(), order.getQuantity());
+        }
+        orderReconciler.resetCounters();
+    }
+
+    private List<String> drain() {
+        final List<OrderSpec> orderSpecs = new ArrayList<>();
+        orderReconciler.drainTo(orderSpecs);
+
+        final List<String> commands = new ArrayList<>();
+        for (final OrderSpec orderSpec : orderSpecs) {
+            if (orderSpec instanceof LimitOrderSpec) {
+                final LimitOrderSpec placement = (LimitOrderSpec) orderSpec;
+                commands.add(String.format(
+                    "place %s %sx%s",
+                    placement.getSide(),
+                    TICK_SIZE.toTicks(placement.getPrice()),
+                    placement.getQuantity()
+                ));
+            } else if (orderSpec instanceof OrderModificationSpec) {
+                final OrderModificationSpec modification = (OrderModificationSpec) orderSpec;
+                commands.add(String.format(
+                    "modify #%s %sx%s",
+                    modification.getClientOrderId(),
+                    TICK_SIZE.toTicks(modification.getNewPrice()),
+                    modification.getNewQuantity()
+                ));
+            } else {
+                commands.add("cancel #" + ((OrderCancelSpec) orderSpec).getClientOrderId());
+            }
+        }
+        return commands;
+    }
+
+    private static GenericOrder bid(final long priceTicks) {
+        return bid(priceTicks, 5);
+    }
+
+    private static GenericOrder bid(final long priceTicks, final int quantity) {
+        return order(INSTRUMENT, OrderSide.BUY, priceTicks, quantity);
+    }
+
+    private static GenericOrder ask(final long priceTicks) {
+        return order(INSTRUMENT, OrderSide.SELL, priceTicks, 5);
+    }
+
+    private static GenericOrder order(final int instrumentId,
+                                      final OrderSide side,
+                                      final long priceTicks,
+                                      final int quantity) {
+        return new GenericOrder(instrumentId, side, TICK_SIZE, priceTicks, quantity);
+    }
+}
@@ -0,0 +1,136 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.user.OrderSide;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrderStoreTest {
+    private static final TickSize TICK_SIZE = new TickSize(new BigDecimal("0.5"));
+
+    private final OrderStore orderStore = new OrderStore(2, 1);
+
+    @Test
+    public void tracksOrdersPerInstrument() {
+        final int slot1 = add(1, 10, OrderSide.BUY, 100, 5);
+        final int slot2 = add(2, 10, OrderSide.SELL, 102, 3);
+        final int slot3 = add(3, 20, OrderSide.BUY, 90, 7);
+
+        assertEquals(3, orderStore.size());
+        assertEquals(slot2, orderStore.find(2));
+        assertEquals(OrderStore.NONE, orderStore.find(4));
+        assertEquals(2, slots(10).size());
+        assertTrue(slots(10).contains(slot1) && slots(10).contains(slot2));
+        assertEquals(1, slots(20).size());
+        assertTrue(slots(20).contains(slot3));
+        assertEquals(OrderStore.NONE, orderStore.first(30));
+
+        assertEquals(5, orderStore.getQuantity(10, OrderSide.BUY));
+        assertEquals(3, orderStore.getQuantity(10, OrderSide.SELL));
+        assertEquals(7, orderStore.getQuantity(20, OrderSide.BUY));
+        assertEquals(0, orderStore.getQuantity(30, OrderSide.BUY));
+    }
+
+    @Test
+    public void growsKeepingOrders() {
+        for (int i = 1; i <= 100; i++) {
+            add(i, i % 7, i % 2 == 0 ? OrderSide.BUY : OrderSide.SELL, i, i);
+        }
+
+        assertTrue(orderStore.capacity() >= 100);
+        for (int i = 1; i <= 100; i++) {
+            final GenericOrder order = orderStore.getOrder(orderStore.find(i));
+            assertEquals(i % 7, order.getInstrumentId());
+            assertEquals(i, order.getPriceTicks());
+            assertEquals(i, order.getQuantity());
+        }
+        int orders = 0;
+        for (int instrumentId = 0; instrumentId < 7; instrumentId++) {
+            orders += slots(instrumentId).size();
+        }
+        assertEquals(100, orders);
+    }
+
+    @Test
+    public void removesFromAnywhereInInstrumentList() {
+        final int slot1 = add(1, 10, OrderSide.BUY, 100, 5);
+        final int slot2 = add(2, 10, OrderSide.BUY, 99, 5);
+        final int slot3 = add(3, 10, OrderSide.BUY, 98, 5);
+
+        orderStore.remove(slot2);
+        assertEquals(2, slots(10).size());
+        assertTrue(slots(10).contains(slot1) && slots(10).contains(slot3));
+
+        orderStore.remove(slot3);
+        orderStore.remove(slot1);
+        assertEquals(OrderStore.NONE, orderStore.first(10));
+        assertEquals(0, orderStore.getQuantity(10, OrderSide.BUY));
+        assertEquals(OrderStore.NONE, orderStore.find(1));
+        assertEquals(0, orderStore.size());
+
+        // freed slots are reused
+        final int slot4 = add(4, 10, OrderSide.SELL, 101, 2);
+        assertTrue(slot4 == slot1 || slot4 == slot2 || slot4 == slot3);
+        assertEquals(2, orderStore.getQuantity(10, OrderSide.SELL));
+    }
+
+    @Test
+    public void countsPendingCommands() {
+        final int slot = orderStore.add(1, 10, OrderSide.BUY, TICK_SIZE, 100, 5, 5, true);
+        assertTrue(orderStore.isPlacementPending(slot));
+        assertEquals(1, orderStore.getPendingCommands());
+
+        orderStore.acknowledgePlacement(slot, 100, 5, 5);
+        orderStore.setModification(slot, 101, 8);
+        orderStore.setCancelPending(slot, true);
+        assertFalse(orderStore.isPlacementPending(slot));
+        assertEquals(101, orderStore.getExpectedOrder(slot).getPriceTicks());
+        assertEquals(2, orderStore.getPendingCommands());
+
+        orderStore.acknowledgeModification(slot);
+        assertEquals(101, orderStore.getOrder(slot).getPriceTicks());
+        assertEquals(8, orderStore.getQuantity(10, OrderSide.BUY));
+        assertEquals(1, orderStore.getPendingCommands());
+
+        orderStore.remove(slot);
+        assertEquals(0, orderStore.getPendingCommands());
+    }
+
+    @Test
+    public void fillsAndClears() {
+        final int slot = add(1, 10, OrderSide.SELL, 100, 5);
+        add(2, 20, OrderSide.BUY, 90, 5);
+
+        assertFalse(orderStore.fill(slot, 2));
+        assertEquals(3, orderStore.getQuantity(10, OrderSide.SELL));
+        assertTrue(orderStore.fill(slot, 3));
+
+        orderStore.clear();
+        assertEquals(0, orderStore.size());
+        assertEquals(OrderStore.NONE, orderStore.first(10));
+        assertEquals(OrderStore.NONE, orderStore.first(20));
+        assertEquals(0, orderStore.getQuantity(20, OrderSide.BUY));
+    }
+
+    private int add(final long clientOrderId,
+                    final int instrumentId,
+                    final OrderSide side,
+                    final long priceTicks,
+                    final int quantity) {
+        return orderStore.add(clientOrderId, instrumentId, side, TICK_SIZE, priceTicks, quantity, quantity, false);
+    }
+
+    private List<Integer> slots(final int instrumentId) {
+        final List<Integer> slots = new ArrayList<>();
+        for (int slot = orderStore.first(instrumentId); slot != OrderStore.NONE; slot = orderStore.next(slot)) {
+            slots.add(slot);
+        }
+        return slots;
+    }
+}
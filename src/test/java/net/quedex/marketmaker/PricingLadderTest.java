@@ -0,0 +1,88 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PricingLadderTest {
+    private static final long HOUR_MILLIS = 1000L * 60 * 60;
+    private static final int LEVELS = 3; // per side
+    private static final double MAX_ERROR_TICKS = 0.25;
+
+    private final Pricing chainPricing = new Pricing(() -> 0L);
+    private final Pricing ladderPricing = new Pricing(() -> 0L);
+    private final OptionChainBatch chain = new OptionChainBatch(1, 2 * LEVELS);
+    private final OptionChainBatch ladder = new OptionChainBatch(1, 2 * LEVELS);
+
+    /**
+     * Orders are placed at prices rounded to ticks, so a ladder must round like a fully valued chain.
+     */
+    @Test
+    public void roundsToTicksLikeChain() {
+        final Random random = new Random(42);
+        final TickSize[] tickSizes = {
+            new TickSize(new BigDecimal("0.00000001")),
+            new TickSize(new BigDecimal("0.00000005")),
+            new TickSize(new BigDecimal("0.0000001")),
+            new TickSize(new BigDecimal("0.000001"))
+        };
+
+        for (int i = 0; i < 50_000; i++) {
+            final TickSize tickSize = tickSizes[random.nextInt(tickSizes.length)];
+            final double futuresPrice = 1000 + random.nextDouble() * 19_000;
+            final long strike = Math.max(Math.round(futuresPrice * Math.exp(random.nextGaussian() * 0.3)), 1);
+            final long expirationDate = HOUR_MILLIS + (long) (random.nextDouble() * 365 * 24 * HOUR_MILLIS);
+            final Instrument option = new Instrument(
+                "OPT" + i,
+                i,
+                Instrument.Type.OPTION,
+                Instrument.OptionType.values()[random.nextInt(2)],
+                expirationDate,
+                BigDecimal.valueOf(strike),
+                tickSize.toPrice(1),
+                1,
+                expirationDate
+            );
+            final double fairVolatility = 0.1 + random.nextDouble() * 1.9;
+            final double spread = fairVolatility * (0.005 + random.nextDouble() * 0.1);
+
+            price(chain, option, futuresPrice, fairVolatility, spread);
+            price(ladder, option, futuresPrice, fairVolatility, spread);
+            chainPricing.calculateChain(chain);
+            final double tick = tickSize.toDouble(1);
+            ladderPricing.calculateLadder(ladder, 0, fairVolatility, tick, MAX_ERROR_TICKS * tick);
+
+            for (int level = 0; level < 2 * LEVELS; level++) {
+                final String message = option.getOptionType() + " " + strike + " " + expirationDate + " "
+                    + futuresPrice + " " + ladder.volatilities[level] + " " + tickSize;
+                for (final RoundingMode roundingMode : new RoundingMode[] {RoundingMode.UP, RoundingMode.DOWN}) {
+                    assertEquals(
+                        message,
+                        tickSize.roundToTicks(chain.getPrice(0, level), roundingMode),
+                        tickSize.roundToTicks(ladder.getPrice(0, level), roundingMode)
+                    );
+                }
+            }
+        }
+        assertTrue("expanded " + ladderPricing.getExpansions(), ladderPricing.getExpansions() > 100_000);
+    }
+
+    private static void price(final OptionChainBatch batch,
+                              final Instrument option,
+                              final double futuresPrice,
+                              final double fairVolatility,
+                              final double spread) {
+        batch.clear();
+        batch.add(option, futuresPrice);
+        for (int i = 1; i <= LEVELS; i++) {
+            batch.setVolatility(0, i - 1, fairVolatility - i * spread);
+            batch.setVolatility(0, LEVELS + i - 1, fairVolatility + i * spread);
+        }
+    }
+}
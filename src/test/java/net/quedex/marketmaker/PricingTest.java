@@ -0,0 +1,150 @@
+package net.quedex.marketmaker;
+
+import net.quedex.api.market.Instrument;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PricingTest {
+    private static final double YEAR_MILLIS = 1000L * 60 * 60 * 24 * 365;
+    private static final long HOUR_MILLIS = 1000L * 60 * 60;
+    private static final NormalDistribution STD_NORMAL = new NormalDistribution();
+
+    private final Pricing pricing = new Pricing(() -> 0L);
+
+    @Test
+    public void matchesCommonsMathBlack76() {
+        final long[] expirationDates = {HOUR_MILLIS, 24 * HOUR_MILLIS, 7 * 24 * HOUR_MILLIS, 365 * 24 * HOUR_MILLIS};
+        final double[] futuresPrices = {5000, 9900, 10000, 15000};
+        int instrumentId = 0;
+
+        for (final long expirationDate : expirationDates) {
+            for (int k = -40; k <= 40; k += 2) {
+                final long strike = Math.round(10000 * Math.exp(k * 0.025));
+                for (final Instrument.OptionType optionType : Instrument.OptionType.values()) {
+                    final Instrument option = option(++instrumentId, optionType, expirationDate, strike);
+                    for (double volatility = 0.01; volatility < 5; volatility *= 1.25) {
+                        for (final double futuresPrice : futuresPrices) {
+                            assertMatches(option, volatility, futuresPrice);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pricesChainLikeSingleOptions() {
+        final Pricing cachingPricing = new Pricing(() -> 0L, 64, 1);
+        final OptionChainBatch batch = new OptionChainBatch(8, 3);
+        final Instrument[] options = new Instrument[batch.getMaxOptions()];
+        for (int i = 0; i < options.length; i++) {
+            options[i] = option(i, Instrument.OptionType.values()[i % 2], (i + 1) * 24 * HOUR_MILLIS, 8000 + 500 * i);
+            batch.add(options[i], 10000);
+            for (int level = 0; level < batch.getLevels(); level++) {
+                batch.setVolatility(i, level, 0.5 + 0.1 * level);
+                cachingPricing.calculateMetrics(options[i], 0.5 + 0.1 * level, 10000); // cached, not used by the chain
+            }
+        }
+
+        cachingPricing.calculateChain(batch);
+
+        assertEquals(0, cachingPricing.getCacheHits());
+        for (int i = 0; i < options.length; i++) {
+            for (int level = 0; level < batch.getLevels(); level++) {
+                final Pricing.Metrics metrics = pricing.calculateMetrics(options[i], 0.5 + 0.1 * level, 10000);
+                assertEquals(metrics.getPrice(), batch.getPrice(i, level), 0);
+                assertEquals(metrics.getDelta(), batch.getDelta(i, level), 0);
+                assertEquals(metrics.getGammaP(), batch.getGammaP(i, level), 0);
+                assertEquals(metrics.getVega(), batch.getVega(i, level), 0);
+                assertEquals(metrics.getTheta(), batch.getTheta(i, level), 0);
+            }
+        }
+    }
+
+    @Test
+    public void pricesNaNVolatilityAsNaN() {
+        final Instrument option = option(1, Instrument.OptionType.CALL_EUROPEAN, HOUR_MILLIS, 10000);
+
+        final Pricing.MutableMetrics metrics = pricing.calculateMetrics(
+            option,
+            Double.NaN,
+            10000,
+            new Pricing.MutableMetrics()
+        );
+
+        assertTrue(Double.isNaN(metrics.getPrice()));
+        assertTrue(Double.isNaN(metrics.getDelta()));
+    }
+
+    private void assertMatches(final Instrument option, final double volatility, final double futuresPrice) {
+        final Pricing.Metrics metrics = pricing.calculateMetrics(option, volatility, futuresPrice);
+        // the same time to maturity, as priced at time 0
+        final Pricing.Metrics expected = black76(
+            option.getOptionType() != Instrument.OptionType.CALL_EUROPEAN, // inverted
+            volatility,
+            1 / futuresPrice,
+            option.getExpirationDate() / YEAR_MILLIS,
+            1 / option.getStrike().doubleValue()
+        );
+        final String message = option.getStrike() + " " + option.getOptionType() + " " + option.getExpirationDate()
+            + " " + volatility + " " + futuresPrice;
+        final double priceTolerance = 1e-14 / futuresPrice;
+
+        assertEquals(message, expected.getPrice(), metrics.getPrice(), priceTolerance);
+        assertEquals(message, expected.getDelta(), metrics.getDelta(), 1e-15);
+        assertEquals(message, expected.getGammaP(), metrics.getGammaP(), 1e-15 * Math.max(1, expected.getGammaP()));
+        assertEquals(message, expected.getVega(), metrics.getVega(), priceTolerance);
+        assertEquals(message, expected.getTheta(), metrics.getTheta(), priceTolerance);
+    }
+
+    /**
+     * The former commons-math based implementation, of an already inverted option.
+     */
+    private static Pricing.Metrics black76(final boolean call,
+                                           final double s,
+                                           final double f,
+                                           final double t,
+                                           final double x) {
+        final double sqrtT = Math.sqrt(t);
+        final double d1 = (Math.log(f / x) + (s * s / 2) * t) / (s * sqrtT);
+        final double d2 = d1 - s * sqrtT;
+
+        final double cdfD1 = STD_NORMAL.cumulativeProbability(d1);
+        final double densityD1 = STD_NORMAL.density(d1);
+        double delta = cdfD1;
+        final double gammaP = densityD1 / (f * s * sqrtT) * f / 100;
+        final double vega = f * densityD1 * sqrtT / 100;
+        final double theta = (-(f * densityD1 * s) / (2 * sqrtT)) / 365.0;
+
+        double price;
+        if (call) {
+            price = f * cdfD1 - x * STD_NORMAL.cumulativeProbability(d2);
+        } else {
+            price = x * STD_NORMAL.cumulativeProbability(-d2) - f * (1 - cdfD1);
+            delta = delta - 1;
+        }
+        return new Pricing.Metrics(Math.max(price, 0), -delta, gammaP, vega, theta);
+    }
+
+    private static Instrument option(final int instrumentId,
+                                     final Instrument.OptionType optionType,
+                                     final long expirationDate,
+                                     final long strike) {
+        return new Instrument(
+            "OPT" + instrumentId,
+            instrumentId,
+            Instrument.Type.OPTION,
+            optionType,
+            expirationDate,
+            BigDecimal.valueOf(strike),
+            new BigDecimal("0.00000001"),
+            1,
+            expirationDate
+        );
+    }
+}
@@ -0,0 +1,32 @@
+package net.quedex.marketmaker;
+
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StandardNormalTest {
+    private static final NormalDistribution STD_NORMAL = new NormalDistribution();
+
+    @Test
+    public void matchesCommonsMath() {
+        for (double x = -40; x <= 40; x += 0.001) {
+            assertEquals(String.valueOf(x), STD_NORMAL.cumulativeProbability(x), StandardNormal.cdf(x), 1e-15);
+            assertEquals(String.valueOf(x), STD_NORMAL.density(x), StandardNormal.pdf(x), 1e-15);
+        }
+    }
+
+    @Test
+    public void hasLimitsAtInfinity() {
+        assertEquals(0, StandardNormal.cdf(Double.NEGATIVE_INFINITY), 0);
+        assertEquals(1, StandardNormal.cdf(Double.POSITIVE_INFINITY), 0);
+        assertEquals(0, StandardNormal.pdf(Double.POSITIVE_INFINITY), 0);
+    }
+
+    @Test
+    public void propagatesNaN() {
+        assertTrue(Double.isNaN(StandardNormal.cdf(Double.NaN)));
+        assertTrue(Double.isNaN(StandardNormal.pdf(Double.NaN)));
+    }
+}
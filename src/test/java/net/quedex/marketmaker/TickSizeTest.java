@@ -0,0 +1,97 @@
+package net.quedex.marketmaker;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TickSizeTest {
+    private static final TickSize HALF = new TickSize(new BigDecimal("0.5"));
+    private static final TickSize SATOSHI = new TickSize(new BigDecimal("0.00000001"));
+
+    @Test
+    public void convertsPricesToAndFromTicks() {
+        assertEquals(21, HALF.toTicks(new BigDecimal("10.5")));
+        assertEquals(new BigDecimal("10.5"), HALF.toPrice(21));
+        assertEquals(10.5, HALF.toDouble(21), 0);
+        assertEquals(12345, SATOSHI.toTicks(new BigDecimal("0.00012345")));
+        assertEquals(0.00012345, SATOSHI.toDouble(12345), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPriceOffTick() {
+        HALF.toTicks(new BigDecimal("10.25"));
+    }
+
+    @Test
+    public void keepsPricesOnTickAsTheyAre() {
+        assertEquals(21, HALF.roundToTicks(10.5, RoundingMode.UP));
+        assertEquals(21, HALF.roundToTicks(10.5, RoundingMode.DOWN));
+        assertEquals(0, HALF.roundToTicks(0.0, RoundingMode.UP));
+        // 0.00012345 / 1e-8 is not exactly 12345 in double arithmetic
+        assertEquals(12345, SATOSHI.roundToTicks(0.00012345, RoundingMode.UP));
+        assertEquals(12345, SATOSHI.roundToTicks(0.00012345, RoundingMode.DOWN));
+        assertEquals(30, new TickSize(new BigDecimal("0.01")).roundToTicks(0.1 + 0.2, RoundingMode.DOWN));
+        assertEquals(21, HALF.roundToTicks(105, 1, RoundingMode.UP));
+        assertEquals(21, HALF.roundToTicks(1050000, 5, RoundingMode.DOWN));
+    }
+
+    @Test
+    public void roundsPricesJustOffTickAway() {
+        final double above = Math.nextUp(10.5);
+        final double below = Math.nextDown(10.5);
+
+        assertEquals(22, HALF.roundToTicks(above, RoundingMode.UP));
+        assertEquals(21, HALF.roundToTicks(above, RoundingMode.DOWN));
+        assertEquals(21, HALF.roundToTicks(below, RoundingMode.UP));
+        assertEquals(20, HALF.roundToTicks(below, RoundingMode.DOWN));
+        assertEquals(22, HALF.roundToTicks(1050001, 5, RoundingMode.UP));
+        assertEquals(21, HALF.roundToTicks(1050001, 5, RoundingMode.DOWN));
+        assertEquals(21, HALF.roundToTicks(1049999, 5, RoundingMode.UP));
+        assertEquals(20, HALF.roundToTicks(1049999, 5, RoundingMode.DOWN));
+    }
+
+    @Test
+    public void roundsPricesBeyondExactDoubles() {
+        final double price = 9_007_199_254_740_994.0; // 2^53 + 2, more than 15 significant digits
+
+        assertEquals(18_014_398_509_481_988L, HALF.roundToTicks(price, RoundingMode.UP));
+        assertEquals(18_014_398_509_481_988L, HALF.roundToTicks(price, RoundingMode.DOWN));
+        assertEquals(Long.MAX_VALUE / 10 * 2, HALF.roundToTicks(Long.MAX_VALUE / 10, 0, RoundingMode.DOWN));
+    }
+
+    @Test
+    public void roundsDoublesAsTheirDecimals() {
+        final Random random = new Random(42);
+        final TickSize[] tickSizes = {
+            HALF, SATOSHI, new TickSize(new BigDecimal("0.01")), new TickSize(new BigDecimal("25")),
+            new TickSize(new BigDecimal("0.0005"))
+        };
+
+        for (int i = 0; i < 100_000; i++) {
+            final TickSize tickSize = tickSizes[random.nextInt(tickSizes.length)];
+            final double price = random.nextInt(3) == 0
+                ? tickSize.toDouble(random.nextInt(1_000_000)) // on tick
+                : random.nextDouble() * Math.pow(10, random.nextInt(8) - 2);
+            final BigDecimal decimal = BigDecimal.valueOf(price);
+
+            for (final RoundingMode roundingMode : new RoundingMode[] {RoundingMode.UP, RoundingMode.DOWN}) {
+                assertEquals(
+                    price + " " + tickSize + " " + roundingMode,
+                    tickSize.roundToTicks(decimal, roundingMode),
+                    tickSize.roundToTicks(price, roundingMode)
+                );
+                if (decimal.scale() >= 0) {
+                    assertEquals(
+                        price + " " + tickSize + " " + roundingMode,
+                        tickSize.roundToTicks(decimal, roundingMode),
+                        tickSize.roundToTicks(decimal.unscaledValue().longValueExact(), decimal.scale(), roundingMode)
+                    );
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package net.quedex.marketmaker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TimeToMaturityTest {
+    private static final long YEAR_MILLIS = 1000L * 60 * 60 * 24 * 365;
+
+    private long currentTime = 0;
+    private final TimeToMaturity timeToMaturity = new TimeToMaturity(() -> currentTime, 1000);
+
+    @Test
+    public void pricesAtStartOfPeriod() {
+        currentTime = 1999;
+        timeToMaturity.refresh();
+        final int index = timeToMaturity.index(1, YEAR_MILLIS + 1000);
+
+        assertEquals(1000, timeToMaturity.getTime());
+        assertEquals(1, timeToMaturity.getYears(index), 0);
+        assertEquals(1, timeToMaturity.getSqrtYears(index), 0);
+    }
+
+    @Test
+    public void recalculatesInstrumentsIndexedInNewPeriod() {
+        timeToMaturity.refresh();
+        final int first = timeToMaturity.index(1, YEAR_MILLIS);
+        final int second = timeToMaturity.index(2, 4 * YEAR_MILLIS);
+
+        currentTime = YEAR_MILLIS / 2;
+        assertEquals(YEAR_MILLIS / 2 / 1000, timeToMaturity.refresh());
+        assertEquals(first, timeToMaturity.index(1, YEAR_MILLIS));
+        assertEquals(0.5, timeToMaturity.getYears(first), 0);
+        assertEquals(second, timeToMaturity.index(2, 4 * YEAR_MILLIS));
+        assertEquals(3.5, timeToMaturity.getYears(second), 0);
+        assertEquals(Math.sqrt(3.5), timeToMaturity.getSqrtYears(second), 0);
+
+        currentTime = YEAR_MILLIS / 2 + 999; // the same period
+        timeToMaturity.refresh();
+        assertEquals(0.5, timeToMaturity.getYears(timeToMaturity.index(1, YEAR_MILLIS)), 0);
+    }
+}